@@ -0,0 +1,75 @@
+package com.garry.patterns.divideconquer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+/**
+ * Summing 10M values: boxed ParallelSum, primitive ParallelLongSum and a sequential loop.
+ * The sums run in a pool of the given parallelism, from 1 to the core count
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class ParallelSumBenchmark {
+
+    @Param({"1", "2", "4", "8"})
+    int parallelism;
+
+    List<BigInteger> boxed;
+
+    long[] primitive;
+
+    ForkJoinPool pool;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        primitive = LongStream.range(0, 10_000_000L).toArray();
+        boxed = LongStream.of(primitive).mapToObj(BigInteger::valueOf).collect(Collectors.toList());
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public BigInteger parallelSum() {
+        return pool.invoke(new ParallelSum(boxed));
+    }
+
+    @Benchmark
+    public ExactSum parallelLongSum() {
+        return pool.invoke(new ParallelLongSum.ArraySum(primitive, 0, primitive.length, 0));
+    }
+
+    @Benchmark
+    public long sequentialLongSum() {
+        long sum = 0;
+        for (long value : primitive) {
+            sum += value;
+        }
+        return sum;
+    }
+}
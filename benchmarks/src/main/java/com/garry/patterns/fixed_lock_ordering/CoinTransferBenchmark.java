@@ -0,0 +1,56 @@
+package com.garry.patterns.fixed_lock_ordering;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigInteger;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CoinTransfer: transfers between random pairs of players, both locks taken in id order.
+ * Fewer players means more threads competing for the same monitors
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CoinTransferBenchmark {
+
+    @Param({"2", "16", "1024"})
+    int players;
+
+    CoinTransfer coinTransfer = new CoinTransfer();
+
+    CoinTransfer.Player[] allPlayers;
+
+    @Setup
+    public void setUp() {
+        allPlayers = new CoinTransfer.Player[players];
+        for (int i = 0; i < players; i++) {
+            CoinTransfer.Player player = new CoinTransfer.Player();
+            player.setId(i);
+            player.setName("player-" + i);
+            allPlayers[i] = player;
+        }
+    }
+
+    @Benchmark
+    public void transfer() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int from = random.nextInt(players);
+        int to = (from + 1 + random.nextInt(players - 1)) % players;
+        coinTransfer.transferBetweenPlayers(allPlayers[from], allPlayers[to], BigInteger.ONE);
+    }
+}
@@ -0,0 +1,62 @@
+package com.garry.patterns.non_blocking;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DoubleCounter: a CAS loop instead of a lock, to compare with VisitCounterBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DoubleCounterBenchmark {
+
+    DoubleCounter counter = new DoubleCounter();
+
+    @Benchmark
+    public void increase() {
+        counter.increase();
+    }
+
+    @Benchmark
+    @Group("readMostly")
+    @GroupThreads(3)
+    public int readMostlyReader() {
+        return counter.getValue();
+    }
+
+    @Benchmark
+    @Group("readMostly")
+    @GroupThreads(1)
+    public void readMostlyWriter() {
+        counter.increase();
+    }
+
+    @Benchmark
+    @Group("writeMostly")
+    @GroupThreads(1)
+    public int writeMostlyReader() {
+        return counter.getValue();
+    }
+
+    @Benchmark
+    @Group("writeMostly")
+    @GroupThreads(3)
+    public void writeMostlyWriter() {
+        counter.increase();
+    }
+}
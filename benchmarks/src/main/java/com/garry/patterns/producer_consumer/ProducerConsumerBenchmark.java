@@ -0,0 +1,124 @@
+package com.garry.patterns.producer_consumer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hand-off between producers and consumers through the RingBufferChannel of ProducerConsumer,
+ * with each of the wait strategies
+ *
+ * The channel has the capacity ProducerConsumer uses, small enough for the producers to
+ * actually wait for the consumers. The timed offer() and poll() wait with the WaitStrategy
+ * like put() and take() do, but give up after a millisecond, so an iteration can always end
+ * while the other side of the group is already stopped.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProducerConsumerBenchmark {
+
+    private static final int CAPACITY = 1 << 10;
+    private static final int BATCH_SIZE = 256;
+
+    @Param({"blocking", "parking", "yielding"})
+    String waitStrategy;
+
+    RingBufferChannel<String> mpmc;
+
+    RingBufferChannel<String> mpsc;
+
+    @Setup
+    public void setUp() {
+        mpmc = new RingBufferChannel<>(CAPACITY, RingBufferChannel.Mode.MPMC, waitStrategy());
+        mpsc = new RingBufferChannel<>(CAPACITY, RingBufferChannel.Mode.MPSC, waitStrategy());
+    }
+
+    private WaitStrategy waitStrategy() {
+        switch (waitStrategy) {
+            case "blocking":
+                return new BlockingWaitStrategy();
+            case "parking":
+                return new ParkingWaitStrategy();
+            case "yielding":
+                return new YieldingWaitStrategy();
+            default:
+                throw new IllegalArgumentException("Unknown wait strategy " + waitStrategy);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Batch {
+        final List<String> elements = new ArrayList<>(BATCH_SIZE);
+    }
+
+    // the shape of ProducerConsumer.run(): one producer, two consumers
+    @Benchmark
+    @Group("oneProducerTwoConsumers")
+    @GroupThreads(1)
+    public boolean produce() throws InterruptedException {
+        return mpmc.offer("data", 1, TimeUnit.MILLISECONDS);
+    }
+
+    @Benchmark
+    @Group("oneProducerTwoConsumers")
+    @GroupThreads(2)
+    public void consume(Blackhole blackhole) throws InterruptedException {
+        blackhole.consume(mpmc.poll(1, TimeUnit.MILLISECONDS));
+    }
+
+    // the shape of ProducerConsumer.runBatched(): the consumers take what's there at once, up to a batch
+    @Benchmark
+    @Group("oneProducerTwoBatchConsumers")
+    @GroupThreads(1)
+    public boolean produceForBatches() throws InterruptedException {
+        return mpmc.offer("data", 1, TimeUnit.MILLISECONDS);
+    }
+
+    @Benchmark
+    @Group("oneProducerTwoBatchConsumers")
+    @GroupThreads(2)
+    public int consumeBatch(Batch batch, Blackhole blackhole) throws InterruptedException {
+        String first = mpmc.poll(1, TimeUnit.MILLISECONDS);
+        if (first == null)
+            return 0;
+        batch.elements.add(first);
+        int taken = 1 + mpmc.drainTo(batch.elements, BATCH_SIZE - 1);
+        blackhole.consume(batch.elements);
+        batch.elements.clear();
+        return taken;
+    }
+
+    // a single consumer, whose cursor moves without a CAS
+    @Benchmark
+    @Group("manyProducersOneConsumer")
+    @GroupThreads(3)
+    public boolean produceMany() throws InterruptedException {
+        return mpsc.offer("data", 1, TimeUnit.MILLISECONDS);
+    }
+
+    @Benchmark
+    @Group("manyProducersOneConsumer")
+    @GroupThreads(1)
+    public void consumeOne(Blackhole blackhole) throws InterruptedException {
+        blackhole.consume(mpsc.poll(1, TimeUnit.MILLISECONDS));
+    }
+}
@@ -0,0 +1,43 @@
+package com.garry.patterns.rate_limiting;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RateLimiter: tryAcquire() from 4 threads on one limiter, the contended case of a hot tenant
+ *
+ * The rate is far below what the threads ask for, so most checks are refused: that's the
+ * path a throttled tenant hammers, a read of the clock and of the state, no write
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class RateLimiterBenchmark {
+
+    RateLimiter tokenBucket = new TokenBucketRateLimiter(100_000, 1, TimeUnit.SECONDS);
+    RateLimiter slidingWindow = new SlidingWindowRateLimiter(100_000, 1, TimeUnit.SECONDS);
+
+    @Benchmark
+    public boolean tokenBucket() {
+        return tokenBucket.tryAcquire();
+    }
+
+    @Benchmark
+    public boolean slidingWindow() {
+        return slidingWindow.tryAcquire();
+    }
+}
@@ -0,0 +1,82 @@
+package com.garry.patterns.resource_pool;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checkout/return round trips on a ResourcePool
+ *
+ * Run with -t 1,2,4... up to the core count; with more threads than resources
+ * the borrowers block, which is part of what this measures. The striped pool is measured
+ * the same way, to see where a single array of resources stops scaling
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResourcePoolBenchmark {
+
+    @Param({"4", "64"})
+    int poolSize;
+
+    ResourcePool<Object> pool;
+
+    StripedResourcePool<Object> stripedPool;
+
+    @Setup
+    public void setUp() {
+        List<Object> resources = new ArrayList<>();
+        for (int i = 0; i < poolSize; i++) {
+            resources.add(new Object());
+        }
+        pool = new ResourcePool<>(poolSize, resources);
+        stripedPool = new StripedResourcePool<>(poolSize, resources);
+    }
+
+    @Benchmark
+    public void borrowAndRelease(Blackhole blackhole) throws InterruptedException {
+        Object resource = pool.get();
+        blackhole.consume(resource);
+        pool.release(resource);
+    }
+
+    // some work while the resource is held, closer to a real checkout
+    @Benchmark
+    public void borrowWorkAndRelease(Blackhole blackhole) throws InterruptedException {
+        Object resource = pool.get();
+        Blackhole.consumeCPU(100);
+        blackhole.consume(resource);
+        pool.release(resource);
+    }
+
+    @Benchmark
+    public void stripedBorrowAndRelease(Blackhole blackhole) throws InterruptedException {
+        Object resource = stripedPool.get();
+        blackhole.consume(resource);
+        stripedPool.release(resource);
+    }
+
+    @Benchmark
+    public void stripedBorrowWorkAndRelease(Blackhole blackhole) throws InterruptedException {
+        Object resource = stripedPool.get();
+        Blackhole.consumeCPU(100);
+        blackhole.consume(resource);
+        stripedPool.release(resource);
+    }
+}
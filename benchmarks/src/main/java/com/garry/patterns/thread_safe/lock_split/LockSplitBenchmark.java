@@ -0,0 +1,63 @@
+package com.garry.patterns.thread_safe.lock_split;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LockSplit: readers and writers of state guarded by separate locks
+ *
+ * "independent" touches the hot state and another state, which have their own locks;
+ * "shared" touches another and other state, which share lockOtherStates.
+ * The difference between the two is what splitting the lock buys
+ */
+@State(Scope.Group)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LockSplitBenchmark {
+
+    LockSplit lockSplit = new LockSplit();
+
+    Object value = new Object();
+
+    @Benchmark
+    @Group("independent")
+    @GroupThreads(2)
+    public Object independentHotReader() {
+        return lockSplit.stateReader();
+    }
+
+    @Benchmark
+    @Group("independent")
+    @GroupThreads(2)
+    public void independentAnotherWriter() {
+        lockSplit.anotherStateWriterMethod(value);
+    }
+
+    @Benchmark
+    @Group("shared")
+    @GroupThreads(2)
+    public Object sharedOtherReader() {
+        return lockSplit.otherStateReader();
+    }
+
+    @Benchmark
+    @Group("shared")
+    @GroupThreads(2)
+    public void sharedAnotherWriter() {
+        lockSplit.anotherStateWriterMethod(value);
+    }
+}
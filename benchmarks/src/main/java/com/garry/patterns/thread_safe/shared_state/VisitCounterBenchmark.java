@@ -0,0 +1,64 @@
+package com.garry.patterns.thread_safe.shared_state;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * VisitCounter: every operation takes the object's monitor
+ *
+ * increase() alone scales with -t; the groups mix readers and writers
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VisitCounterBenchmark {
+
+    VisitCounter counter = new VisitCounter();
+
+    @Benchmark
+    public void increase() {
+        counter.increase();
+    }
+
+    @Benchmark
+    @Group("readMostly")
+    @GroupThreads(3)
+    public int readMostlyReader() {
+        return counter.actualValue();
+    }
+
+    @Benchmark
+    @Group("readMostly")
+    @GroupThreads(1)
+    public void readMostlyWriter() {
+        counter.increase();
+    }
+
+    @Benchmark
+    @Group("writeMostly")
+    @GroupThreads(1)
+    public int writeMostlyReader() {
+        return counter.actualValue();
+    }
+
+    @Benchmark
+    @Group("writeMostly")
+    @GroupThreads(3)
+    public void writeMostlyWriter() {
+        counter.increase();
+    }
+}
@@ -0,0 +1,158 @@
+package com.garry.features.executors.work_stealing.basic;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A group of TaskLets that can be waited for
+ *
+ * The group only counts its pending TaskLets: joining a TaskLet is one atomic add
+ * and completing it one atomic decrement, with no lock and no per-TaskLet bookkeeping.
+ * Threads that wait for the group push themselves on a lock-free stack and park; the
+ * TaskLet that brings the count to zero takes the whole stack and unparks them.
+ * A group nobody waits for never allocates anything besides itself.
+ *
+ * A TaskLet that throws still completes, the first failure of the group is kept and
+ * rethrown to its waiters, wrapped in a CompletionException, once the group is done.
+ *
+ * A group can be reused: once done, new TaskLets can be spawned in it and waited for again.
+ * The failure stays until reset() drops it, a group that went through zero pending TaskLets
+ * between two spawns doesn't lose it
+ */
+public class CompletionGroup {
+
+    private static final VarHandle PENDING;
+    private static final VarHandle WAITERS;
+    private static final VarHandle FAILURE;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            PENDING = lookup.findVarHandle(CompletionGroup.class, "pending", long.class);
+            WAITERS = lookup.findVarHandle(CompletionGroup.class, "waiters", WaitNode.class);
+            FAILURE = lookup.findVarHandle(CompletionGroup.class, "failure", Throwable.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static final class WaitNode {
+        final Thread thread;
+        WaitNode next;
+
+        WaitNode(Thread thread) {
+            this.thread = thread;
+        }
+    }
+
+    private volatile long pending = 0;
+
+    // Treiber stack of parked waiters
+    private volatile WaitNode waiters;
+
+    // first exception thrown by a TaskLet of the group since the last reset()
+    private volatile Throwable failure;
+
+    // a TaskLet joined the group, called before the TaskLet is published
+    void taskSpawned() {
+        PENDING.getAndAdd(this, 1L);
+    }
+
+    // a TaskLet of the group threw, called before taskCompleted() so the waiters see it
+    void taskFailed(Throwable cause) {
+        FAILURE.compareAndSet(this, (Throwable) null, cause);
+    }
+
+    // a TaskLet of the group completed
+    void taskCompleted() {
+        long before = (long) PENDING.getAndAdd(this, -1L);
+        if (before == 1 && waiters != null) {
+            releaseWaiters();
+        }
+    }
+
+    public boolean isDone() {
+        return pending == 0;
+    }
+
+    public long pendingTasks() {
+        return pending;
+    }
+
+    // the first exception thrown by a TaskLet of the group, null if none
+    public Throwable failure() {
+        return failure;
+    }
+
+    /**
+     * Waits for the group to be done
+     *
+     * @throws CompletionException if a TaskLet of the group threw, with its exception as the cause
+     */
+    public void await() throws InterruptedException {
+        if (!isDone()) {
+            push();
+            while (!isDone()) {
+                LockSupport.park(this);
+                if (Thread.interrupted()) {
+                    // the node stays on the stack and will be unparked for nothing, which is harmless
+                    throw new InterruptedException();
+                }
+            }
+        }
+        reportFailure();
+    }
+
+    public void awaitUninterruptibly() {
+        if (!isDone()) {
+            boolean interrupted = false;
+            push();
+            while (!isDone()) {
+                LockSupport.park(this);
+                if (Thread.interrupted())
+                    interrupted = true;
+            }
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+        reportFailure();
+    }
+
+    /**
+     * Drops the failure, so that the group can be reused for TaskLets unrelated to it
+     *
+     * @throws IllegalStateException if TaskLets of the group are still pending
+     */
+    public void reset() {
+        if (!isDone())
+            throw new IllegalStateException("The group still has pending TaskLets");
+        failure = null;
+    }
+
+    void reportFailure() {
+        Throwable cause = failure;
+        if (cause != null)
+            throw new CompletionException(cause);
+    }
+
+    // the node is pushed before the waiter checks the count, and the last completer looks at
+    // the stack after it zeroed the count, so either the waiter sees zero or it is unparked
+    private void push() {
+        WaitNode node = new WaitNode(Thread.currentThread());
+        WaitNode head;
+        do {
+            head = waiters;
+            node.next = head;
+        } while (!WAITERS.compareAndSet(this, head, node));
+    }
+
+    private void releaseWaiters() {
+        WaitNode node = (WaitNode) WAITERS.getAndSet(this, (WaitNode) null);
+        while (node != null) {
+            LockSupport.unpark(node.thread);
+            node = node.next;
+        }
+    }
+}
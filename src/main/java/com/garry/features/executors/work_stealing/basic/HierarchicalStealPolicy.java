@@ -0,0 +1,87 @@
+package com.garry.features.executors.work_stealing.basic;
+
+/**
+ * Tries the servers of the thief's own node first and only then the remote ones
+ *
+ * The topology map gives the node (socket, NUMA node, L3 group...) of every server.
+ * Stealing from a near server keeps the TaskLet and the data it touches in the caches
+ * shared with the thief; cross-node steals still happen, but only when the whole
+ * node ran out of work. Within each level the victims are visited from a random start.
+ */
+public class HierarchicalStealPolicy implements StealPolicy {
+
+    // nodeOfServer[i] is the node server i runs on
+    private final int[] nodeOfServer;
+
+    public HierarchicalStealPolicy(int[] nodeOfServer) {
+        this.nodeOfServer = nodeOfServer.clone();
+    }
+
+    // servers 0..serversPerNode-1 on node 0, the next serversPerNode on node 1 and so on
+    public static HierarchicalStealPolicy ofNodes(int numServers, int serversPerNode) {
+        if (serversPerNode < 1)
+            throw new IllegalArgumentException("serversPerNode must be positive");
+        int[] nodeOfServer = new int[numServers];
+        for (int i = 0; i < numServers; i++) {
+            nodeOfServer[i] = i / serversPerNode;
+        }
+        return new HierarchicalStealPolicy(nodeOfServer);
+    }
+
+    @Override
+    public VictimSelector selectorFor(int thief, int numServers) {
+        if (nodeOfServer.length != numServers)
+            throw new IllegalArgumentException("The topology map has " + nodeOfServer.length
+                    + " servers, the scheduler " + numServers);
+        int nearCount = 0;
+        for (int i = 0; i < numServers; i++) {
+            if (i != thief && nodeOfServer[i] == nodeOfServer[thief])
+                nearCount++;
+        }
+        int[] near = new int[nearCount];
+        int[] far = new int[numServers - 1 - nearCount];
+        int n = 0, f = 0;
+        for (int i = 0; i < numServers; i++) {
+            if (i == thief)
+                continue;
+            if (nodeOfServer[i] == nodeOfServer[thief])
+                near[n++] = i;
+            else
+                far[f++] = i;
+        }
+        return new HierarchicalSelector(thief, near, far);
+    }
+
+    private static class HierarchicalSelector implements VictimSelector {
+        private final int[] near;
+        private final int[] far;
+        private final XorShift random;
+        private int nearStart;
+        private int farStart;
+        private int visited;
+
+        HierarchicalSelector(int thief, int[] near, int[] far) {
+            this.near = near;
+            this.far = far;
+            this.random = new XorShift(thief);
+        }
+
+        @Override
+        public void begin() {
+            nearStart = near.length == 0 ? 0 : random.nextInt(near.length);
+            farStart = far.length == 0 ? 0 : random.nextInt(far.length);
+            visited = 0;
+        }
+
+        @Override
+        public int next() {
+            int i = visited++;
+            if (i < near.length)
+                return near[(nearStart + i) % near.length];
+            i -= near.length;
+            if (i < far.length)
+                return far[(farStart + i) % far.length];
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.garry.features.executors.work_stealing.basic;
+
+/**
+ * Visits every other server once per round, starting from a random one, so that
+ * idle servers spread over the victims instead of all trying the same one first
+ */
+public class RandomStealPolicy implements StealPolicy {
+
+    @Override
+    public VictimSelector selectorFor(int thief, int numServers) {
+        return new RandomSelector(thief, numServers);
+    }
+
+    private static class RandomSelector implements VictimSelector {
+        private final int thief;
+        private final int numServers;
+        private final XorShift random;
+        private int start;
+        private int visited;
+
+        RandomSelector(int thief, int numServers) {
+            this.thief = thief;
+            this.numServers = numServers;
+            this.random = new XorShift(thief);
+        }
+
+        @Override
+        public void begin() {
+            start = random.nextInt(numServers);
+            visited = 0;
+        }
+
+        @Override
+        public int next() {
+            while (visited < numServers) {
+                int victim = (start + visited++) % numServers;
+                if (victim != thief)
+                    return victim;
+            }
+            return -1;
+        }
+    }
+}
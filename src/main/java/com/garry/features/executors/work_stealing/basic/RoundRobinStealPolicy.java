@@ -0,0 +1,44 @@
+package com.garry.features.executors.work_stealing.basic;
+
+/**
+ * Visits the other servers in order. Server i starts from server i + 1, and every round
+ * continues from the victim after the last one tried, so the thieves are spread over
+ * the victims deterministically
+ */
+public class RoundRobinStealPolicy implements StealPolicy {
+
+    @Override
+    public VictimSelector selectorFor(int thief, int numServers) {
+        return new RoundRobinSelector(thief, numServers);
+    }
+
+    private static class RoundRobinSelector implements VictimSelector {
+        private final int thief;
+        private final int numServers;
+        private int cursor;
+        private int visited;
+
+        RoundRobinSelector(int thief, int numServers) {
+            this.thief = thief;
+            this.numServers = numServers;
+            this.cursor = (thief + 1) % numServers;
+        }
+
+        @Override
+        public void begin() {
+            visited = 0;
+        }
+
+        @Override
+        public int next() {
+            while (visited < numServers) {
+                int victim = cursor;
+                cursor = (cursor + 1) % numServers;
+                visited++;
+                if (victim != thief)
+                    return victim;
+            }
+            return -1;
+        }
+    }
+}
@@ -1,14 +1,21 @@
 package com.garry.features.executors.work_stealing.basic;
 
-import java.util.HashSet;
-
 public interface Scheduler {
 
+    // add tasklet to t.group and to the deque of the calling server
     void spawn(TaskLet t);
 
-    // add tasklet to t.master and to add queue
-    void waitForAll(HashSet<TaskLet> master);
+    // wait for all tasklets of group to complete, throws a CompletionException if one of them threw
+    void waitForAll(CompletionGroup group);
+
+    // wait until every spawned tasklet, whatever its group, has completed
+    void awaitQuiescence() throws InterruptedException;
+
+    // snapshot of the per-server and aggregate counters, can be taken while running
+    SchedulerStatistics statistics();
 
-    // wait for all
     void printStats();
+
+    // stops the servers, tasklets still queued are discarded
+    void shutdown();
 }
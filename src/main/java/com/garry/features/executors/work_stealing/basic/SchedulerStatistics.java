@@ -0,0 +1,100 @@
+package com.garry.features.executors.work_stealing.basic;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Snapshot of the statistics of a scheduler, times are in nanoseconds
+ *
+ * The counters of the servers are read one after the other while they keep running,
+ * so the totals of a snapshot taken during a computation are approximate
+ */
+public class SchedulerStatistics {
+
+    public final int numServers;
+    // spawned from threads that are not servers
+    public final long externalSubmissions;
+    // spawned and not completed yet, when the snapshot was taken
+    public final long activeTasks;
+    public final long totalSpawned;
+    public final long totalExecuted;
+    public final long totalSteals;
+    public final long totalSuccessfulSteals;
+    public final long totalFailedSteals;
+    public final long totalIdleTime;
+    public final long totalCPUTime;
+    // the longest clock time of the servers, i.e. the wall time of the scheduler
+    public final long totalClockTime;
+    public final List<ServerStatistics> servers;
+
+    SchedulerStatistics(long externalSubmissions, long activeTasks, List<ServerStatistics> servers) {
+        long spawned = 0, executed = 0, steals = 0, successfulSteals = 0, failedSteals = 0, idle = 0, cpu = 0, clock = 0;
+        for (ServerStatistics server : servers) {
+            spawned += server.numTaskletsSpawned;
+            executed += server.numTaskletInitiations;
+            steals += server.numTaskletSteals;
+            successfulSteals += server.numSuccessfulSteals;
+            failedSteals += server.numFailedSteals;
+            idle += server.idleTime;
+            cpu += server.CPUTime;
+            clock = Math.max(clock, server.ClockTime);
+        }
+        this.numServers = servers.size();
+        this.externalSubmissions = externalSubmissions;
+        this.activeTasks = activeTasks;
+        this.totalSpawned = spawned;
+        this.totalExecuted = executed;
+        this.totalSteals = steals;
+        this.totalSuccessfulSteals = successfulSteals;
+        this.totalFailedSteals = failedSteals;
+        this.totalIdleTime = idle;
+        this.totalCPUTime = cpu;
+        this.totalClockTime = clock;
+        this.servers = Collections.unmodifiableList(servers);
+    }
+
+    public double stealRatio() {
+        return totalExecuted == 0 ? 0 : (double) totalSteals / totalExecuted;
+    }
+
+    // CPU time over the wall time available to all the servers
+    public double utilization() {
+        long available = totalClockTime * numServers;
+        return available == 0 ? 0 : (double) totalCPUTime / available;
+    }
+
+    // flat view of the totals, for exporting to a metrics system
+    public Map<String, Long> asMap() {
+        Map<String, Long> values = new LinkedHashMap<>();
+        values.put("servers", (long) numServers);
+        values.put("externalSubmissions", externalSubmissions);
+        values.put("activeTasks", activeTasks);
+        values.put("spawned", totalSpawned);
+        values.put("executed", totalExecuted);
+        values.put("steals", totalSteals);
+        values.put("successfulSteals", totalSuccessfulSteals);
+        values.put("failedSteals", totalFailedSteals);
+        values.put("idleNanos", totalIdleTime);
+        values.put("cpuNanos", totalCPUTime);
+        values.put("clockNanos", totalClockTime);
+        return values;
+    }
+
+    @Override
+    public String toString() {
+        return "Servers: " + numServers
+                + " external submissions: " + externalSubmissions
+                + " spawned: " + totalSpawned
+                + " executed: " + totalExecuted
+                + " steals: " + totalSteals
+                + " successful steals: " + totalSuccessfulSteals
+                + " failed steals: " + totalFailedSteals
+                + " steal ratio: " + String.format("%.3f", stealRatio())
+                + " idle (ms): " + totalIdleTime / 1_000_000
+                + " total CPU time (ms): " + totalCPUTime / 1_000_000
+                + " clock time (ms): " + totalClockTime / 1_000_000
+                + " utilization: " + String.format("%.2f", utilization());
+    }
+}
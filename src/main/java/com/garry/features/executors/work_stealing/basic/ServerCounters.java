@@ -0,0 +1,56 @@
+package com.garry.features.executors.work_stealing.basic;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * The live counters of one server
+ *
+ * Every counter has a single writer, the server itself, so an increment is a plain
+ * read plus an opaque write: no CAS, no fence. Other threads read them with opaque
+ * reads to take snapshots, which are therefore only approximately consistent with
+ * each other.
+ *
+ * The counters live in the middle of a long[] with a cache line of padding on each
+ * side; unlike padding fields, array elements can't be reordered by the JVM, so the
+ * counters of two servers never share a cache line.
+ */
+class ServerCounters {
+
+    static final int SPAWNED = 0;
+    static final int EXECUTED = 1;
+    static final int STOLEN = 2;
+    static final int SUCCESSFUL_STEALS = 3;
+    static final int FAILED_STEALS = 4;
+    static final int IDLE_NANOS = 5;
+    static final int CPU_NANOS = 6;
+    static final int CLOCK_NANOS = 7;
+    private static final int NUM_COUNTERS = 8;
+
+    // 8 longs, 64 bytes
+    private static final int PAD = 8;
+
+    private static final VarHandle COUNTERS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final long[] counters = new long[PAD + NUM_COUNTERS + PAD];
+
+    // owner thread only
+    public void increment(int counter) {
+        add(counter, 1);
+    }
+
+    // owner thread only
+    public void add(int counter, long delta) {
+        int index = PAD + counter;
+        COUNTERS.setOpaque(counters, index, counters[index] + delta);
+    }
+
+    // owner thread only
+    public void set(int counter, long value) {
+        COUNTERS.setOpaque(counters, PAD + counter, value);
+    }
+
+    public long get(int counter) {
+        return (long) COUNTERS.getOpaque(counters, PAD + counter);
+    }
+}
@@ -0,0 +1,60 @@
+package com.garry.features.executors.work_stealing.basic;
+
+/**
+ * Snapshot of the counters of one server, times are in nanoseconds
+ */
+public class ServerStatistics {
+
+    public final int serverIndex;
+    // spawned by TaskLets running on this server
+    public final long numTaskletsSpawned;
+    // run by this server, stolen ones included
+    public final long numTaskletInitiations;
+    // TaskLets taken from other servers, a batch counts all of its TaskLets
+    public final long numTaskletSteals;
+    // rounds over the victims that stole a TaskLet, or a batch of them
+    public final long numSuccessfulSteals;
+    // rounds over all the victims that found nothing to steal
+    public final long numFailedSteals;
+    public final long idleTime;
+    public final long CPUTime;
+    public final long ClockTime;
+
+    ServerStatistics(int serverIndex, long numTaskletsSpawned, long numTaskletInitiations, long numTaskletSteals,
+                     long numSuccessfulSteals, long numFailedSteals, long idleTime, long CPUTime, long ClockTime) {
+        this.serverIndex = serverIndex;
+        this.numTaskletsSpawned = numTaskletsSpawned;
+        this.numTaskletInitiations = numTaskletInitiations;
+        this.numTaskletSteals = numTaskletSteals;
+        this.numSuccessfulSteals = numSuccessfulSteals;
+        this.numFailedSteals = numFailedSteals;
+        this.idleTime = idleTime;
+        this.CPUTime = CPUTime;
+        this.ClockTime = ClockTime;
+    }
+
+    // fraction of the executed TaskLets that were stolen; close to 1 means the tasks are too fine-grained
+    // to stay where they were spawned, close to 0 with idle servers means there is too little parallel slack
+    public double stealRatio() {
+        return numTaskletInitiations == 0 ? 0 : (double) numTaskletSteals / numTaskletInitiations;
+    }
+
+    // fraction of the rounds of stealing that found something, whatever the size of their batch
+    public double stealSuccessRatio() {
+        long attempts = numSuccessfulSteals + numFailedSteals;
+        return attempts == 0 ? 0 : (double) numSuccessfulSteals / attempts;
+    }
+
+    @Override
+    public String toString() {
+        return "Server " + serverIndex
+                + " spawned: " + numTaskletsSpawned
+                + " executed: " + numTaskletInitiations
+                + " steals: " + numTaskletSteals
+                + " successful steals: " + numSuccessfulSteals
+                + " failed steals: " + numFailedSteals
+                + " idle (ms): " + idleTime / 1_000_000
+                + " CPU time (ms): " + CPUTime / 1_000_000
+                + " clock time (ms): " + ClockTime / 1_000_000;
+    }
+}
@@ -0,0 +1,22 @@
+package com.garry.features.executors.work_stealing.basic;
+
+/**
+ * Decides in which order a thief visits the other servers
+ *
+ * Every server gets its own VictimSelector, so a selector can keep state (a random
+ * seed, a cursor) without any synchronization. A round of stealing calls begin()
+ * and then next() until it returns -1 or a steal succeeds.
+ */
+public interface StealPolicy {
+
+    VictimSelector selectorFor(int thief, int numServers);
+
+    interface VictimSelector {
+
+        // starts a new round of stealing
+        void begin();
+
+        // index of the next victim to try in this round, never the thief itself; -1 when the round is over
+        int next();
+    }
+}
@@ -1,7 +1,5 @@
 package com.garry.features.executors.work_stealing.basic;
 
-import java.util.HashSet;
-import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.RecursiveAction;
 
 /**
@@ -9,20 +7,13 @@ import java.util.concurrent.RecursiveAction;
  */
 abstract class TaskLet extends RecursiveAction {
 
-    public final HashSet<TaskLet> master;
+    // the group this TaskLet is counted in from spawn() until it completes;
+    // the Scheduler is the only one updating the count
+    public final CompletionGroup group;
 
-    protected ConcurrentLinkedDeque<TaskLet> originDeque;
-
-    // Master object keeps set of TaskLets
-    // TaskLet is removed from its master when it completes
-    // If master is empty at that point, notify() is called
-    // master() should only be manipulated in Scheduler or in one of
-    // its Server threads, and only in a synchronized block
-    public TaskLet(HashSet<TaskLet> master) {
-        this.master = master;
+    public TaskLet(CompletionGroup group) {
+        this.group = group;
     }
 
     abstract public boolean isLeaf();
-
-    abstract public void addDeque(ConcurrentLinkedDeque<TaskLet> originDeque);
 }
@@ -0,0 +1,123 @@
+package com.garry.features.executors.work_stealing.basic;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Chase-Lev work-stealing deque
+ *
+ * "Dynamic Circular Work-Stealing Deque" (Chase, Lev - SPAA 2005), with the
+ * memory ordering corrections described in "Correct and Efficient Work-Stealing
+ * for Weak Memory Models" (Le, Pop, Cohen, Zappa Nardelli - PPoPP 2013)
+ *
+ * The owner thread pushes and pops at the bottom without any CAS. Thieves take
+ * from the top and race each other (and the owner, when only one element is left)
+ * with a CAS on the top index. The backing array is circular and grows when full,
+ * so a push never allocates a node.
+ *
+ * - push(), pop(): owner thread only
+ * - steal(), size(), isEmpty(): any thread
+ */
+class WorkStealingDeque<E> {
+
+    private static final int INITIAL_CAPACITY = 1 << 6;
+
+    private static final VarHandle TOP;
+
+    static {
+        try {
+            TOP = MethodHandles.lookup()
+                    .findVarHandle(WorkStealingDeque.class, "top", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // index of the oldest element, only ever incremented (by CAS)
+    private volatile long top;
+    // index of the next free slot, written by the owner only
+    private volatile long bottom;
+    // capacity is always a power of two, replaced (never shrunk) by the owner on growth
+    private volatile Object[] array = new Object[INITIAL_CAPACITY];
+
+    public void push(E e) {
+        long b = bottom;
+        long t = top;
+        Object[] a = array;
+        if (b - t > a.length - 1) {
+            a = grow(a, t, b);
+        }
+        a[(int) b & (a.length - 1)] = e;
+        // the volatile write publishes the element to thieves
+        bottom = b + 1;
+    }
+
+    @SuppressWarnings("unchecked")
+    public E pop() {
+        long b = bottom - 1;
+        Object[] a = array;
+        // volatile write followed by volatile read: thieves either see the new
+        // bottom or we see their top, never neither
+        bottom = b;
+        long t = top;
+        long size = b - t;
+        if (size < 0) {
+            // empty, restore bottom
+            bottom = t;
+            return null;
+        }
+        int index = (int) b & (a.length - 1);
+        E e = (E) a[index];
+        if (size > 0) {
+            a[index] = null;
+            return e;
+        }
+        // last element, race against thieves for it
+        if (!TOP.compareAndSet(this, t, t + 1)) {
+            e = null;
+        } else {
+            a[index] = null;
+        }
+        bottom = t + 1;
+        return e;
+    }
+
+    /**
+     * Takes the oldest element. Returns null when the deque is empty or when
+     * another thread won the race for the element
+     */
+    @SuppressWarnings("unchecked")
+    public E steal() {
+        long t = top;
+        long b = bottom;
+        if (t >= b) {
+            return null;
+        }
+        Object[] a = array;
+        // slots between top and bottom are never overwritten before top moves past them,
+        // so reading before the CAS is safe. The stolen slot is left for the owner to overwrite
+        E e = (E) a[(int) t & (a.length - 1)];
+        if (!TOP.compareAndSet(this, t, t + 1)) {
+            return null;
+        }
+        return e;
+    }
+
+    public int size() {
+        long size = bottom - top;
+        return size < 0 ? 0 : (int) size;
+    }
+
+    public boolean isEmpty() {
+        return bottom <= top;
+    }
+
+    private Object[] grow(Object[] old, long t, long b) {
+        Object[] a = new Object[old.length << 1];
+        for (long i = t; i < b; i++) {
+            a[(int) i & (a.length - 1)] = old[(int) i & (old.length - 1)];
+        }
+        array = a;
+        return a;
+    }
+}
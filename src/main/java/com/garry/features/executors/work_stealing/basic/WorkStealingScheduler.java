@@ -2,111 +2,380 @@ package com.garry.features.executors.work_stealing.basic;
 
 import java.lang.management.ManagementFactory;
 import java.lang.management.ThreadMXBean;
-import java.util.HashSet;
-import java.util.Stack;
-import java.util.concurrent.ConcurrentLinkedDeque;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * https://github.com/annabonaldo/WorkStealingScheduler/blob/master/src/Scheduler.java
+ *
+ * Every server owns a Chase-Lev deque (see WorkStealingDeque). A server pushes the
+ * TaskLets it spawns to the bottom of its own deque and pops them from there (LIFO,
+ * good locality); an idle server steals from the top of a victim (FIFO, takes the oldest
+ * and usually the biggest pieces of work). The order in which victims are tried is up to
+ * a StealPolicy, random by default. A thief takes up to half of the victim's TaskLets in
+ * one go (bounded by maxStealBatch), so it doesn't have to come back for every one of them.
+ *
+ * Servers that can't find work spin for a while and then park. spawn() only pays for a
+ * wake up when some server is actually parked.
+ *
+ * Termination is detected with counters instead of inspecting the servers: a TaskLet is
+ * counted, in its own CompletionGroup and in the group of all the TaskLets, from spawn()
+ * until it completed, so a TaskLet in the middle of being stolen is never mistaken for an
+ * empty scheduler. A TaskLet that throws completes too: its group keeps the failure and
+ * waitForAll() rethrows it.
  */
-public class WorkStealingScheduler implements Scheduler{
+public class WorkStealingScheduler implements Scheduler {
 
-    private static AtomicBoolean shutdownNow = new AtomicBoolean(false);
+    // failed rounds of stealing before a server parks
+    private static final int SPINS_BEFORE_PARK = 64;
 
-    private ServerThread[] servers;
+    // upper bound for the TaskLets taken from a victim in one steal
+    private static final int DEFAULT_MAX_STEAL_BATCH = 16;
 
+    private final ServerThread[] servers;
 
+    private final int maxStealBatch;
 
+    // TaskLets spawned by threads that are not servers (e.g. the root TaskLet)
+    private final ConcurrentLinkedQueue<TaskLet> submissions = new ConcurrentLinkedQueue<>();
+    private final LongAdder externalSubmissions = new LongAdder();
+
+    // number of parked servers, spawn() only looks for someone to wake up when it's positive
+    private final AtomicInteger parkedServers = new AtomicInteger(0);
+
+    // every TaskLet spawned and not completed yet, zero means quiescent
+    private final CompletionGroup activeTasks = new CompletionGroup();
+
+    // servers between finding work and going idle, plus one for every server helping in
+    // waitForAll(): at least as many as the TaskLets running. Only updated when a server
+    // changes state, not for every TaskLet
+    private final AtomicInteger busyServers = new AtomicInteger(0);
+
+    private volatile boolean shutdownNow = false;
+
+    public WorkStealingScheduler() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public WorkStealingScheduler(int numServers) {
+        this(numServers, new RandomStealPolicy());
+    }
+
+    public WorkStealingScheduler(int numServers, StealPolicy stealPolicy) {
+        this(numServers, stealPolicy, DEFAULT_MAX_STEAL_BATCH);
+    }
+
+    // maxStealBatch = 1 steals a single TaskLet at a time
+    public WorkStealingScheduler(int numServers, StealPolicy stealPolicy, int maxStealBatch) {
+        if (numServers < 1)
+            throw new IllegalArgumentException("At least one server is needed");
+        if (maxStealBatch < 1)
+            throw new IllegalArgumentException("maxStealBatch must be positive");
+        this.maxStealBatch = maxStealBatch;
+        this.servers = new ServerThread[numServers];
+        for (int i = 0; i < numServers; i++) {
+            servers[i] = new ServerThread(i, stealPolicy.selectorFor(i, numServers));
+        }
+        for (ServerThread server : servers) {
+            server.start();
+        }
+    }
 
     @Override
     public void spawn(TaskLet t) {
+        // counted before it becomes visible to any server
+        t.group.taskSpawned();
+        activeTasks.taskSpawned();
+        ServerThread server = currentServer();
+        if (server != null) {
+            server.deque.push(t);
+            server.counters.increment(ServerCounters.SPAWNED);
+        } else {
+            submissions.offer(t);
+            externalSubmissions.increment();
+        }
+        signalWork();
+    }
 
+    @Override
+    public void waitForAll(CompletionGroup group) {
+        ServerThread server = currentServer();
+        if (server != null) {
+            // a server must not block: it keeps executing TaskLets until the group is done
+            server.helpUntilDone(group);
+            return;
+        }
+        group.awaitUninterruptibly();
     }
 
     @Override
-    public void waitForAll(HashSet<TaskLet> master) {
+    public void awaitQuiescence() throws InterruptedException {
+        if (currentServer() != null)
+            throw new IllegalStateException("A server can't wait for the quiescence of its own scheduler");
+        activeTasks.await();
+    }
 
+    @Override
+    public SchedulerStatistics statistics() {
+        List<ServerStatistics> serverStats = new ArrayList<>(servers.length);
+        for (ServerThread server : servers) {
+            serverStats.add(server.statistics());
+        }
+        return new SchedulerStatistics(externalSubmissions.sum(), activeTasks.pendingTasks(), serverStats);
     }
 
     @Override
     public void printStats() {
+        SchedulerStatistics stats = statistics();
+        for (ServerStatistics serverStats : stats.servers) {
+            System.out.println(serverStats);
+        }
+        System.out.println(stats);
+    }
 
+    @Override
+    public void shutdown() {
+        shutdownNow = true;
+        for (ServerThread server : servers) {
+            LockSupport.unpark(server);
+        }
+        boolean interrupted = false;
+        for (ServerThread server : servers) {
+            while (server.isAlive()) {
+                try {
+                    server.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
     }
 
-    private class ServerThread implements Runnable {
-        private ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
-        // stores the Tasklet the server is running
-        private Stack<TaskLet> stack = new Stack<>();
+    private ServerThread currentServer() {
+        Thread current = Thread.currentThread();
+        if (current instanceof ServerThread) {
+            ServerThread server = (ServerThread) current;
+            if (server.scheduler() == this)
+                return server;
+        }
+        return null;
+    }
+
+    // the caller just made work visible; wake up one parked server, if any.
+    // parkedServers is read after the work was counted and published, and a server re-checks
+    // for work after incrementing it, so either we see the server parked or the server sees the work
+    private void signalWork() {
+        if (parkedServers.get() == 0)
+            return;
+        for (ServerThread server : servers) {
+            if (server.parked) {
+                LockSupport.unpark(server);
+                return;
+            }
+        }
+    }
+
+    private void complete(TaskLet t) {
+        t.group.taskCompleted();
+        activeTasks.taskCompleted();
+    }
+
+    private class ServerThread extends Thread {
+        private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
         // the identifier of the server
-        private int myIndex = 0;
+        private final int myIndex;
 
         // stores the Tasklets the server need to run.When dealing with its own deque,
-        // a server always adds and polls from the bottom
-        public ConcurrentLinkedDeque<TaskLet> deque = new ConcurrentLinkedDeque<>();
-        // about metric
-        public final ServerStatistics stats = new ServerStatistics();
+        // a server always pushes and pops at the bottom, thieves steal from the top
+        public final WorkStealingDeque<TaskLet> deque = new WorkStealingDeque<>();
+        // about metric, written by this server only
+        public final ServerCounters counters = new ServerCounters();
+        // -1 until the server started
+        private volatile long startCpuTime = -1;
+        private volatile long startClockTime;
+
+        // the order in which this server visits the victims
+        private final StealPolicy.VictimSelector victims;
 
-        public ServerThread(int myIndex){
+        private volatile boolean parked = false;
+
+        public ServerThread(int myIndex, StealPolicy.VictimSelector victims){
+            super("work-stealing-server-" + myIndex);
             this.myIndex = myIndex;
+            this.victims = victims;
+            setDaemon(true);
         }
 
-
-        // defines the standard behaviour of the server.If the server's deque is void,
-        // the server calls the steal method;otherwise it polls the last Tasklet from the bottom of the deque,
-        // pushed it into the stack and then execute it
+        // defines the standard behaviour of the server.It pops the last Tasklet from the bottom
+        // of its own deque and executes it;when the deque is empty the server tries stealing,
+        // and when there is nothing to steal either it eventually parks
         @Override
         public void run() {
-            shutdownNow.set(false);
-
-            long startCpuTime = threadMXBean.getCurrentThreadCpuTime();
-            long startClockTimer = System.nanoTime();
-            while (!shutdownNow.get())
+            startClockTime = System.nanoTime();
+            startCpuTime = threadMXBean.getCurrentThreadCpuTime();
+            int idleRounds = 0;
+            long idleSince = 0;
+            boolean busy = false;
+            while (!shutdownNow)
             {
-                if (deque.isEmpty()) {
-                    steal();
-                }
-                while (!deque.isEmpty()){
-                    TaskLet t = deque.pollLast();
-                    if (t != null){
-                        stack.push(t);
-                        t.invoke();
-                        stack.pop();
+                TaskLet t = findWork();
+                if (t != null) {
+                    if (!busy) {
+                        busy = true;
+                        busyServers.incrementAndGet();
+                    }
+                    if (idleSince != 0) {
+                        counters.add(ServerCounters.IDLE_NANOS, System.nanoTime() - idleSince);
+                        idleSince = 0;
+                    }
+                    idleRounds = 0;
+                    execute(t);
+                } else {
+                    if (busy) {
+                        busy = false;
+                        busyServers.decrementAndGet();
+                    }
+                    if (idleSince == 0)
+                        idleSince = System.nanoTime();
+                    if (++idleRounds < SPINS_BEFORE_PARK) {
+                        Thread.onSpinWait();
+                    } else {
+                        idleRounds = 0;
+                        park();
                     }
                 }
-                shutdownNow.set(checkServers());
             }
-            this.stats.CPUTime = threadMXBean.getCurrentThreadCpuTime() - startCpuTime;
-            this.stats.ClockTime = System.nanoTime() - startClockTimer;
+            if (idleSince != 0)
+                counters.add(ServerCounters.IDLE_NANOS, System.nanoTime() - idleSince);
+            counters.set(ServerCounters.CPU_NANOS, threadMXBean.getCurrentThreadCpuTime() - startCpuTime);
+            counters.set(ServerCounters.CLOCK_NANOS, System.nanoTime() - startClockTime);
         }
 
-        private boolean checkServers(){
+        // the times of a running server are measured on the spot, the ones of
+        // a terminated server are the values it recorded before exiting
+        ServerStatistics statistics() {
+            long clockTime = counters.get(ServerCounters.CLOCK_NANOS);
+            long cpuTime = counters.get(ServerCounters.CPU_NANOS);
+            long startCpu = startCpuTime;
+            if (clockTime == 0 && startCpu >= 0) {
+                long now = threadMXBean.getThreadCpuTime(threadId());
+                cpuTime = now < 0 ? 0 : now - startCpu;
+                clockTime = System.nanoTime() - startClockTime;
+            }
+            return new ServerStatistics(myIndex,
+                    counters.get(ServerCounters.SPAWNED),
+                    counters.get(ServerCounters.EXECUTED),
+                    counters.get(ServerCounters.STOLEN),
+                    counters.get(ServerCounters.SUCCESSFUL_STEALS),
+                    counters.get(ServerCounters.FAILED_STEALS),
+                    counters.get(ServerCounters.IDLE_NANOS),
+                    cpuTime,
+                    clockTime);
+        }
+
+        WorkStealingScheduler scheduler() {
+            return WorkStealingScheduler.this;
+        }
 
-            for (int i = 0; i < servers.length; i++) {
-                if (!servers[i].deque.isEmpty() || !servers[i].stack.isEmpty())
-                    return false;
+        private TaskLet findWork() {
+            TaskLet t = deque.pop();
+            if (t == null)
+                t = submissions.poll();
+            if (t == null)
+                t = steal();
+            return t;
+        }
+
+        private void execute(TaskLet t) {
+            counters.increment(ServerCounters.EXECUTED);
+            try {
+                t.invoke();
+            } catch (Throwable e) {
+                // kept by the group and rethrown to whoever waits for it; the server goes on
+                t.group.taskFailed(e);
+            } finally {
+                complete(t);
             }
-            return true;
-        }
-
-        // having its own deque empty, the server tries stealing Tasklets from
-        // the top of someone else's deque.If the steal is successful the server may proceed with
-        // the Tasklet execution
-        public boolean steal(){
-            boolean stolen = false;
-
-            for (int i = 0; i < servers.length && (!stolen); i++) {
-                if (i != myIndex && !servers[i].deque.isEmpty()){
-                    TaskLet t = servers[i].deque.pollFirst();
-                    if (t != null){
-                        servers[myIndex].deque.addLast(t);
-                        servers[myIndex].stats.numTaskletSteals++;
-                        stolen = true;
+        }
+
+        // the TaskLet waiting and the ones it runs meanwhile are all running, count one more
+        private void helpUntilDone(CompletionGroup group) {
+            busyServers.incrementAndGet();
+            try {
+                while (!group.isDone()) {
+                    TaskLet t = findWork();
+                    if (t != null) {
+                        execute(t);
+                    } else {
+                        // the remaining TaskLets are running on other servers
+                        Thread.onSpinWait();
                     }
                 }
+            } finally {
+                busyServers.decrementAndGet();
             }
-            return stolen;
+            group.reportFailure();
         }
 
+        // a server parks unless there are more TaskLets in flight than busy servers, i.e.
+        // unless some are surely queued. Two counters are read, the deques are not scanned.
+        // Queued TaskLets that remain are in the deques of busy servers (an idle server's
+        // deque is empty), or in submissions, and every busy server looks there before going
+        // idle; a TaskLet spawned after the server counted itself parked wakes it in signalWork()
+        private void park() {
+            parked = true;
+            parkedServers.incrementAndGet();
+            try {
+                if (!shutdownNow && activeTasks.pendingTasks() <= busyServers.get())
+                    LockSupport.park(this);
+            } finally {
+                parkedServers.decrementAndGet();
+                parked = false;
+            }
+        }
+
+        // having its own deque empty, the server tries stealing from the top of someone
+        // else's deque, visiting the victims in the order given by the steal policy.
+        // Besides the Tasklet it returns, it moves up to half of what the victim had left
+        // to its own deque.
+        // Returns null if every victim was empty (or the races for their last Tasklet were lost)
+        public TaskLet steal(){
+            if (servers.length == 1)
+                return null;
+            victims.begin();
+            int victimIndex;
+            while ((victimIndex = victims.next()) >= 0) {
+                WorkStealingDeque<TaskLet> victim = servers[victimIndex].deque;
+                TaskLet t = victim.steal();
+                if (t != null){
+                    int stolen = 1;
+                    int batch = Math.min(maxStealBatch - 1, victim.size() / 2);
+                    for (int i = 0; i < batch; i++) {
+                        // one CAS per TaskLet: advancing top by more than one at once could
+                        // take TaskLets the owner is popping without a CAS
+                        TaskLet more = victim.steal();
+                        if (more == null)
+                            break;
+                        deque.push(more);
+                        stolen++;
+                    }
+                    counters.add(ServerCounters.STOLEN, stolen);
+                    counters.increment(ServerCounters.SUCCESSFUL_STEALS);
+                    // more work where this came from (or in our own deque now), let another parked server help
+                    if (stolen > 1 || !victim.isEmpty())
+                        signalWork();
+                    return t;
+                }
+            }
+            counters.increment(ServerCounters.FAILED_STEALS);
+            return null;
+        }
     }
 }
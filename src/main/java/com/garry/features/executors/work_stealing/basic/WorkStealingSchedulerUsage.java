@@ -0,0 +1,73 @@
+package com.garry.features.executors.work_stealing.basic;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.LongStream;
+
+/**
+ * Example: summing an array with fine-grained TaskLets
+ *
+ * Every TaskLet that is not a leaf spawns its two halves in the same group,
+ * so the root only has to wait for the group to be done
+ */
+public class WorkStealingSchedulerUsage {
+
+    static class SumTaskLet extends TaskLet {
+
+        private static final long serialVersionUID = 1L;
+        private static final int LEAF_SIZE = 1_000;
+
+        private final Scheduler scheduler;
+        private final long[] numbers;
+        private final int from;
+        private final int to;
+        private final LongAdder result;
+
+        SumTaskLet(CompletionGroup group, Scheduler scheduler, long[] numbers, int from, int to, LongAdder result) {
+            super(group);
+            this.scheduler = scheduler;
+            this.numbers = numbers;
+            this.from = from;
+            this.to = to;
+            this.result = result;
+        }
+
+        @Override
+        public boolean isLeaf() {
+            return to - from <= LEAF_SIZE;
+        }
+
+        @Override
+        protected void compute() {
+            if (isLeaf()) {
+                long sum = 0;
+                for (int i = from; i < to; i++) {
+                    sum += numbers[i];
+                }
+                result.add(sum);
+            } else {
+                int middle = (from + to) >>> 1;
+                scheduler.spawn(new SumTaskLet(group, scheduler, numbers, from, middle, result));
+                scheduler.spawn(new SumTaskLet(group, scheduler, numbers, middle, to, result));
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        long[] numbers = LongStream.range(0, 10_000_000L).toArray();
+
+        Scheduler scheduler = new WorkStealingScheduler();
+        for (int run = 0; run < 5; run++) {
+            CompletionGroup group = new CompletionGroup();
+            LongAdder result = new LongAdder();
+
+            var before = System.nanoTime();
+            scheduler.spawn(new SumTaskLet(group, scheduler, numbers, 0, numbers.length, result));
+            scheduler.waitForAll(group);
+            var after = System.nanoTime();
+
+            System.out.println("Result is: " + result.sum() + " in " + (after - before) / 1_000 + " us");
+        }
+        scheduler.shutdown();
+        scheduler.printStats();
+    }
+}
@@ -0,0 +1,29 @@
+package com.garry.features.executors.work_stealing.basic;
+
+/**
+ * Marsaglia's xorshift generator: cheap and good enough to pick victims.
+ * Not thread safe, every server owns its own
+ */
+class XorShift {
+
+    private int seed;
+
+    XorShift(int index) {
+        // odd multiplier, never zero for a non negative index
+        this.seed = (index + 1) * 0x9E3779B9;
+    }
+
+    int nextInt() {
+        int x = seed;
+        x ^= x << 13;
+        x ^= x >>> 17;
+        x ^= x << 5;
+        seed = x;
+        return x;
+    }
+
+    // in [0, bound)
+    int nextInt(int bound) {
+        return (nextInt() & Integer.MAX_VALUE) % bound;
+    }
+}
@@ -1,5 +1,7 @@
 package com.garry.features.forkjoin;
 
+import com.garry.patterns.divideconquer.AdaptiveThreshold;
+
 import java.math.BigInteger;
 import java.util.LinkedList;
 import java.util.List;
@@ -58,7 +60,11 @@ import java.util.concurrent.RecursiveTask;
  *    complete my task
  * else
  *    split my task into two small tasks
- *    execute both tasks and wait for the results
+ *    fork one of them, compute the other one directly and then join the forked one
+ *
+ * Forking both tasks and joining them leaves the current thread waiting with nothing to do;
+ * see com.garry.patterns.divideconquer.RecursiveReduce for a reusable version that also
+ * splits in more than two parts
  *
  * Then do your work based on the result
  *
@@ -110,51 +116,58 @@ public class UsingForkJoinFramework {
      *
      * In the example bellow, it follows the algorithm, partitioning the numbers list in half,
      * using fork and join to control the task flow
+     *
+     * "small enough" isn't a constant: the leaf size comes from the pool's parallelism and the
+     * measured cost of the leaves, and a worker that already has surplus tasks stops splitting
      */
     static class RecSumTask extends RecursiveTask<BigInteger> {
 
         private static final long serialVersionUID = 1L;
-        public static final int DIVIDE_AT = 500;
+        private static final AdaptiveThreshold DIVIDE_AT = new AdaptiveThreshold(100);
 
         private List<Integer> numbers;
 
+        // decided by the root task, 0 until then
+        private int leafSize;
+
         public RecSumTask(List<Integer> numbers) {
+            this(numbers, 0);
+        }
+
+        private RecSumTask(List<Integer> numbers, int leafSize) {
             this.numbers = numbers;
+            this.leafSize = leafSize;
         }
 
         @Override
         protected BigInteger compute() {
-            var subTasks = new LinkedList<RecSumTask>();
-            if (numbers.size() < DIVIDE_AT) {
+            if (leafSize == 0) {
+                leafSize = DIVIDE_AT.leafSize(numbers.size());
+            }
+            if (!DIVIDE_AT.shouldSplit(numbers.size(), leafSize)) {
                 // directly
+                var start = System.nanoTime();
                 var subSum = BigInteger.ZERO;
                 for (Integer number : numbers) {
                     subSum = subSum.add(BigInteger.valueOf(number));
                 }
+                DIVIDE_AT.recordLeaf(numbers.size(), System.nanoTime() - start);
                 return subSum;
-            } else {
-                // Divide to conquer
-                var size = numbers.size();
-                var numbersLeft = numbers.subList(0, size / 2);
-                var numbersRight = numbers.subList(size / 2, size);
+            }
+            // Divide to conquer
+            var size = numbers.size();
+            var numbersLeft = numbers.subList(0, size / 2);
+            var numbersRight = numbers.subList(size / 2, size);
 
-                var recSumLeft = new RecSumTask(numbersLeft);
-                var recSumRight = new RecSumTask(numbersRight);
+            var recSumRight = new RecSumTask(numbersRight, leafSize);
 
-                subTasks.add(recSumRight);
-                subTasks.add(recSumLeft);
+            // Fork one Child Task, the current thread computes the other one itself
+            // instead of forking it too and then just waiting for both
+            recSumRight.fork();
+            var leftSum = new RecSumTask(numbersLeft, leafSize).compute();
 
-                // Fork Child Tasks
-                recSumLeft.fork();
-                recSumRight.fork();
-            }
-
-            var sum = BigInteger.ZERO;
-            for (var recSum : subTasks) {
-                // Join Child Tasks
-                sum = sum.add(recSum.join());
-            }
-            return sum;
+            // Join the forked Child Task
+            return leftSum.add(recSumRight.join());
         }
     }
 
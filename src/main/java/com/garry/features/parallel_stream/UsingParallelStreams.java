@@ -51,25 +51,25 @@ public class UsingParallelStreams {
     private static void dummyPerformanceCheck() {
 
         // Sequential Stream
-        var start1 = System.currentTimeMillis();
+        var start1 = System.nanoTime();
         IntStream.rangeClosed(0, 50_000)
                 .mapToObj(BigInteger::valueOf)
                 .map(UsingParallelStreams::isPrime)
                 .collect(Collectors.toList());
-        var end1 = System.currentTimeMillis();
-        var time1 = (end1 - start1) / 1000;
-        System.out.println("Sequential: " + time1);
+        var end1 = System.nanoTime();
+        var time1 = (end1 - start1) / 1_000_000;
+        System.out.println("Sequential: " + time1 + " ms");
 
         // Parallel Stream
-        var start2 = System.currentTimeMillis();
+        var start2 = System.nanoTime();
         IntStream.rangeClosed(0, 50_000)
                 .parallel()
                 .mapToObj(BigInteger::valueOf)
                 .map(UsingParallelStreams::isPrime)
                 .collect(Collectors.toList());
-        var end2 = System.currentTimeMillis();
-        var time2 = (end2 - start2) / 1000;
-        System.out.println("Parallel: " + time2);
+        var end2 = System.nanoTime();
+        var time2 = (end2 - start2) / 1_000_000;
+        System.out.println("Parallel: " + time2 + " ms");
     }
 
     // thanks to linski on
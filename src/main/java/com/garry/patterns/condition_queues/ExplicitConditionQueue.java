@@ -17,6 +17,9 @@ import java.util.concurrent.locks.ReentrantLock;
  * the Lock interface to generate Conditions.
  *
  * Applicability: State dependent algorithms used in concurrent programming
+ *
+ * The limit of messages per pause is only an example of conditions: a rate limiter that
+ * doesn't serialize its callers on a lock is in rate_limiting.
  */
 public class ExplicitConditionQueue {
 
@@ -33,8 +36,16 @@ public class ExplicitConditionQueue {
             while (messageCount < LIMIT){
                 limitReachedCondition.await();
             }
-            System.err.println("Limit reached. Wait 2s");
-            Thread.sleep(2000);
+        }finally {
+            lock.unlock();
+        }
+
+        // the printers wait on limitUnreachedCondition meanwhile, nobody needs the lock to be held
+        System.err.println("Limit reached. Wait 2s");
+        Thread.sleep(2000);
+
+        lock.lock();
+        try {
             messageCount = 0;
             limitUnreachedCondition.signalAll();
         }finally {
@@ -51,7 +62,8 @@ public class ExplicitConditionQueue {
             }
             System.out.println(message);
             messageCount++;
-            limitUnreachedCondition.signalAll();
+            if (messageCount == LIMIT)
+                limitReachedCondition.signal();
         }finally {
             lock.unlock();
         }
@@ -0,0 +1,238 @@
+package com.garry.patterns.condition_queues;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Pattern: Condition Queues
+ *
+ * Example: a dispatcher whose consumers can be paused and resumed, during a failover
+ *
+ * The condition "not paused" is a volatile flag instead of a predicate guarded by a monitor:
+ * a consumer checks it with a single volatile read before handling each message, and pause()
+ * is one volatile write, so pausing never waits for a lock a consumer holds, even one blocked
+ * on an empty queue. The messages are in a lock-free queue: a consumer with nothing to do
+ * parks itself on a queue of idle threads, and dispatch() adds its message and unparks the
+ * first idle consumer, neither side ever takes a lock.
+ *
+ * A paused consumer parks itself on a queue of parked threads, and resume() unparks them.
+ * A consumer that got a message just as the pause came keeps it and handles it after the
+ * resume, it isn't lost nor handled while paused. pause() returns right away, handlers that
+ * already started may still be running: awaitPaused() waits for them to finish, so that
+ * nothing is handled anymore once it returns.
+ *
+ * Whatever a handler throws, an Error too, goes to the UncaughtExceptionHandler of its consumer,
+ * which then takes the next message.
+ */
+public class PausableDispatcher<E> {
+
+    private final Queue<E> messages = new ConcurrentLinkedQueue<>();
+    private final Consumer<? super E> handler;
+    private final List<Worker> workers = new ArrayList<>();
+
+    private volatile boolean paused = false;
+    // consumers waiting for a message
+    private final Queue<Thread> idle = new ConcurrentLinkedQueue<>();
+    // consumers waiting for resume()
+    private final Queue<Thread> parked = new ConcurrentLinkedQueue<>();
+    // threads in awaitPaused()
+    private final Queue<Thread> pausing = new ConcurrentLinkedQueue<>();
+
+    private class Worker extends Thread {
+        // set before the pause check, so either pause() sees the handler running or it sees the pause
+        volatile boolean handling = false;
+
+        Worker(String name) {
+            super(name);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    E message = take();
+                    for (;;) {
+                        handling = true;
+                        if (!paused)
+                            break;
+                        handling = false;
+                        wakePausing();
+                        awaitResume();
+                    }
+                    try {
+                        handler.accept(message);
+                    } catch (Throwable e) {
+                        // the consumer lives on, the dispatcher would otherwise lose one per failure
+                        getUncaughtExceptionHandler().uncaughtException(this, e);
+                    } finally {
+                        handling = false;
+                    }
+                    if (paused)
+                        wakePausing();
+                }
+            } catch (InterruptedException e) {
+                // shut down
+            }
+        }
+    }
+
+    public PausableDispatcher(int consumers, Consumer<? super E> handler) {
+        if (consumers < 1)
+            throw new IllegalArgumentException("A dispatcher needs at least one consumer");
+        this.handler = handler;
+        for (int i = 0; i < consumers; i++) {
+            workers.add(new Worker("dispatcher-" + i));
+        }
+    }
+
+    public void start() {
+        workers.forEach(Thread::start);
+    }
+
+    // queued while paused too, handled after the resume
+    public void dispatch(E message) {
+        messages.add(message);
+        wakeIdle();
+    }
+
+    // no message is handled after the ones already being handled
+    public void pause() {
+        paused = true;
+    }
+
+    public void resume() {
+        paused = false;
+        // the consumers take themselves off the queue once they see the resume
+        for (Thread thread : parked) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * Pauses and waits until no handler is running anymore
+     *
+     * @return false if some still were after timeout, or if the dispatcher was resumed meanwhile
+     */
+    public boolean awaitPaused(long timeout, TimeUnit unit) throws InterruptedException {
+        pause();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        Thread current = Thread.currentThread();
+        pausing.add(current);
+        try {
+            while (paused && anyHandling()) {
+                if (Thread.interrupted())
+                    throw new InterruptedException();
+                long left = deadline - System.nanoTime();
+                if (left <= 0)
+                    return false;
+                LockSupport.parkNanos(this, left);
+            }
+            return paused;
+        } finally {
+            pausing.remove(current);
+        }
+    }
+
+    // messages waiting for a consumer, counted one by one
+    public int pending() {
+        return messages.size();
+    }
+
+    // stops the consumers, the messages not handled yet stay in the queue
+    public void shutdown() {
+        workers.forEach(Thread::interrupt);
+    }
+
+    private boolean anyHandling() {
+        for (Worker worker : workers) {
+            if (worker.handling)
+                return true;
+        }
+        return false;
+    }
+
+    // the next message, parks while there is none
+    private E take() throws InterruptedException {
+        E message = messages.poll();
+        if (message == null) {
+            Thread current = Thread.currentThread();
+            idle.add(current);
+            try {
+                // dispatch() may have added its message before we were queued
+                while ((message = messages.poll()) == null) {
+                    if (Thread.interrupted())
+                        throw new InterruptedException();
+                    LockSupport.park(this);
+                }
+            } finally {
+                idle.remove(current);
+            }
+        }
+        // dispatch() wakes the first idle consumer only, which passes the wakeup on while
+        // messages are left
+        if (!messages.isEmpty())
+            wakeIdle();
+        return message;
+    }
+
+    // leaves the consumer queued: one woken for a message another consumer took parks again
+    private void wakeIdle() {
+        Thread thread = idle.peek();
+        if (thread != null)
+            LockSupport.unpark(thread);
+    }
+
+    private void awaitResume() throws InterruptedException {
+        Thread current = Thread.currentThread();
+        // queued once: resume() doesn't take us off the queue, so if the dispatcher is paused
+        // again before we run, the next resume() still finds us
+        parked.add(current);
+        try {
+            // resume() may have run before we were queued
+            while (paused) {
+                if (Thread.interrupted())
+                    throw new InterruptedException();
+                LockSupport.park(this);
+            }
+        } finally {
+            parked.remove(current);
+        }
+    }
+
+    private void wakePausing() {
+        for (Thread thread : pausing) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        PausableDispatcher<String> dispatcher = new PausableDispatcher<>(4, message ->
+                System.out.println(Thread.currentThread().getName() + " handled " + message));
+        dispatcher.start();
+        for (int i = 0; i < 20; i++) {
+            dispatcher.dispatch("message " + i);
+        }
+        Thread.sleep(100);
+
+        // failover: nothing is handled between awaitPaused() and resume()
+        System.out.println("Paused: " + dispatcher.awaitPaused(1, TimeUnit.SECONDS));
+        for (int i = 20; i < 40; i++) {
+            dispatcher.dispatch("message " + i);
+        }
+        Thread.sleep(500);
+        System.out.println("Pending while paused: " + dispatcher.pending());
+        dispatcher.resume();
+
+        Thread.sleep(100);
+        dispatcher.shutdown();
+    }
+}
@@ -19,6 +19,9 @@ import java.util.concurrent.LinkedBlockingQueue;
  * object to be a condition queue itself.
  *
  * Applicability: State dependent algorithms used in concurrent programming
+ *
+ * A consumer that passed the check just before stopsMessaging() still prints the message it
+ * takes; PausableDispatcher pauses without any monitor and can wait for such consumers.
  */
 public class WaitNotifyQueue {
 
@@ -36,9 +39,18 @@ public class WaitNotifyQueue {
         notifyAll();
     }
 
-    public synchronized void message() throws InterruptedException {
-        while (!continueToNotify)
-            wait();
+    public synchronized void resumeMessaging(){
+        continueToNotify = true;
+        notifyAll();
+    }
+
+    // only the check of the condition holds the monitor: a consumer waiting on an empty queue
+    // doesn't keep stopsMessaging() or the other consumers out
+    public void message() throws InterruptedException {
+        synchronized (this) {
+            while (!continueToNotify)
+                wait();
+        }
         String message = messages.take();
         System.out.println(message);
     }
@@ -0,0 +1,92 @@
+package com.garry.patterns.divideconquer;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Pattern: Parallel Divide and Conquer
+ *
+ * Granularity controller: decides when a task stops splitting, instead of a constant
+ * threshold that is only right for one machine and one kind of leaf.
+ *
+ * - The leaf size starts from the pool's parallelism: size / (parallelism * SLACK) gives
+ *   every worker a few leaves to balance with, on 4 cores as well as on 96.
+ * - It learns what an element costs from measured leaves, and never makes leaves shorter
+ *   than MIN_LEAF_NANOS, below which the fork/join overhead eats the gain.
+ * - At run time it follows the surplus-task heuristic of the ForkJoinTask documentation:
+ *   when the current worker already has more than SURPLUS_LIMIT tasks nobody stole,
+ *   splitting further only adds overhead, so a task that isn't too big runs directly.
+ *
+ * One instance is meant to be shared by all the computations of a kind, so what is learnt
+ * carries over from one run to the next
+ */
+public class AdaptiveThreshold {
+
+    // leaves per worker when the cost of an element is unknown
+    private static final int SLACK = 8;
+
+    private static final int SURPLUS_LIMIT = 3;
+
+    // a task bigger than this many leaves is split even when there is surplus,
+    // so one worker never ends up with most of the work
+    private static final int MAX_DIRECT_LEAVES = 4;
+
+    private static final long MIN_LEAF_NANOS = 20_000;
+
+    // one leaf in SAMPLE_RATE updates the estimate, keeps the shared field from bouncing between cores
+    private static final int SAMPLE_RATE = 8;
+
+    private final int minLeafSize;
+
+    // moving average of the cost of an element, 0 until the first sample.
+    // Updates race with each other and some samples are lost, which is fine for an estimate
+    private volatile double nanosPerElement = 0;
+
+    public AdaptiveThreshold(int minLeafSize) {
+        if (minLeafSize < 1)
+            throw new IllegalArgumentException("minLeafSize must be positive");
+        this.minLeafSize = minLeafSize;
+    }
+
+    // leaf size for a computation over size elements, decided once by the root task:
+    // between 1 and size, 0 being how the tasks say they haven't decided yet
+    public int leafSize(long size, int parallelism) {
+        long leaf = size / ((long) parallelism * SLACK);
+        double cost = nanosPerElement;
+        if (cost > 0) {
+            leaf = Math.max(leaf, (long) (MIN_LEAF_NANOS / cost));
+        }
+        leaf = Math.max(1, Math.min(Math.max(leaf, minLeafSize), size));
+        return (int) Math.min(Integer.MAX_VALUE, leaf);
+    }
+
+    // leaf size for a computation running in the current pool, or in the common pool
+    public int leafSize(long size) {
+        ForkJoinPool pool = ForkJoinTask.getPool();
+        int parallelism = pool != null ? pool.getParallelism() : ForkJoinPool.getCommonPoolParallelism();
+        return leafSize(size, parallelism);
+    }
+
+    public boolean shouldSplit(long size, int leafSize) {
+        if (size <= leafSize)
+            return false;
+        if (size <= (long) leafSize * MAX_DIRECT_LEAVES
+                && ForkJoinTask.inForkJoinPool()
+                && ForkJoinTask.getSurplusQueuedTaskCount() > SURPLUS_LIMIT)
+            return false;
+        return true;
+    }
+
+    public void recordLeaf(long elements, long nanos) {
+        if (elements <= 0 || ThreadLocalRandom.current().nextInt(SAMPLE_RATE) != 0)
+            return;
+        double sample = (double) nanos / elements;
+        double old = nanosPerElement;
+        nanosPerElement = old == 0 ? sample : old + (sample - old) / 4;
+    }
+
+    public double nanosPerElement() {
+        return nanosPerElement;
+    }
+}
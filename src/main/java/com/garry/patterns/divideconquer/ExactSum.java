@@ -0,0 +1,67 @@
+package com.garry.patterns.divideconquer;
+
+import java.math.BigInteger;
+
+/**
+ * Pattern: Parallel Divide and Conquer
+ *
+ * Example: exact sum of longs
+ *
+ * Accumulates in a primitive long and only spills to a BigInteger when the long
+ * would overflow, so summing a range that fits in a long never allocates
+ * anything but the accumulator itself. Not thread safe: every task owns one and
+ * they are combined with add(ExactSum).
+ */
+public final class ExactSum {
+
+    private long value;
+    // what didn't fit in value, null until the first overflow
+    private BigInteger carried;
+
+    public ExactSum() {
+    }
+
+    public ExactSum(long value) {
+        this.value = value;
+    }
+
+    public ExactSum add(long x) {
+        long r = value + x;
+        // same test as Math.addExact: overflow iff both operands have the sign opposite to the result
+        if (((value ^ r) & (x ^ r)) < 0) {
+            carry(value);
+            r = x;
+        }
+        value = r;
+        return this;
+    }
+
+    public ExactSum add(ExactSum other) {
+        add(other.value);
+        if (other.carried != null)
+            carried = carried == null ? other.carried : carried.add(other.carried);
+        return this;
+    }
+
+    // moves a partial sum to the BigInteger part, used by the leaves that keep their own long
+    void carry(long partial) {
+        BigInteger big = BigInteger.valueOf(partial);
+        carried = carried == null ? big : carried.add(big);
+    }
+
+    public boolean fitsInLong() {
+        if (carried == null)
+            return true;
+        return carried.add(BigInteger.valueOf(value)).bitLength() < Long.SIZE;
+    }
+
+    public BigInteger toBigInteger() {
+        BigInteger big = BigInteger.valueOf(value);
+        return carried == null ? big : carried.add(big);
+    }
+
+    @Override
+    public String toString() {
+        return toBigInteger().toString();
+    }
+}
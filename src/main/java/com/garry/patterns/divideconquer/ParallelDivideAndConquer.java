@@ -1,7 +1,21 @@
 package com.garry.patterns.divideconquer;
 
+import java.math.BigInteger;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
 
 /**
  * Pattern: Parallel Divide and Conquer
@@ -18,32 +32,368 @@ import java.util.concurrent.RecursiveTask;
  * to model those problems
  *
  * Applicability: Divide and conquer  computations
+ *
+ * This class is a reusable engine for those computations: given a splittable source, a leaf
+ * function, a combiner and an identity it splits the source (while the AdaptiveThreshold says so),
+ * folds every leaf with the leaf function starting from the identity, and combines the results
+ * from left to right. Sources are Spliterators, see the source(...) factories for arrays and Lists.
+ *
+ * Searches (findFirst, findAny, anyMatch) short-circuit: once a match is found the tasks that
+ * can't improve on it stop splitting and their leaves stop scanning. A computation can also be
+ * cancelled from outside through its Computation handle.
+ *
+ * The learned cost of an element is kept per engine, so use an engine per kind of computation.
  */
 public class ParallelDivideAndConquer {
 
-    private final static int THRESHOLD = 10; // Choosing a number to split the computation
+    // how many elements a leaf processes between two looks at the cancellation flag
+    private static final int CHECK_INTERVAL_MASK = (1 << 10) - 1;
+
+    private static final long UNKNOWN_ORIGIN = -1;
+
+    private final ForkJoinPool pool;
+
+    private final AdaptiveThreshold granularity;
+
+    public ParallelDivideAndConquer() {
+        this(ForkJoinPool.commonPool(), 64);
+    }
+
+    public ParallelDivideAndConquer(ForkJoinPool pool, int minLeafSize) {
+        this.pool = pool;
+        this.granularity = new AdaptiveThreshold(minLeafSize);
+    }
+
+    public static <E> Spliterator<E> source(E[] array) {
+        return Arrays.spliterator(array);
+    }
+
+    public static <E> Spliterator<E> source(List<E> list) {
+        return list.spliterator();
+    }
+
+    public static <E> Spliterator<E> source(Spliterator<E> spliterator) {
+        return spliterator;
+    }
+
+    /**
+     * Handle on a running computation
+     *
+     * As with a FutureTask, the first of completing and cancelling wins: cancelling a computation
+     * that already completed has no effect, and once cancelled join() throws even if the tasks
+     * ran to the end anyway
+     */
+    public static class Computation<R> {
+        private final Context context;
+        private final RecursiveTask<R> root;
+
+        Computation(Context context, RecursiveTask<R> root) {
+            this.context = context;
+            this.root = root;
+        }
+
+        // stops splitting and scanning as soon as the tasks notice it,
+        // false if the computation completed (normally or not) before
+        public boolean cancel() {
+            if (!context.outcome.compareAndSet(Context.RUNNING, Context.CANCELLED))
+                return false;
+            context.cancelled = true;
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return context.outcome.get() == Context.CANCELLED;
+        }
+
+        public boolean isDone() {
+            return root.isDone();
+        }
+
+        // the result, or CancellationException if the computation was cancelled
+        public R join() {
+            R result;
+            try {
+                result = root.join();
+            } catch (RuntimeException e) {
+                if (isCancelled())
+                    throw new CancellationException();
+                throw e;
+            }
+            if (isCancelled())
+                throw new CancellationException();
+            return result;
+        }
+    }
+
+    // shared by all the tasks of one computation
+    static class Context {
+        static final int RUNNING = 0;
+        static final int COMPLETED = 1;
+        static final int CANCELLED = 2;
+
+        // set once, by the root task finishing or by Computation.cancel(), whichever comes first
+        final AtomicInteger outcome = new AtomicInteger(RUNNING);
+        // tells the tasks to stop: cancelled, a leaf failed or (findAny) a match was found
+        volatile boolean cancelled = false;
+        // index of the leftmost match found so far, for findFirst
+        final AtomicLong firstMatch = new AtomicLong(Long.MAX_VALUE);
+    }
+
+    public <E, R> R reduce(Spliterator<E> source, R identity,
+                           BiFunction<R, ? super E, R> leafFunction, BinaryOperator<R> combiner) {
+        return submit(source, identity, leafFunction, combiner).join();
+    }
+
+    public <E, R> Computation<R> submit(Spliterator<E> source, R identity,
+                                        BiFunction<R, ? super E, R> leafFunction, BinaryOperator<R> combiner) {
+        Context context = new Context();
+        Root<R> root = new Root<>(context, new Task<>(context, source, 0, identity, leafFunction, combiner));
+        pool.execute(root);
+        return new Computation<>(context, root);
+    }
+
+    // the match with the lowest index in encounter order
+    public <E> Optional<E> findFirst(Spliterator<E> source, Predicate<? super E> predicate) {
+        return search(source, predicate, true);
+    }
+
+    // any match, the first one found
+    public <E> Optional<E> findAny(Spliterator<E> source, Predicate<? super E> predicate) {
+        return search(source, predicate, false);
+    }
+
+    public <E> boolean anyMatch(Spliterator<E> source, Predicate<? super E> predicate) {
+        return findAny(source, predicate).isPresent();
+    }
+
+    private <E> Optional<E> search(Spliterator<E> source, Predicate<? super E> predicate, boolean ordered) {
+        Context context = new Context();
+        Match<E> match = pool.invoke(new SearchTask<>(context, source, 0, predicate, ordered));
+        return match == null ? Optional.empty() : Optional.ofNullable(match.element);
+    }
+
+    // splits the source, null when it is small enough (or can't be split anymore)
+    private <E> Spliterator<E> trySplit(Spliterator<E> source, int leafSize) {
+        return granularity.shouldSplit(source.estimateSize(), leafSize) ? source.trySplit() : null;
+    }
+
+    // origin of the suffix left after splitting a prefix off, known only when the prefix size is exact
+    private static long suffixOrigin(long origin, Spliterator<?> prefix) {
+        long prefixSize = prefix.getExactSizeIfKnown();
+        return origin == UNKNOWN_ORIGIN || prefixSize < 0 ? UNKNOWN_ORIGIN : origin + prefixSize;
+    }
+
+    // completes the computation, unless it was cancelled first
+    static class Root<R> extends RecursiveTask<R> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Context context;
+        private final RecursiveTask<R> task;
+
+        Root(Context context, RecursiveTask<R> task) {
+            this.context = context;
+            this.task = task;
+        }
+
+        @Override
+        protected R compute() {
+            try {
+                return task.invoke();
+            } finally {
+                context.outcome.compareAndSet(Context.RUNNING, Context.COMPLETED);
+            }
+        }
+    }
+
+    class Task<E, R> extends RecursiveTask<R> {
 
-    public static class Task extends RecursiveTask<Integer>
-    {
         private static final long serialVersionUID = 1L;
-        private List<Integer> somethingToDivideAndConquer;
 
-        public Task(List<Integer> somethingToDivideAndConquer) {
-            this.somethingToDivideAndConquer = somethingToDivideAndConquer;
+        private final Context context;
+        private final Spliterator<E> source;
+        private final R identity;
+        private final BiFunction<R, ? super E, R> leafFunction;
+        private final BinaryOperator<R> combiner;
+        // decided by the root task, 0 until then
+        private int leafSize;
+
+        Task(Context context, Spliterator<E> source, int leafSize, R identity,
+             BiFunction<R, ? super E, R> leafFunction, BinaryOperator<R> combiner) {
+            this.context = context;
+            this.source = source;
+            this.leafSize = leafSize;
+            this.identity = identity;
+            this.leafFunction = leafFunction;
+            this.combiner = combiner;
         }
 
         @Override
-        protected Integer compute() {
-            int size = somethingToDivideAndConquer.size();
-            if (size < THRESHOLD)
-            {
-                // solves directly
-                return 1;
-            }else {
-                // creates tasks, fork and join
-                return 2;
+        protected R compute() {
+            if (context.cancelled)
+                return identity;
+            if (leafSize == 0)
+                leafSize = granularity.leafSize(source.estimateSize());
+            Spliterator<E> prefix = trySplit(source, leafSize);
+            if (prefix == null)
+                return computeLeaf();
+
+            // fork the suffix, the current thread goes on with the prefix itself
+            Task<E, R> suffix = new Task<>(context, source, leafSize, identity, leafFunction, combiner);
+            suffix.fork();
+            R left = new Task<>(context, prefix, leafSize, identity, leafFunction, combiner).compute();
+            return combiner.apply(left, suffix.join());
+        }
+
+        private R computeLeaf() {
+            long start = System.nanoTime();
+            Fold fold = new Fold();
+            long count = 0;
+            try {
+                while (((count & CHECK_INTERVAL_MASK) != 0 || !context.cancelled) && source.tryAdvance(fold)) {
+                    count++;
+                }
+            } catch (RuntimeException | Error e) {
+                // no point in going on with the other leaves
+                context.cancelled = true;
+                throw e;
+            }
+            granularity.recordLeaf(count, System.nanoTime() - start);
+            return fold.result;
+        }
+
+        private class Fold implements Consumer<E> {
+            R result = identity;
+
+            @Override
+            public void accept(E e) {
+                result = leafFunction.apply(result, e);
             }
         }
     }
 
+    static class Match<E> {
+        final long index;
+        final E element;
+
+        Match(long index, E element) {
+            this.index = index;
+            this.element = element;
+        }
+    }
+
+    class SearchTask<E> extends RecursiveTask<Match<E>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Context context;
+        private final Spliterator<E> source;
+        // index of the first element of source, UNKNOWN_ORIGIN when it can't be known
+        private final long origin;
+        private final Predicate<? super E> predicate;
+        private final boolean ordered;
+        private int leafSize;
+
+        SearchTask(Context context, Spliterator<E> source, long origin, Predicate<? super E> predicate, boolean ordered) {
+            this(context, source, origin, predicate, ordered, 0);
+        }
+
+        private SearchTask(Context context, Spliterator<E> source, long origin,
+                           Predicate<? super E> predicate, boolean ordered, int leafSize) {
+            this.context = context;
+            this.source = source;
+            this.origin = origin;
+            this.predicate = predicate;
+            this.ordered = ordered;
+            this.leafSize = leafSize;
+        }
+
+        @Override
+        protected Match<E> compute() {
+            if (isPointless(origin))
+                return null;
+            if (leafSize == 0)
+                leafSize = granularity.leafSize(source.estimateSize());
+            Spliterator<E> prefix = trySplit(source, leafSize);
+            if (prefix == null)
+                return computeLeaf();
+
+            SearchTask<E> suffix = new SearchTask<>(context, source, suffixOrigin(origin, prefix),
+                    predicate, ordered, leafSize);
+            suffix.fork();
+            Match<E> left = new SearchTask<>(context, prefix, origin, predicate, ordered, leafSize).compute();
+            if (left != null) {
+                // nothing on the right can beat it; if the suffix wasn't started yet it never will be
+                suffix.cancel(false);
+                return left;
+            }
+            return suffix.join();
+        }
+
+        // findAny/anyMatch: any match stops everything; findFirst: only matches on our left do
+        private boolean isPointless(long index) {
+            if (context.cancelled)
+                return true;
+            long first = context.firstMatch.get();
+            return ordered && first != Long.MAX_VALUE && index != UNKNOWN_ORIGIN && index > first;
+        }
+
+        private Match<E> computeLeaf() {
+            long start = System.nanoTime();
+            Probe probe = new Probe();
+            long count = 0;
+            while (probe.match == null && ((count & CHECK_INTERVAL_MASK) != 0 || !isPointless(probe.index))
+                    && source.tryAdvance(probe)) {
+                count++;
+            }
+            granularity.recordLeaf(count, System.nanoTime() - start);
+            if (probe.match == null)
+                return null;
+            if (ordered) {
+                if (probe.match.index != UNKNOWN_ORIGIN)
+                    context.firstMatch.accumulateAndGet(probe.match.index, Math::min);
+            } else {
+                context.cancelled = true;
+            }
+            return probe.match;
+        }
+
+        private class Probe implements Consumer<E> {
+            long index = origin;
+            Match<E> match;
+
+            @Override
+            public void accept(E e) {
+                if (predicate.test(e))
+                    match = new Match<>(index, e);
+                if (index != UNKNOWN_ORIGIN)
+                    index++;
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        Integer[] numbers = IntStream.range(0, 5_000_000).boxed().toArray(Integer[]::new);
+        ParallelDivideAndConquer engine = new ParallelDivideAndConquer();
+
+        BigInteger sum = engine.reduce(source(numbers), BigInteger.ZERO,
+                (acc, n) -> acc.add(BigInteger.valueOf(n)), BigInteger::add);
+        System.out.println("Sum is: " + sum);
+
+        Optional<Integer> first = engine.findFirst(source(Arrays.asList(numbers)), n -> n > 1_000 && n % 7919 == 0);
+        System.out.println("First match is: " + first.orElse(null));
+
+        boolean any = engine.anyMatch(Spliterators.spliteratorUnknownSize(Arrays.asList(numbers).iterator(), 0),
+                n -> n == 4_999_999);
+        System.out.println("Any match: " + any);
+
+        Computation<BigInteger> computation = engine.submit(source(numbers), BigInteger.ZERO,
+                (acc, n) -> acc.add(BigInteger.valueOf(n)), BigInteger::add);
+        computation.cancel();
+        try {
+            computation.join();
+        } catch (CancellationException e) {
+            System.out.println("Computation cancelled");
+        }
+    }
 }
@@ -0,0 +1,219 @@
+package com.garry.patterns.divideconquer;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.LongStream;
+
+/**
+ * Pattern: Parallel Divide and Conquer
+ *
+ * Example: Parallel Sum of primitive longs
+ *
+ * Same idea as ParallelSum, without the boxing: the tasks split index ranges over a
+ * long[], a LongBuffer or a memory-mapped file instead of sub lists, and the leaves
+ * add in a primitive long. A leaf only touches a BigInteger when its partial sum
+ * overflows (see ExactSum), so the whole computation allocates one task and one
+ * accumulator per leaf, whatever the number of values.
+ */
+public class ParallelLongSum {
+
+    // Choosing when to split the computation, from the pool size and the measured leaves
+    private final static AdaptiveThreshold GRANULARITY = new AdaptiveThreshold(1 << 12);
+
+    // mappings are limited to Integer.MAX_VALUE bytes, keep them aligned on a long
+    private final static long MAX_MAPPING_BYTES = Integer.MAX_VALUE & ~(Long.BYTES - 1);
+
+    abstract static class RangeSum extends RecursiveReduce<ExactSum> {
+
+        private static final long serialVersionUID = 1L;
+
+        protected final int from;
+        protected final int to;
+        // decided by the root task, 0 until then
+        protected int leafSize;
+
+        RangeSum(int from, int to, int leafSize) {
+            this.from = from;
+            this.to = to;
+            this.leafSize = leafSize;
+        }
+
+        abstract RangeSum subTask(int from, int to);
+
+        abstract ExactSum sequentialSum();
+
+        @Override
+        protected boolean isLeaf() {
+            if (leafSize == 0) {
+                leafSize = GRANULARITY.leafSize(to - from);
+            }
+            return !GRANULARITY.shouldSplit(to - from, leafSize);
+        }
+
+        @Override
+        protected ExactSum computeDirectly() {
+            long start = System.nanoTime();
+            ExactSum sum = sequentialSum();
+            GRANULARITY.recordLeaf(to - from, System.nanoTime() - start);
+            return sum;
+        }
+
+        @Override
+        protected RangeSum part(int index, int parts) {
+            long size = to - from;
+            return subTask(from + (int) (size * index / parts), from + (int) (size * (index + 1) / parts));
+        }
+
+        @Override
+        protected ExactSum combine(ExactSum left, ExactSum right) {
+            return left.add(right);
+        }
+    }
+
+    static class ArraySum extends RangeSum {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long[] values;
+
+        ArraySum(long[] values, int from, int to, int leafSize) {
+            super(from, to, leafSize);
+            this.values = values;
+        }
+
+        @Override
+        RangeSum subTask(int from, int to) {
+            return new ArraySum(values, from, to, leafSize);
+        }
+
+        @Override
+        ExactSum sequentialSum() {
+            ExactSum acc = new ExactSum();
+            long sum = 0;
+            for (int i = from; i < to; i++) {
+                long x = values[i];
+                long r = sum + x;
+                if (((sum ^ r) & (x ^ r)) < 0) {
+                    acc.carry(sum);
+                    r = x;
+                }
+                sum = r;
+            }
+            return acc.add(sum);
+        }
+    }
+
+    static class BufferSum extends RangeSum {
+
+        private static final long serialVersionUID = 1L;
+
+        private final LongBuffer values;
+
+        BufferSum(LongBuffer values, int from, int to, int leafSize) {
+            super(from, to, leafSize);
+            this.values = values;
+        }
+
+        @Override
+        RangeSum subTask(int from, int to) {
+            return new BufferSum(values, from, to, leafSize);
+        }
+
+        // absolute gets only, the buffer is shared by all the tasks and its position is never moved
+        @Override
+        ExactSum sequentialSum() {
+            ExactSum acc = new ExactSum();
+            long sum = 0;
+            for (int i = from; i < to; i++) {
+                long x = values.get(i);
+                long r = sum + x;
+                if (((sum ^ r) & (x ^ r)) < 0) {
+                    acc.carry(sum);
+                    r = x;
+                }
+                sum = r;
+            }
+            return acc.add(sum);
+        }
+    }
+
+    public static BigInteger sum(long[] values) {
+        return sum(values, 0, values.length);
+    }
+
+    public static BigInteger sum(long[] values, int from, int to) {
+        return ForkJoinPool.commonPool().invoke(new ArraySum(values, from, to, 0)).toBigInteger();
+    }
+
+    // sums the values between the position and the limit of the buffer
+    public static BigInteger sum(LongBuffer values) {
+        return ForkJoinPool.commonPool()
+                .invoke(new BufferSum(values, values.position(), values.limit(), 0))
+                .toBigInteger();
+    }
+
+    // the file is a sequence of 8 bytes longs in the given byte order, mapped in chunks of up to 2GB
+    public static BigInteger sum(Path file, ByteOrder order) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size % Long.BYTES != 0)
+                throw new IllegalArgumentException(file + " doesn't contain a whole number of longs");
+
+            List<RangeSum> chunks = new ArrayList<>();
+            for (long position = 0; position < size; position += MAX_MAPPING_BYTES) {
+                long chunkSize = Math.min(MAX_MAPPING_BYTES, size - position);
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, chunkSize);
+                LongBuffer values = mapped.order(order).asLongBuffer();
+                chunks.add(new BufferSum(values, 0, values.limit(), 0));
+            }
+            // the mappings stay valid after the channel is closed
+            return ForkJoinPool.commonPool().submit(() -> {
+                ExactSum acc = new ExactSum();
+                for (RangeSum chunk : ForkJoinTask.invokeAll(chunks)) {
+                    acc.add(chunk.join());
+                }
+                return acc;
+            }).join().toBigInteger();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        long[] nums = LongStream.range(0, 10_000_000L).toArray();
+
+        System.out.println("Array Result is: " + sum(nums));
+        System.out.println("Buffer Result is: " + sum(LongBuffer.wrap(nums)));
+
+        // overflows a long and still is exact
+        long[] big = LongStream.range(0, 1_000_000L).map(i -> Long.MAX_VALUE - i).toArray();
+        System.out.println("Overflowing Result is: " + sum(big));
+
+        Path file = Files.createTempFile("parallel-long-sum", ".bin");
+        try {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) nums.length * Long.BYTES);
+                mapped.order(ByteOrder.nativeOrder()).asLongBuffer().put(nums);
+            }
+            System.out.println("Mapped file Result is: " + sum(file, ByteOrder.nativeOrder()));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+
+        for (int i = 0; i < 3; i++) {
+            var before = System.nanoTime();
+            var result = sum(nums);
+            var after = System.nanoTime();
+            System.out.println("Executed in: " + (after - before) / 1_000 + " us, result " + result);
+        }
+    }
+}
@@ -3,7 +3,6 @@ package com.garry.patterns.divideconquer;
 import java.math.BigInteger;
 import java.util.List;
 import java.util.concurrent.ForkJoinPool;
-import java.util.concurrent.RecursiveTask;
 import java.util.stream.Collectors;
 import java.util.stream.LongStream;
 
@@ -14,33 +13,58 @@ import java.util.stream.LongStream;
  *
  * This is a simple example for educational  purpose only
  */
-public class ParallelSum extends RecursiveTask<BigInteger> {
+public class ParallelSum extends RecursiveReduce<BigInteger> {
 
-    private final static int THRESHOLD = 10_000; // Choosing a number to split the conputation
+    private static final long serialVersionUID = 1L;
+
+    // Choosing when to split the computation, from the pool size and the measured leaves
+    private final static AdaptiveThreshold GRANULARITY = new AdaptiveThreshold(1_000);
 
     private List<BigInteger> nums;
 
+    // decided by the root task, 0 until then
+    private int leafSize;
+
     public ParallelSum(List<BigInteger> nums) {
+        this(nums, 0);
+    }
+
+    private ParallelSum(List<BigInteger> nums, int leafSize) {
         this.nums = nums;
+        this.leafSize = leafSize;
     }
 
     @Override
-    protected BigInteger compute() {
-        int size = nums.size();
-        if (size < THRESHOLD)
+    protected boolean isLeaf() {
+        if (leafSize == 0)
         {
-            return sequentialSum(nums);
-        }else {
-            ParallelSum x = new ParallelSum(nums.subList(0, size / 2));
-            ParallelSum y = new ParallelSum(nums.subList(size/2, size));
-            x.fork();
-            y.fork();
-            BigInteger xResult = x.join();
-            BigInteger yResult = y.join();
-            return yResult.add(xResult);
-
+            leafSize = GRANULARITY.leafSize(nums.size());
         }
+        return !GRANULARITY.shouldSplit(nums.size(), leafSize);
+    }
+
+    @Override
+    protected BigInteger computeDirectly() {
+        long start = System.nanoTime();
+        BigInteger sum = sequentialSum(nums);
+        GRANULARITY.recordLeaf(nums.size(), System.nanoTime() - start);
+        return sum;
     }
+
+    // one half is forked, the other one is computed by the current thread (see RecursiveReduce)
+    @Override
+    protected ParallelSum part(int index, int parts) {
+        long size = nums.size();
+        int from = (int) (size * index / parts);
+        int to = (int) (size * (index + 1) / parts);
+        return new ParallelSum(nums.subList(from, to), leafSize);
+    }
+
+    @Override
+    protected BigInteger combine(BigInteger left, BigInteger right) {
+        return left.add(right);
+    }
+
     private static BigInteger sequentialSum(List<BigInteger> nums)
     {
         BigInteger acc = BigInteger.ZERO;
@@ -91,11 +115,12 @@ public class ParallelSum extends RecursiveTask<BigInteger> {
         runnable.run();
     }
 
+    // a quick look only, see ParallelSumBenchmark in the benchmarks module for real numbers
     static void dummyBenchmark(Runnable runnable) {
-        var before = System.currentTimeMillis();
+        var before = System.nanoTime();
         runnable.run();
-        var after = System.currentTimeMillis();
-        System.out.println("Executed in: " + (after - before));
+        var after = System.nanoTime();
+        System.out.println("Executed in: " + (after - before) / 1_000_000 + " ms");
         System.out.println("######\n");
     }
 }
\ No newline at end of file
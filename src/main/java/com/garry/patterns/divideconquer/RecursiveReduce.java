@@ -0,0 +1,68 @@
+package com.garry.patterns.divideconquer;
+
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Pattern: Parallel Divide and Conquer
+ *
+ * Base class for reductions: a task that is not a leaf splits itself in arity parts,
+ * forks all of them but the first, computes the first one in the current thread and
+ * then joins the forked ones.
+ *
+ * Forking every part and joining them all leaves the current thread with nothing to do
+ * but wait, and doubles the tasks going through the deques. Here a split of n parts
+ * forks n - 1 tasks, and the current thread keeps working on the leftmost part.
+ * The forked parts are joined starting from the last one forked, which is still on top
+ * of the local deque when nobody stole it, so join() can take it back and run it in place.
+ *
+ * Subclasses say when to stop splitting, how to compute a leaf, how to build part i of
+ * n and how to combine two results; results are combined from left to right.
+ */
+public abstract class RecursiveReduce<T> extends RecursiveTask<T> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int arity;
+
+    // links the parts forked by the same split, so joining them needs no collection
+    private RecursiveReduce<T> nextForked;
+
+    protected RecursiveReduce() {
+        this(2);
+    }
+
+    protected RecursiveReduce(int arity) {
+        if (arity < 2)
+            throw new IllegalArgumentException("A task must be split in at least two parts");
+        this.arity = arity;
+    }
+
+    protected abstract boolean isLeaf();
+
+    protected abstract T computeDirectly();
+
+    // part index (from 0) of parts, the parts must cover this task in order
+    protected abstract RecursiveReduce<T> part(int index, int parts);
+
+    protected abstract T combine(T left, T right);
+
+    @Override
+    protected final T compute() {
+        if (isLeaf()) {
+            return computeDirectly();
+        }
+        RecursiveReduce<T> forked = null;
+        for (int i = arity - 1; i > 0; i--) {
+            RecursiveReduce<T> task = part(i, arity);
+            task.nextForked = forked;
+            forked = task;
+            task.fork();
+        }
+        // the current thread does the first part itself, without forking it
+        T result = part(0, arity).compute();
+        for (RecursiveReduce<T> task = forked; task != null; task = task.nextForked) {
+            result = combine(result, task.join());
+        }
+        return result;
+    }
+}
@@ -12,7 +12,7 @@ public class CoinTransfer {
     static class Player {
         private int id;
         private String name;
-        private BigInteger coins;
+        private BigInteger coins = BigInteger.ZERO;
 
         public int getId() {
             return id;
@@ -0,0 +1,102 @@
+package com.garry.patterns.producer_consumer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Consumer that takes the elements of a channel in batches
+ *
+ * It waits for a first element, then keeps draining the channel until the batch holds
+ * maxBatchSize elements or maxWait has passed since that first element, and hands the
+ * batch to the handler. A consumer woken for a batch instead of each element pays one
+ * wakeup and one cursor move for many elements, and the handler can write them at once.
+ *
+ * The batch is the same list every time, cleared between batches: the handler must copy
+ * what it wants to keep. A batch is acknowledged when the handler returns; if it throws,
+ * the consumer stops with that exception and the batch isn't acknowledged.
+ *
+ * Runs until the end of the stream: once the channel is closed and drained it hands over
+ * the last, partial, batch and returns. When the channel is stopped it hands over what it
+ * already took and returns. Interrupting its thread stops it as well, and the batch being
+ * filled is lost.
+ */
+public class BatchConsumer<E> implements Callable<Void> {
+
+    public interface BatchHandler<E> {
+
+        void onBatch(List<E> batch) throws Exception;
+    }
+
+    private final RingBufferChannel<E> channel;
+    private final int maxBatchSize;
+    private final long maxWaitNanos;
+    private final BatchHandler<E> handler;
+
+    private final List<E> buffer;
+    private final List<E> batch;
+
+    // written by the consumer thread only
+    private volatile long acknowledgedBatches = 0;
+    private volatile long acknowledgedElements = 0;
+
+    public BatchConsumer(RingBufferChannel<E> channel, int maxBatchSize, long maxWait, TimeUnit unit,
+                         BatchHandler<E> handler) {
+        if (maxBatchSize < 1)
+            throw new IllegalArgumentException("A batch holds at least one element");
+        this.channel = channel;
+        this.maxBatchSize = maxBatchSize;
+        this.maxWaitNanos = unit.toNanos(maxWait);
+        this.handler = handler;
+        this.buffer = new ArrayList<>(maxBatchSize);
+        this.batch = Collections.unmodifiableList(buffer);
+    }
+
+    @Override
+    public Void call() throws Exception {
+        try {
+            while (fill()) {
+                handler.onBatch(batch);
+                acknowledgedBatches++;
+                acknowledgedElements += buffer.size();
+                buffer.clear();
+            }
+        } catch (InterruptedException e) {
+            // stopped; a batch being filled is lost with the thread
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    public long acknowledgedBatches() {
+        return acknowledgedBatches;
+    }
+
+    public long acknowledgedElements() {
+        return acknowledgedElements;
+    }
+
+    // false at the end of the stream
+    private boolean fill() throws InterruptedException {
+        E first = channel.take();
+        if (first == null)
+            return false;
+        buffer.add(first);
+        long deadline = System.nanoTime() + maxWaitNanos;
+        while (buffer.size() < maxBatchSize) {
+            if (channel.drainTo(buffer, maxBatchSize - buffer.size()) > 0)
+                continue;
+            long left = deadline - System.nanoTime();
+            if (left <= 0)
+                return true;
+            // null at the end of the stream too, the next take() tells
+            E element = channel.poll(left, TimeUnit.NANOSECONDS);
+            if (element == null)
+                return true;
+            buffer.add(element);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,93 @@
+package com.garry.patterns.producer_consumer;
+
+import java.lang.invoke.VarHandle;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Blocks on a condition until the other side signals it, no CPU used while waiting
+ *
+ * The lock is only taken when somebody waits: a waiter registers itself before it checks
+ * ready for the last time, and signal() looks at the number of waiters after the element
+ * was published, so either the waiter sees the element or signal() sees the waiter.
+ *
+ * Every ready condition has its own Condition, so an element published wakes one consumer
+ * and never a producer waiting for room, and a single waiter is woken per element instead
+ * of all of them fighting for it. Only close() and stopNow() wake everybody.
+ */
+public class BlockingWaitStrategy implements WaitStrategy {
+
+    private static final class Waiting {
+        final Condition condition;
+        final AtomicInteger waiters = new AtomicInteger();
+
+        Waiting(Condition condition) {
+            this.condition = condition;
+        }
+    }
+
+    private final Lock lock = new ReentrantLock();
+    // by ready condition, a channel always waits with the same two
+    private final Map<BooleanSupplier, Waiting> waiting = new ConcurrentHashMap<>();
+
+    @Override
+    public boolean await(BooleanSupplier ready, long nanos) throws InterruptedException {
+        if (ready.getAsBoolean())
+            return true;
+        Waiting on = waiting.computeIfAbsent(ready, r -> new Waiting(lock.newCondition()));
+        long left = nanos;
+        lock.lock();
+        on.waiters.incrementAndGet();
+        try {
+            while (!ready.getAsBoolean()) {
+                if (nanos == Long.MAX_VALUE) {
+                    on.condition.await();
+                } else {
+                    if (left <= 0)
+                        return false;
+                    left = on.condition.awaitNanos(left);
+                }
+            }
+            return true;
+        } finally {
+            on.waiters.decrementAndGet();
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void signal(BooleanSupplier ready) {
+        // the element may have been published with a release write only, which doesn't keep
+        // the read of waiters from moving before it
+        VarHandle.fullFence();
+        Waiting on = waiting.get(ready);
+        if (on == null || on.waiters.get() == 0)
+            return;
+        lock.lock();
+        try {
+            on.condition.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void signalAll() {
+        VarHandle.fullFence();
+        for (Waiting on : waiting.values()) {
+            if (on.waiters.get() == 0)
+                continue;
+            lock.lock();
+            try {
+                on.condition.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
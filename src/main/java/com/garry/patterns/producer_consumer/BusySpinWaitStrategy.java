@@ -0,0 +1,23 @@
+package com.garry.patterns.producer_consumer;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Checks again and again, the lowest latency for a core per waiting thread.
+ * Only worth it when every waiting thread has its own core
+ */
+public class BusySpinWaitStrategy implements WaitStrategy {
+
+    @Override
+    public boolean await(BooleanSupplier ready, long nanos) throws InterruptedException {
+        long deadline = nanos == Long.MAX_VALUE ? 0 : System.nanoTime() + nanos;
+        while (!ready.getAsBoolean()) {
+            if (Thread.interrupted())
+                throw new InterruptedException();
+            if (nanos != Long.MAX_VALUE && System.nanoTime() - deadline >= 0)
+                return false;
+            Thread.onSpinWait();
+        }
+        return true;
+    }
+}
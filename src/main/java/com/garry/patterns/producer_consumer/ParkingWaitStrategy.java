@@ -0,0 +1,49 @@
+package com.garry.patterns.producer_consumer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Spins a little, then sleeps for a fixed time between two checks. Nobody has to wake
+ * the waiting thread, so the other side pays nothing, and an element waits at most
+ * about parkNanos before it's seen
+ */
+public class ParkingWaitStrategy implements WaitStrategy {
+
+    private static final int SPINS = 100;
+
+    private final long parkNanos;
+
+    public ParkingWaitStrategy() {
+        this(50, TimeUnit.MICROSECONDS);
+    }
+
+    public ParkingWaitStrategy(long parkTime, TimeUnit unit) {
+        if (parkTime <= 0)
+            throw new IllegalArgumentException("The park time must be positive");
+        this.parkNanos = unit.toNanos(parkTime);
+    }
+
+    @Override
+    public boolean await(BooleanSupplier ready, long nanos) throws InterruptedException {
+        long deadline = nanos == Long.MAX_VALUE ? 0 : System.nanoTime() + nanos;
+        for (int spins = 0; !ready.getAsBoolean(); spins++) {
+            if (Thread.interrupted())
+                throw new InterruptedException();
+            long park = parkNanos;
+            if (nanos != Long.MAX_VALUE) {
+                long left = deadline - System.nanoTime();
+                if (left <= 0)
+                    return false;
+                park = Math.min(park, left);
+            }
+            if (spins < SPINS) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(this, park);
+            }
+        }
+        return true;
+    }
+}
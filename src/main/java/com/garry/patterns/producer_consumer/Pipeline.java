@@ -0,0 +1,334 @@
+package com.garry.patterns.producer_consumer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Pattern: Producer-Consumer
+ *
+ * Example: a pipeline of stages, each one the consumer of the previous and the producer
+ * of the next
+ *
+ * Every stage has its own workers, as many as its parallelism, and reads from a bounded
+ * RingBufferChannel. A stage that falls behind fills its channel, which makes the workers
+ * of the stage before it wait, and so on up to submit(): the backpressure goes up the
+ * pipeline without any other mechanism. Closing the pipeline closes the first channel; the
+ * last worker of a stage to see the end of the stream closes the next channel.
+ *
+ * A stage whose function returns null drops the element. A function that throws drops it
+ * too, and counts a failure, even when it throws an Error.
+ *
+ * - unordered: the elements come out of a parallel stage in whatever order they're done
+ * - ordered: they come out of the pipeline in the order they were submitted. A worker of a
+ *   parallel stage waits for the elements taken before its own to be passed on before it
+ *   passes its own; dropped elements still go down the pipeline, empty, to keep their place
+ *
+ * A pipeline is a description: start() creates the channels and the workers, and the same
+ * pipeline can be started several times.
+ */
+public class Pipeline<I, O> {
+
+    private static final class StageDefinition {
+        final String name;
+        final int parallelism;
+        final Function<Object, Object> function;
+
+        StageDefinition(String name, int parallelism, Function<Object, Object> function) {
+            this.name = name;
+            this.parallelism = parallelism;
+            this.function = function;
+        }
+    }
+
+    // an element and its place in the submission order; the same Item goes through every stage
+    private static final class Item {
+        final long sequence;
+        // null once dropped, in ordered mode
+        Object value;
+
+        Item(long sequence, Object value) {
+            this.sequence = sequence;
+            this.value = value;
+        }
+    }
+
+    private final int capacity;
+    private final boolean ordered;
+    private final List<StageDefinition> stages;
+
+    private Pipeline(int capacity, boolean ordered, List<StageDefinition> stages) {
+        this.capacity = capacity;
+        this.ordered = ordered;
+        this.stages = stages;
+    }
+
+    // capacity of the channel in front of every stage
+    public static <T> Pipeline<T, T> create(int capacity, boolean ordered) {
+        return new Pipeline<>(capacity, ordered, Collections.emptyList());
+    }
+
+    @SuppressWarnings("unchecked")
+    public <R> Pipeline<I, R> then(String name, int parallelism, Function<? super O, ? extends R> function) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("A stage needs at least one worker");
+        List<StageDefinition> next = new ArrayList<>(stages);
+        next.add(new StageDefinition(name, parallelism, (Function<Object, Object>) function));
+        return new Pipeline<>(capacity, ordered, next);
+    }
+
+    // the sink gets the results one at a time, from a single thread
+    public Execution<I> start(Consumer<? super O> sink) {
+        List<StageDefinition> all = new ArrayList<>(stages);
+        all.add(new StageDefinition("sink", 1, value -> {
+            @SuppressWarnings("unchecked")
+            O result = (O) value;
+            sink.accept(result);
+            return null;
+        }));
+        return new Execution<>(this, all);
+    }
+
+    /**
+     * A running pipeline
+     */
+    public static class Execution<I> {
+
+        private final boolean ordered;
+        private final List<Stage> stages = new ArrayList<>();
+        private final AtomicLong sequence = new AtomicLong();
+        private final long startedAt = System.nanoTime();
+        private volatile boolean stopped = false;
+
+        private Execution(Pipeline<I, ?> pipeline, List<StageDefinition> definitions) {
+            this.ordered = pipeline.ordered;
+            Stage next = null;
+            // built from the sink up, every stage writes into the channel of the next one
+            List<Stage> reversed = new ArrayList<>();
+            for (int i = definitions.size() - 1; i >= 0; i--) {
+                StageDefinition definition = definitions.get(i);
+                Stage stage = new Stage(definition, pipeline.capacity, next);
+                reversed.add(stage);
+                next = stage;
+            }
+            for (int i = reversed.size() - 1; i >= 0; i--) {
+                stages.add(reversed.get(i));
+            }
+            for (Stage stage : stages) {
+                stage.start();
+            }
+        }
+
+        /**
+         * Adds an element to the pipeline, waits while the first stage is full.
+         * In ordered mode concurrent submitters are serialized, the order is the order of the calls
+         */
+        public void submit(I element) throws InterruptedException {
+            if (element == null)
+                throw new NullPointerException();
+            RingBufferChannel<Item> input = stages.get(0).input;
+            if (!ordered) {
+                input.put(new Item(0, element));
+                return;
+            }
+            synchronized (this) {
+                input.put(new Item(sequence.getAndIncrement(), element));
+            }
+        }
+
+        // no more elements, the stages finish the ones submitted and stop
+        public void close() {
+            stages.get(0).input.close();
+        }
+
+        /**
+         * Stops every stage without finishing the elements in the pipeline
+         *
+         * @return the elements left in the channels
+         */
+        public long stopNow() {
+            stopped = true;
+            long left = 0;
+            for (Stage stage : stages) {
+                left += stage.input.stopNow();
+            }
+            for (Stage stage : stages) {
+                stage.wakeAll();
+            }
+            return left;
+        }
+
+        public void awaitTermination() throws InterruptedException {
+            for (Stage stage : stages) {
+                for (Thread worker : stage.workers) {
+                    worker.join();
+                }
+            }
+        }
+
+        // false if the pipeline is still running after timeout
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            for (Stage stage : stages) {
+                for (Thread worker : stage.workers) {
+                    long left = deadline - System.nanoTime();
+                    if (left <= 0)
+                        return false;
+                    TimeUnit.NANOSECONDS.timedJoin(worker, left);
+                    if (worker.isAlive())
+                        return false;
+                }
+            }
+            return true;
+        }
+
+        // the first exception thrown by a stage, null if none
+        public Throwable firstFailure() {
+            for (Stage stage : stages) {
+                Throwable failure = stage.firstFailure.get();
+                if (failure != null)
+                    return failure;
+            }
+            return null;
+        }
+
+        public List<StageStatistics> statistics() {
+            long elapsed = System.nanoTime() - startedAt;
+            List<StageStatistics> statistics = new ArrayList<>();
+            for (Stage stage : stages) {
+                statistics.add(new StageStatistics(stage.definition.name, stage.definition.parallelism,
+                        stage.processed.sum(), stage.failures.sum(), stage.input.size(), stage.input.capacity(),
+                        stage.busyNanos.sum(), elapsed));
+            }
+            return statistics;
+        }
+
+        private class Stage {
+            final StageDefinition definition;
+            final RingBufferChannel<Item> input;
+            // null for the sink
+            final Stage next;
+            final List<Thread> workers = new ArrayList<>();
+            final AtomicInteger running;
+            // a single worker keeps the order by itself
+            final boolean reorder;
+            // sequence of the next element to pass on, in ordered mode
+            final AtomicLong nextOut = new AtomicLong();
+            // the workers hold consecutive sequences, at most one per worker: the one waiting
+            // for sequence s parks in slot s % parallelism, where the worker passing s - 1 finds it
+            final AtomicReferenceArray<Thread> turns;
+
+            final LongAdder processed = new LongAdder();
+            final LongAdder failures = new LongAdder();
+            final LongAdder busyNanos = new LongAdder();
+            final AtomicReference<Throwable> firstFailure = new AtomicReference<>();
+
+            Stage(StageDefinition definition, int capacity, Stage next) {
+                this.definition = definition;
+                this.next = next;
+                this.running = new AtomicInteger(definition.parallelism);
+                this.reorder = ordered && definition.parallelism > 1;
+                this.turns = new AtomicReferenceArray<>(definition.parallelism);
+                RingBufferChannel.Mode mode = definition.parallelism == 1
+                        ? RingBufferChannel.Mode.MPSC : RingBufferChannel.Mode.MPMC;
+                this.input = new RingBufferChannel<>(capacity, mode, new BlockingWaitStrategy());
+            }
+
+            void start() {
+                for (int i = 0; i < definition.parallelism; i++) {
+                    Thread worker = new Thread(this::work, "pipeline-" + definition.name + "-" + i);
+                    // a pipeline nobody closes doesn't keep the JVM alive, awaitTermination() joins them
+                    worker.setDaemon(true);
+                    workers.add(worker);
+                    worker.start();
+                }
+            }
+
+            private void work() {
+                try {
+                    Item item;
+                    while ((item = input.take()) != null) {
+                        if (item.value != null)
+                            item.value = apply(item.value);
+                        if (reorder && !awaitTurn(item.sequence))
+                            return;
+                        try {
+                            // dropped elements only go on to keep their place in the order
+                            if (next != null && (item.value != null || ordered))
+                                next.input.put(item);
+                        } finally {
+                            if (reorder)
+                                passTurn(item.sequence + 1);
+                        }
+                    }
+                } catch (InterruptedException | IllegalStateException e) {
+                    // stopped, or the next stage was
+                } finally {
+                    if (running.decrementAndGet() == 0 && next != null)
+                        next.input.close();
+                }
+            }
+
+            private Object apply(Object value) {
+                long start = System.nanoTime();
+                try {
+                    return definition.function.apply(value);
+                } catch (Throwable e) {
+                    // an Error too: the worker must live to pass its turn, or the stage stops
+                    // at its sequence, and to keep the stage reading its channel
+                    failures.increment();
+                    firstFailure.compareAndSet(null, e);
+                    return null;
+                } finally {
+                    busyNanos.add(System.nanoTime() - start);
+                    processed.increment();
+                }
+            }
+
+            // false when the pipeline was stopped meanwhile
+            private boolean awaitTurn(long sequence) throws InterruptedException {
+                if (nextOut.get() == sequence)
+                    return true;
+                int slot = (int) (sequence % definition.parallelism);
+                // registered before checking again, so passTurn() either is seen or sees us
+                turns.set(slot, Thread.currentThread());
+                try {
+                    while (nextOut.get() != sequence) {
+                        if (stopped)
+                            return false;
+                        if (Thread.interrupted())
+                            throw new InterruptedException();
+                        LockSupport.park(this);
+                    }
+                    return true;
+                } finally {
+                    turns.set(slot, null);
+                }
+            }
+
+            private void passTurn(long sequence) {
+                nextOut.set(sequence);
+                Thread waiting = turns.get((int) (sequence % definition.parallelism));
+                if (waiting != null)
+                    LockSupport.unpark(waiting);
+            }
+
+            void wakeAll() {
+                for (int i = 0; i < turns.length(); i++) {
+                    Thread waiting = turns.get(i);
+                    if (waiting != null)
+                        LockSupport.unpark(waiting);
+                }
+            }
+        }
+    }
+}
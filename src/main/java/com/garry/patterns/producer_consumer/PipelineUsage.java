@@ -0,0 +1,50 @@
+package com.garry.patterns.producer_consumer;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pattern: Producer-Consumer
+ *
+ * Example: Pipeline usage, lines parsed, enriched and written
+ *
+ * Enriching is the slow stage, so it gets the most workers; the statistics printed while
+ * the pipeline runs show whether the queue in front of it still fills up.
+ */
+public class PipelineUsage {
+
+    public static void main(String[] args) throws InterruptedException {
+        AtomicLong written = new AtomicLong();
+
+        Pipeline<String, String> pipeline = Pipeline.<String>create(1 << 10, true)
+                .then("parse", 2, line -> line.split("-"))
+                .then("enrich", 4, fields -> {
+                    // a lookup that takes a while
+                    busyWork(20_000);
+                    return fields[0] + ":" + fields.length;
+                })
+                .then("write", 1, record -> record.toUpperCase());
+
+        Pipeline.Execution<String> execution = pipeline.start(record -> written.incrementAndGet());
+
+        for (int i = 0; i < 200_000; i++) {
+            execution.submit(UUID.randomUUID().toString());
+            if (i % 50_000 == 0)
+                execution.statistics().forEach(System.out::println);
+        }
+        execution.close();
+
+        if (!execution.awaitTermination(30, TimeUnit.SECONDS))
+            System.out.println("Stopped with " + execution.stopNow() + " records left");
+        execution.statistics().forEach(System.out::println);
+        System.out.println("Written " + written.get() + " records");
+    }
+
+    private static void busyWork(long nanos) {
+        long end = System.nanoTime() + nanos;
+        while (System.nanoTime() < end) {
+            Thread.onSpinWait();
+        }
+    }
+}
@@ -10,42 +10,86 @@ import java.util.concurrent.*;
  * logic that produce data is decoupled from the consumer logic through threads
  *
  * Intent: Create a simple Producer-Consumer relationship using Threads,
- * using BlockingQueue with multiple Producers/Consumers threads.
+ * with a bounded channel between multiple Producers/Consumers threads.
  *
  * Applicability: Good for when "getting the data" and "consuming the data"
  * happens in a non-serialized order.
+ *
+ * The data goes through a bounded RingBufferChannel: nothing is allocated per element,
+ * and the producer waits when the consumers fall behind instead of filling the heap.
+ * The producer closes the channel when it's done: the consumers finish what's left and
+ * stop at the end of the stream, instead of waiting for a poll to time out.
  */
 public class ProducerConsumer {
 
-    private BlockingQueue<String> data = new LinkedBlockingQueue<>();
+    private static final int CAPACITY = 1 << 10;
+    private static final int BATCH_SIZE = 256;
 
-    private Callable<Void> consumer = () -> {
-        while (true)
-        {
-            String dataUnit = data.poll(5, TimeUnit.SECONDS);
-            if (dataUnit == null)
+    private Callable<Void> consumer(RingBufferChannel<String> data) {
+        return () -> {
+            String dataUnit;
+            // null at the end of the stream
+            while ((dataUnit = data.take()) != null)
             {
-                break;
+                System.out.println("Consumed " + dataUnit + " from " + Thread.currentThread().getName());
             }
-            System.out.println("Consumed " + dataUnit + " from " + Thread.currentThread().getName());
-        }
-        return null;
-    };
+            return null;
+        };
+    }
 
-    private Callable<Void> producer = () -> {
-        for (int i = 0; i < 90_000; i++) {
-            String dataUnit = UUID.randomUUID().toString();
-            data.put(dataUnit);
-        }
-        return null;
-    };
+    // consumes up to BATCH_SIZE elements per wakeup, see runBatched
+    private Callable<Void> batchConsumer(RingBufferChannel<String> data) {
+        return new BatchConsumer<>(data, BATCH_SIZE, 10, TimeUnit.MILLISECONDS, batch ->
+                System.out.println("Consumed " + batch.size() + " from " + Thread.currentThread().getName()));
+    }
+
+    private Callable<Void> producer(RingBufferChannel<String> data) {
+        return () -> {
+            try {
+                for (int i = 0; i < 90_000; i++) {
+                    String dataUnit = UUID.randomUUID().toString();
+                    data.put(dataUnit);
+                }
+            } finally {
+                data.close();
+            }
+            return null;
+        };
+    }
 
+    // every run has its own channel: the producer closes it at the end of the run
+    private static RingBufferChannel<String> newChannel() {
+        return new RingBufferChannel<>(CAPACITY, RingBufferChannel.Mode.MPMC, new BlockingWaitStrategy());
+    }
+
+    // one producer and two consumers
     public void run(long forHowLong, TimeUnit unit) throws InterruptedException {
+        RingBufferChannel<String> data = newChannel();
+        ExecutorService pool = Executors.newCachedThreadPool();
+        pool.submit(producer(data));
+        pool.submit(consumer(data));
+        pool.submit(consumer(data));
+        pool.shutdown();
+        awaitOrStop(pool, data, forHowLong, unit);
+    }
+
+    public void runBatched(long forHowLong, TimeUnit unit) throws InterruptedException {
+        RingBufferChannel<String> data = newChannel();
         ExecutorService pool = Executors.newCachedThreadPool();
-        pool.submit(producer);
-        pool.submit(consumer);
-        pool.submit(consumer);
+        pool.submit(producer(data));
+        pool.submit(batchConsumer(data));
+        pool.submit(batchConsumer(data));
         pool.shutdown();
+        awaitOrStop(pool, data, forHowLong, unit);
+    }
+
+    // drains the channel if it takes less than forHowLong, stops the consumers right away otherwise
+    private void awaitOrStop(ExecutorService pool, RingBufferChannel<String> data, long forHowLong, TimeUnit unit)
+            throws InterruptedException {
+        if (pool.awaitTermination(forHowLong, unit))
+            return;
+        long left = data.stopNow();
+        System.out.println("Stopped with " + left + " data units left");
         pool.awaitTermination(forHowLong, unit);
     }
 
@@ -54,6 +98,7 @@ public class ProducerConsumer {
 
         try {
             producerConsumer.run(5,TimeUnit.SECONDS);
+            producerConsumer.runBatched(5, TimeUnit.SECONDS);
         } catch (InterruptedException e) {
             e.printStackTrace();
         }
@@ -0,0 +1,308 @@
+package com.garry.patterns.producer_consumer;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Bounded channel between producers and consumers, over a preallocated ring buffer
+ *
+ * "Bounded MPMC queue" (Vyukov, 1024cores.net): every slot has a sequence number that says
+ * whose turn it is. Slot i holds sequence s when it's free for the producer of position s,
+ * and s + 1 once that producer published its element there; the consumer of position s
+ * frees it for position s + capacity. Producers and consumers claim positions by moving
+ * their cursor, then only wait on their own slot, so nothing is allocated per element and
+ * a producer and a consumer never touch the same cursor.
+ *
+ * - SPSC, MPSC: with a single producer (or consumer) its cursor is moved with a plain
+ *   write instead of a CAS; using the channel from more threads than its mode allows
+ *   breaks it
+ * - the two cursors sit in the middle of a long[], a cache line apart, like the counters
+ *   of the work stealing servers
+ * - put(), take() and the timed offer/poll wait with the WaitStrategy, which is the
+ *   backpressure on the producers: a full channel makes them wait
+ *
+ * Closing: close() seals the channel, producers can't add anything anymore and the
+ * consumers still get every element that was added before; once they're all consumed, take()
+ * returns null to every consumer, the end of the stream. stopNow() also makes the consumers
+ * stop right away, leaving the remaining elements in the channel. The closed flag is a bit of
+ * the producers' cursor, set by CAS, so a producer either claimed its position before the
+ * channel was closed, and its element will be consumed, or it sees the flag; remaining() is
+ * exact once the channel is closed. With a single producer (SPSC) that producer must be the
+ * one closing the channel, it moves its cursor without a CAS.
+ *
+ * Null elements aren't allowed.
+ */
+public class RingBufferChannel<E> {
+
+    public enum Mode {
+        // single producer, single consumer
+        SPSC,
+        // multiple producers, single consumer
+        MPSC,
+        // multiple producers, multiple consumers
+        MPMC
+    }
+
+    // 8 longs, 64 bytes
+    private static final int PAD = 8;
+    private static final int HEAD = PAD;
+    private static final int TAIL = 2 * PAD;
+
+    // set in the producers' cursor, never reached by the positions
+    private static final long CLOSED = 1L << 62;
+
+    private static final VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final Object[] buffer;
+    private final long[] sequences;
+    private final int mask;
+    // next position to consume at HEAD, next position to produce at TAIL
+    private final long[] cursors = new long[3 * PAD];
+    private final boolean singleProducer;
+    private final boolean singleConsumer;
+    private final WaitStrategy waitStrategy;
+    // set by stopNow()
+    private volatile boolean stopped = false;
+
+    // waiting ends as well when the channel is closed
+    private final BooleanSupplier hasSpace = () -> hasSpace() || isClosed();
+    private final BooleanSupplier hasElements = () -> hasElements() || isFinished();
+
+    public RingBufferChannel(int capacity) {
+        this(capacity, Mode.MPMC, new BlockingWaitStrategy());
+    }
+
+    // the capacity is rounded up to a power of two, at least 2
+    public RingBufferChannel(int capacity, Mode mode, WaitStrategy waitStrategy) {
+        if (capacity < 1 || capacity > 1 << 30)
+            throw new IllegalArgumentException("Invalid capacity " + capacity);
+        int size = Math.max(2, 1 << (32 - Integer.numberOfLeadingZeros(capacity - 1)));
+        this.buffer = new Object[size];
+        this.sequences = new long[size];
+        for (int i = 0; i < size; i++) {
+            sequences[i] = i;
+        }
+        this.mask = size - 1;
+        this.singleProducer = mode == Mode.SPSC;
+        this.singleConsumer = mode != Mode.MPMC;
+        this.waitStrategy = waitStrategy;
+        // publishes the initialized sequences to the threads the channel is handed to
+        VarHandle.releaseFence();
+    }
+
+    // IllegalStateException once the channel is closed
+    public boolean offer(E element) {
+        if (element == null)
+            throw new NullPointerException();
+        long tail;
+        int index;
+        for (;;) {
+            tail = (long) LONGS.getVolatile(cursors, TAIL);
+            if ((tail & CLOSED) != 0)
+                throw new IllegalStateException("The channel is closed");
+            index = (int) tail & mask;
+            long sequence = (long) LONGS.getAcquire(sequences, index);
+            long difference = sequence - tail;
+            if (difference == 0) {
+                if (singleProducer) {
+                    LONGS.setRelease(cursors, TAIL, tail + 1);
+                    break;
+                }
+                if (LONGS.compareAndSet(cursors, TAIL, tail, tail + 1))
+                    break;
+            } else if (difference < 0) {
+                // the consumer of the previous lap hasn't freed the slot: full
+                return false;
+            }
+            // else another producer claimed this position, try the next one
+        }
+        buffer[index] = element;
+        LONGS.setRelease(sequences, index, tail + 1);
+        waitStrategy.signal(hasElements);
+        return true;
+    }
+
+    public void put(E element) throws InterruptedException {
+        while (!offer(element)) {
+            waitStrategy.await(hasSpace, Long.MAX_VALUE);
+        }
+    }
+
+    // false when there was no room before the timeout
+    public boolean offer(E element, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!offer(element)) {
+            long left = deadline - System.nanoTime();
+            if (left <= 0 || !waitStrategy.await(hasSpace, left))
+                return offer(element);
+        }
+        return true;
+    }
+
+    // null when empty, or stopped
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        if (stopped)
+            return null;
+        long head;
+        int index;
+        for (;;) {
+            head = (long) LONGS.getVolatile(cursors, HEAD);
+            index = (int) head & mask;
+            long sequence = (long) LONGS.getAcquire(sequences, index);
+            long difference = sequence - (head + 1);
+            if (difference == 0) {
+                if (singleConsumer) {
+                    LONGS.setRelease(cursors, HEAD, head + 1);
+                    break;
+                }
+                if (LONGS.compareAndSet(cursors, HEAD, head, head + 1))
+                    break;
+            } else if (difference < 0) {
+                // the producer of this position hasn't published yet: empty
+                return null;
+            }
+        }
+        E element = (E) buffer[index];
+        buffer[index] = null;
+        LONGS.setRelease(sequences, index, head + mask + 1);
+        waitStrategy.signal(hasSpace);
+        return element;
+    }
+
+    // null at the end of the stream: closed and every element consumed, or stopped
+    public E take() throws InterruptedException {
+        E element;
+        while ((element = poll()) == null) {
+            if (isFinished())
+                return null;
+            waitStrategy.await(hasElements, Long.MAX_VALUE);
+        }
+        return element;
+    }
+
+    // null when nothing came before the timeout, or at the end of the stream
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        E element;
+        while ((element = poll()) == null) {
+            if (isFinished())
+                return null;
+            long left = deadline - System.nanoTime();
+            if (left <= 0 || !waitStrategy.await(hasElements, left))
+                return poll();
+        }
+        return element;
+    }
+
+    /**
+     * Moves up to maxElements available elements to sink, without waiting.
+     * A single consumer moves its cursor once for the whole batch
+     *
+     * @return how many elements were moved
+     */
+    @SuppressWarnings("unchecked")
+    public int drainTo(Collection<? super E> sink, int maxElements) {
+        if (stopped)
+            return 0;
+        if (!singleConsumer) {
+            int count = 0;
+            E element;
+            while (count < maxElements && (element = poll()) != null) {
+                sink.add(element);
+                count++;
+            }
+            return count;
+        }
+        long head = (long) LONGS.getVolatile(cursors, HEAD);
+        int count = 0;
+        while (count < maxElements) {
+            long position = head + count;
+            int index = (int) position & mask;
+            if ((long) LONGS.getAcquire(sequences, index) != position + 1)
+                break;
+            sink.add((E) buffer[index]);
+            buffer[index] = null;
+            LONGS.setRelease(sequences, index, position + mask + 1);
+            count++;
+        }
+        if (count > 0) {
+            LONGS.setRelease(cursors, HEAD, head + count);
+            // room for several producers
+            waitStrategy.signalAll();
+        }
+        return count;
+    }
+
+    // elements published or being published, an estimate while the channel is used
+    public int size() {
+        return (int) Math.min(remaining(), capacity());
+    }
+
+    // elements added and not consumed yet; exact when the channel is closed and no consumer is running
+    public long remaining() {
+        long head = (long) LONGS.getVolatile(cursors, HEAD);
+        long tail = (long) LONGS.getVolatile(cursors, TAIL) & ~CLOSED;
+        return Math.max(0, tail - head);
+    }
+
+    // seals the channel: no more elements, the consumers finish the ones already added
+    public void close() {
+        long tail;
+        do {
+            tail = (long) LONGS.getVolatile(cursors, TAIL);
+            if ((tail & CLOSED) != 0)
+                return;
+        } while (!LONGS.compareAndSet(cursors, TAIL, tail, tail | CLOSED));
+        waitStrategy.signalAll();
+    }
+
+    /**
+     * Closes the channel and stops the consumers without letting them take the remaining
+     * elements
+     *
+     * @return the elements left in the channel
+     */
+    public long stopNow() {
+        stopped = true;
+        close();
+        waitStrategy.signalAll();
+        return remaining();
+    }
+
+    public boolean isClosed() {
+        return ((long) LONGS.getVolatile(cursors, TAIL) & CLOSED) != 0;
+    }
+
+    // nothing more will come out of the channel
+    public boolean isFinished() {
+        if (stopped)
+            return true;
+        long head = (long) LONGS.getVolatile(cursors, HEAD);
+        long tail = (long) LONGS.getVolatile(cursors, TAIL);
+        return (tail & CLOSED) != 0 && head >= (tail & ~CLOSED);
+    }
+
+    public boolean isEmpty() {
+        return !hasElements();
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    // the slot of the next position to produce is free
+    private boolean hasSpace() {
+        long tail = (long) LONGS.getVolatile(cursors, TAIL) & ~CLOSED;
+        return (long) LONGS.getAcquire(sequences, (int) tail & mask) - tail >= 0;
+    }
+
+    // the element of the next position to consume is published
+    private boolean hasElements() {
+        long head = (long) LONGS.getVolatile(cursors, HEAD);
+        return (long) LONGS.getAcquire(sequences, (int) head & mask) - (head + 1) >= 0;
+    }
+}
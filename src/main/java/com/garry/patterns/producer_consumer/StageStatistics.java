@@ -0,0 +1,55 @@
+package com.garry.patterns.producer_consumer;
+
+/**
+ * Snapshot of the counters of a Pipeline stage, times are in nanoseconds
+ *
+ * A stage whose queue stays full while the next one's stays empty is the bottleneck:
+ * it's the one that needs more workers
+ */
+public class StageStatistics {
+
+    public final String name;
+    public final int parallelism;
+    // elements its function was applied to, failed ones included
+    public final long processed;
+    public final long failures;
+    // elements waiting in front of the stage, an estimate
+    public final int queueDepth;
+    public final int queueCapacity;
+    // time spent in the function, summed over the workers
+    public final long busyNanos;
+    // since the pipeline was started
+    public final long elapsedNanos;
+
+    StageStatistics(String name, int parallelism, long processed, long failures, int queueDepth, int queueCapacity,
+                    long busyNanos, long elapsedNanos) {
+        this.name = name;
+        this.parallelism = parallelism;
+        this.processed = processed;
+        this.failures = failures;
+        this.queueDepth = queueDepth;
+        this.queueCapacity = queueCapacity;
+        this.busyNanos = busyNanos;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    // elements per second since the start
+    public double throughput() {
+        return elapsedNanos == 0 ? 0 : processed * 1e9 / elapsedNanos;
+    }
+
+    // share of the time the workers spent in the function rather than waiting
+    public double utilization() {
+        return elapsedNanos == 0 ? 0 : (double) busyNanos / ((double) elapsedNanos * parallelism);
+    }
+
+    @Override
+    public String toString() {
+        return "Stage " + name + " (" + parallelism + " workers)"
+                + " processed: " + processed
+                + " failures: " + failures
+                + " queue: " + queueDepth + "/" + queueCapacity
+                + " throughput (/s): " + String.format("%.0f", throughput())
+                + " utilization: " + String.format("%.2f", utilization());
+    }
+}
@@ -0,0 +1,30 @@
+package com.garry.patterns.producer_consumer;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Decides what a thread does while it waits on a channel: for an element when it is
+ * empty, or for a free slot when it is full
+ *
+ * The strategies trade CPU for latency: a busy spinning thread sees a new element a few
+ * nanoseconds after it's published but burns a core, a blocked one costs nothing while it
+ * waits but has to be woken up by the other side.
+ */
+public interface WaitStrategy {
+
+    /**
+     * Waits until ready returns true, for at most nanos (Long.MAX_VALUE to wait without limit)
+     *
+     * @return the last answer of ready, false when the time ran out
+     */
+    boolean await(BooleanSupplier ready, long nanos) throws InterruptedException;
+
+    // ready may have become true for one more waiter: called with the channel's ready
+    // condition after every element published or consumed
+    default void signal(BooleanSupplier ready) {
+    }
+
+    // every waiter has to look again, whatever it waits for: the channel was closed or stopped
+    default void signalAll() {
+    }
+}
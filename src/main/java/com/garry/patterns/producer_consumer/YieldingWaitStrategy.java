@@ -0,0 +1,29 @@
+package com.garry.patterns.producer_consumer;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Spins a little, then yields the core between two checks: close to busy spinning
+ * when the other side is quick, and lets other threads run when it isn't
+ */
+public class YieldingWaitStrategy implements WaitStrategy {
+
+    private static final int SPINS = 100;
+
+    @Override
+    public boolean await(BooleanSupplier ready, long nanos) throws InterruptedException {
+        long deadline = nanos == Long.MAX_VALUE ? 0 : System.nanoTime() + nanos;
+        for (int spins = 0; !ready.getAsBoolean(); spins++) {
+            if (Thread.interrupted())
+                throw new InterruptedException();
+            if (nanos != Long.MAX_VALUE && System.nanoTime() - deadline >= 0)
+                return false;
+            if (spins < SPINS) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,49 @@
+package com.garry.patterns.rate_limiting;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pattern: Rate Limiting
+ *
+ * Motivations: A service called too often, a remote API with a quota or a tenant that
+ * shouldn't take all the capacity, need the number of calls per period to be limited
+ *
+ * Intent: Let a call through when it fits in the rate, and tell right away when it doesn't,
+ * without holding a lock or sleeping for the caller: the caller chooses to give up, to wait
+ * or to be called back when the permits are available.
+ *
+ * Applicability: Use in front of anything that must not be called more than a given rate,
+ * one limiter per caller (tenant, client, key) when each has its own rate
+ *
+ * The state is a single long updated by CAS, the refill is computed from System.nanoTime()
+ * when a permit is asked for: there's no background thread and an idle limiter costs nothing.
+ */
+public interface RateLimiter {
+
+    // false when the permits don't fit in the rate now, doesn't wait
+    boolean tryAcquire(int permits);
+
+    default boolean tryAcquire() {
+        return tryAcquire(1);
+    }
+
+    /**
+     * Waits up to timeout for the permits. A caller that can't get them in time gives up right
+     * away instead of waiting for nothing
+     *
+     * @return false when the permits won't be available before the timeout
+     */
+    boolean tryAcquire(int permits, long timeout, TimeUnit unit) throws InterruptedException;
+
+    default boolean tryAcquire(long timeout, TimeUnit unit) throws InterruptedException {
+        return tryAcquire(1, timeout, unit);
+    }
+
+    // completes once the permits are acquired, no thread waits meanwhile
+    CompletableFuture<Void> acquireAsync(int permits);
+
+    default CompletableFuture<Void> acquireAsync() {
+        return acquireAsync(1);
+    }
+}
@@ -0,0 +1,61 @@
+package com.garry.patterns.rate_limiting;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pattern: Rate Limiting
+ *
+ * Example: Rate Limiter usage, outbound calls limited per tenant
+ */
+public class RateLimitingUsage {
+
+    private static final String[] TENANTS = {"acme", "globex", "initech"};
+
+    // one limiter per tenant, created on its first call
+    private final Map<String, RateLimiter> limiters = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> accepted = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> rejected = new ConcurrentHashMap<>();
+
+    private boolean call(String tenant) {
+        RateLimiter limiter = limiters.computeIfAbsent(tenant,
+                key -> new TokenBucketRateLimiter(1_000, 1, TimeUnit.SECONDS, 100));
+        boolean allowed = limiter.tryAcquire();
+        (allowed ? accepted : rejected).computeIfAbsent(tenant, key -> new AtomicLong()).incrementAndGet();
+        return allowed;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        RateLimitingUsage usage = new RateLimitingUsage();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        for (int i = 0; i < 4; i++) {
+            int offset = i;
+            executor.execute(() -> {
+                for (int n = offset; System.nanoTime() < end; n++) {
+                    usage.call(TENANTS[n % TENANTS.length]);
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+        for (String tenant : TENANTS) {
+            System.out.println(tenant + " accepted: " + usage.accepted.get(tenant) + " rejected: "
+                    + usage.rejected.get(tenant));
+        }
+
+        // 5 per second in any second, the callers wait for their turn instead of being rejected
+        RateLimiter window = new SlidingWindowRateLimiter(5, 1, TimeUnit.SECONDS);
+        long start = System.nanoTime();
+        for (int i = 0; i < 12; i++) {
+            if (window.tryAcquire(2, TimeUnit.SECONDS))
+                System.out.println("Call " + i + " after " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        }
+        window.acquireAsync().thenRun(() -> System.out.println("Async call after "
+                + (System.nanoTime() - start) / 1_000_000 + " ms")).join();
+    }
+}
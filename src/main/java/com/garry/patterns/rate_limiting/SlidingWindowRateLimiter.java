@@ -0,0 +1,157 @@
+package com.garry.patterns.rate_limiting;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Pattern: Rate Limiting
+ *
+ * Example: sliding window counter
+ *
+ * At most limit permits in any window of time, not just in each fixed window: a fixed window
+ * lets 2 * limit calls through around its boundary. The limiter counts the permits of the
+ * current fixed window and of the previous one, and weighs the previous count by the part of
+ * the previous window still inside the sliding one, as if its calls had been spread evenly.
+ *
+ * The window number and the two counts are packed in one long, updated by CAS:
+ * - 24 bits of window number: a limiter left idle for exactly a multiple of 2^24 windows
+ *   would take its old counts for the current ones, until the next window
+ * - 20 bits per count, which bounds the limit to about a million permits per window
+ *
+ * There's no reservation: a waiting caller computes when its permits should fit and tries
+ * again then, so callers that wait aren't served in any particular order.
+ */
+public class SlidingWindowRateLimiter implements RateLimiter {
+
+    private static final int COUNT_BITS = 20;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+    private static final int WINDOW_SHIFT = 2 * COUNT_BITS;
+    private static final long WINDOW_MASK = (1L << (64 - WINDOW_SHIFT)) - 1;
+
+    public static final int MAX_LIMIT = (int) COUNT_MASK;
+
+    private final int limit;
+    private final long windowNanos;
+    private final long origin = System.nanoTime();
+    // window number, previous count, current count
+    private final AtomicLong state = new AtomicLong();
+
+    public SlidingWindowRateLimiter(int limit, long window, TimeUnit unit) {
+        if (limit < 1 || limit > MAX_LIMIT)
+            throw new IllegalArgumentException("The limit must be between 1 and " + MAX_LIMIT);
+        if (window <= 0)
+            throw new IllegalArgumentException("The window must be positive");
+        this.limit = limit;
+        this.windowNanos = unit.toNanos(window);
+    }
+
+    @Override
+    public boolean tryAcquire(int permits) {
+        check(permits);
+        for (;;) {
+            long current = state.get();
+            long elapsed = System.nanoTime() - origin;
+            long window = elapsed / windowNanos;
+            long into = elapsed - window * windowNanos;
+            long previousCount = previousCount(current, window);
+            long currentCount = currentCount(current, window);
+            if (estimate(previousCount, currentCount, into) + permits > limit)
+                return false;
+            long next = ((window & WINDOW_MASK) << WINDOW_SHIFT) | (previousCount << COUNT_BITS)
+                    | (currentCount + permits);
+            if (state.compareAndSet(current, next))
+                return true;
+        }
+    }
+
+    @Override
+    public boolean tryAcquire(int permits, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!tryAcquire(permits)) {
+            if (Thread.interrupted())
+                throw new InterruptedException();
+            long wait = nanosUntilAvailable(permits);
+            if (System.nanoTime() + wait - deadline > 0)
+                return false;
+            LockSupport.parkNanos(this, wait);
+        }
+        return true;
+    }
+
+    @Override
+    public CompletableFuture<Void> acquireAsync(int permits) {
+        check(permits);
+        CompletableFuture<Void> acquired = new CompletableFuture<>();
+        attempt(acquired, permits);
+        return acquired;
+    }
+
+    // permits that would be let through now
+    public int availablePermits() {
+        long current = state.get();
+        long elapsed = System.nanoTime() - origin;
+        long window = elapsed / windowNanos;
+        double used = estimate(previousCount(current, window), currentCount(current, window),
+                elapsed - window * windowNanos);
+        return (int) Math.max(0, Math.floor(limit - used));
+    }
+
+    // tries again when the permits should fit, until they do or the future is cancelled
+    private void attempt(CompletableFuture<Void> acquired, int permits) {
+        if (acquired.isDone())
+            return;
+        if (tryAcquire(permits)) {
+            acquired.complete(null);
+            return;
+        }
+        CompletableFuture.delayedExecutor(nanosUntilAvailable(permits), TimeUnit.NANOSECONDS)
+                .execute(() -> attempt(acquired, permits));
+    }
+
+    // from the counts seen now; other callers may take the permits first
+    private long nanosUntilAvailable(int permits) {
+        long current = state.get();
+        long elapsed = System.nanoTime() - origin;
+        long window = elapsed / windowNanos;
+        long into = elapsed - window * windowNanos;
+        long previousCount = previousCount(current, window);
+        long currentCount = currentCount(current, window);
+
+        long free = limit - currentCount - permits;
+        if (free >= 0)
+            return Math.max(1, untilWeightFits(previousCount, free) - into);
+        // the current count becomes the previous one in the next window
+        return windowNanos - into + Math.max(1, untilWeightFits(currentCount, limit - permits));
+    }
+
+    // how far into a window the weighted previous count drops to free
+    private long untilWeightFits(long previousCount, long free) {
+        if (previousCount <= free)
+            return 0;
+        return (long) Math.ceil(windowNanos * (1 - (double) free / previousCount));
+    }
+
+    private double estimate(long previousCount, long currentCount, long into) {
+        return previousCount * ((double) (windowNanos - into) / windowNanos) + currentCount;
+    }
+
+    private static long previousCount(long state, long window) {
+        long stored = state >>> WINDOW_SHIFT;
+        if (stored == (window & WINDOW_MASK))
+            return (state >>> COUNT_BITS) & COUNT_MASK;
+        if (stored == ((window - 1) & WINDOW_MASK))
+            return state & COUNT_MASK;
+        return 0;
+    }
+
+    private static long currentCount(long state, long window) {
+        return (state >>> WINDOW_SHIFT) == (window & WINDOW_MASK) ? state & COUNT_MASK : 0;
+    }
+
+    private void check(int permits) {
+        if (permits < 1 || permits > limit)
+            throw new IllegalArgumentException("Between 1 and " + limit + " permits at once, not " + permits);
+    }
+}
@@ -0,0 +1,116 @@
+package com.garry.patterns.rate_limiting;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Pattern: Rate Limiting
+ *
+ * Example: token bucket, as the Generic Cell Rate Algorithm
+ *
+ * A bucket of burst tokens refilled with one token every interval, where interval is the
+ * period divided by the permits. Instead of the tokens, the limiter keeps a single number,
+ * the theoretical arrival time: when the bucket will be full again. Taking n tokens pushes
+ * it n intervals further, from now if the bucket was already full; the tokens are there
+ * as long as it doesn't end up more than burst intervals ahead of now. Checking is a read of
+ * the clock and a CAS, and a refused call writes nothing.
+ *
+ * Waiting callers reserve their tokens: the arrival time is pushed past now, and they only
+ * have to wait until their tokens are due. A timed tryAcquire() reserves only when the wait
+ * fits in the timeout, a reserved wait that is interrupted doesn't give its tokens back, nor
+ * does a cancelled acquireAsync().
+ */
+public class TokenBucketRateLimiter implements RateLimiter {
+
+    private final long intervalNanos;
+    private final int burst;
+    private final long burstNanos;
+    // System.nanoTime() at which the bucket is full again
+    private final AtomicLong fullAt;
+
+    // burst of permits, the bucket starts full
+    public TokenBucketRateLimiter(int permits, long period, TimeUnit unit) {
+        this(permits, period, unit, permits);
+    }
+
+    public TokenBucketRateLimiter(int permits, long period, TimeUnit unit, int burst) {
+        if (permits < 1 || burst < 1)
+            throw new IllegalArgumentException("The rate and the burst must be positive");
+        this.intervalNanos = Math.max(1, unit.toNanos(period) / permits);
+        this.burst = burst;
+        this.burstNanos = Math.multiplyExact(intervalNanos, (long) burst);
+        this.fullAt = new AtomicLong(System.nanoTime());
+    }
+
+    @Override
+    public boolean tryAcquire(int permits) {
+        long cost = cost(permits);
+        for (;;) {
+            long full = fullAt.get();
+            long now = System.nanoTime();
+            long next = (full - now > 0 ? full : now) + cost;
+            if (next - now > burstNanos)
+                return false;
+            if (fullAt.compareAndSet(full, next))
+                return true;
+        }
+    }
+
+    @Override
+    public boolean tryAcquire(int permits, long timeout, TimeUnit unit) throws InterruptedException {
+        if (Thread.interrupted())
+            throw new InterruptedException();
+        long wait = reserve(cost(permits), unit.toNanos(timeout));
+        if (wait < 0)
+            return false;
+        long due = System.nanoTime() + wait;
+        for (long left = wait; left > 0; left = due - System.nanoTime()) {
+            LockSupport.parkNanos(this, left);
+            if (Thread.interrupted())
+                throw new InterruptedException();
+        }
+        return true;
+    }
+
+    @Override
+    public CompletableFuture<Void> acquireAsync(int permits) {
+        long wait = reserve(cost(permits), Long.MAX_VALUE);
+        if (wait == 0)
+            return CompletableFuture.completedFuture(null);
+        return CompletableFuture.runAsync(() -> { },
+                CompletableFuture.delayedExecutor(wait, TimeUnit.NANOSECONDS));
+    }
+
+    // tokens in the bucket now, a negative count when some are reserved
+    public long availablePermits() {
+        long now = System.nanoTime();
+        long full = fullAt.get();
+        return (burstNanos - Math.max(0, full - now)) / intervalNanos;
+    }
+
+    /**
+     * Takes the tokens if they are due within maxWaitNanos
+     *
+     * @return how long to wait for them, -1 when they are due later
+     */
+    private long reserve(long cost, long maxWaitNanos) {
+        for (;;) {
+            long full = fullAt.get();
+            long now = System.nanoTime();
+            long next = (full - now > 0 ? full : now) + cost;
+            long wait = Math.max(0, next - now - burstNanos);
+            if (wait > maxWaitNanos)
+                return -1;
+            if (fullAt.compareAndSet(full, next))
+                return wait;
+        }
+    }
+
+    private long cost(int permits) {
+        if (permits < 1 || permits > burst)
+            throw new IllegalArgumentException("Between 1 and " + burst + " permits at once, not " + permits);
+        return permits * intervalNanos;
+    }
+}
@@ -0,0 +1,27 @@
+package com.garry.patterns.resource_pool;
+
+/**
+ * Map key comparing the object it wraps by identity
+ *
+ * The pools find the entry of a released resource in a map: two resources that are equal
+ * but distinct objects (connections to the same address, value objects) must still be two
+ * entries, and releasing one must never touch the other.
+ */
+final class IdentityKey {
+
+    private final Object object;
+
+    IdentityKey(Object object) {
+        this.object = object;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof IdentityKey && ((IdentityKey) other).object == object;
+    }
+
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(object);
+    }
+}
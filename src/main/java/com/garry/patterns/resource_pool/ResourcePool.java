@@ -1,10 +1,23 @@
 package com.garry.patterns.resource_pool;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.Semaphore;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
 
 /**
  * Pattern: Resource Pool
@@ -16,38 +29,743 @@ import java.util.concurrent.TimeUnit;
  * when there's none available. It implements the concurrent thread-safe pool using Semaphores.
  *
  * Applicability: Use when you want to create a pool of some limited resource
+ *
+ * The pool has one slot per resource it can hold, and every resource has a state switched by
+ * CAS: a borrower owns a resource once it moved it from FREE to IN_USE, so the pool never hands
+ * out more than it has. The checkout path touches nothing but the resource it takes, there is
+ * no lock, no queue and no shared counter every borrower would update:
+ * - a thread first tries the last resource it released, then scans from a random index
+ * - a borrower that finds nothing free queues itself on the wait queue, looks at the resources
+ *   again, and parks. A release hands its resource straight to the oldest waiter, so the woken
+ *   thread doesn't have to compete for it; it looks at the queue after freeing its resource,
+ *   so neither side misses the other. Non fair: a new borrower takes a free resource even when
+ *   others are queued, as it would with a non-fair semaphore
+ *
+ * Built from a ResourceFactory, the pool starts empty and creates resources when borrowers
+ * find no free one. A background task keeps at least minSize resources, and evicts the ones
+ * that are idle for too long, older than their max lifetime, or no longer valid. It only touches
+ * free resources, reserving them with a CAS as a borrower would, and then serves the waiters
+ * that missed them meanwhile; a borrowed resource that is too old is destroyed when it comes back.
+ *
+ * Metrics: statistics() takes a snapshot of the sizes, counters and wait times. Only the borrowers
+ * that have to wait read the clock, the others just count as a wait of 0. Leak detection is off by
+ * default: when enabled, every borrow remembers where it happened (one Throwable per borrow), and
+ * a background task reports the resources held for longer than the threshold with that stack.
+ *
+ * borrowAsync() never blocks: without a free resource it queues a future on the same wait queue,
+ * and the release that hands it a resource completes it, so no thread is parked for the waiter.
+ * Futures and parked threads are served oldest first. A future that times out or is cancelled
+ * leaves the queue, and a resource handed to a future that completed in the meantime goes to
+ * the next one.
  */
-public class ResourcePool<T> {
+public class ResourcePool<T> implements AutoCloseable {
+
+    /**
+     * Creates, checks and destroys the resources of a pool
+     */
+    public interface ResourceFactory<T> {
+
+        T create() throws Exception;
+
+        default boolean validate(T resource) {
+            return true;
+        }
+
+        default void destroy(T resource) {
+        }
+    }
 
     private final static TimeUnit TIME_UNIT = TimeUnit.SECONDS;
-    private Semaphore semaphore;
-    private BlockingQueue<T> resources;
+
+    private static final long DEFAULT_IDLE_TIMEOUT_MINUTES = 10;
+    private static final long DEFAULT_MAX_LIFETIME_MINUTES = 30;
+
+    private static final long MIN_SWEEP_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long DEFAULT_SWEEP_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private static final int FREE = 0;
+    private static final int IN_USE = 1;
+    // held by a thread creating, checking or destroying the resource
+    private static final int RESERVED = 2;
+    // evicted, the slot is or will be reused
+    private static final int REMOVED = 3;
+
+    private static final VarHandle STATE;
+    private static final VarHandle ITEM;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            STATE = lookup.findVarHandle(Entry.class, "state", int.class);
+            ITEM = lookup.findVarHandle(ThreadWaiter.class, "item", Object.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static final class Entry<T> {
+        final T resource;
+        final int slot;
+        final long createdAt = System.nanoTime();
+        volatile int state;
+        // too old, destroy it when it's released
+        volatile boolean retired;
+        // set on release, cleared by the maintenance task: a plain field, a late write only delays an eviction
+        boolean touched;
+        // maintenance task only
+        long idleSince = createdAt;
+        // set on borrow when leak detection is on, borrowedBy is cleared on release
+        volatile long borrowedAt;
+        volatile Throwable borrowedBy;
+
+        Entry(T resource, int slot, int state) {
+            this.resource = resource;
+            this.slot = slot;
+            this.state = state;
+        }
+
+        boolean tryBorrow() {
+            return state == FREE && STATE.compareAndSet(this, FREE, IN_USE);
+        }
+
+        boolean tryRelease() {
+            return STATE.compareAndSet(this, IN_USE, FREE);
+        }
+    }
+
+    // a borrower queued for a resource, a parked thread or a future
+    private interface Waiter<T> {
+
+        // false when the waiter gave up meanwhile
+        boolean tryHandOff(T resource);
+
+        boolean tryFail(RuntimeException failure);
+
+        long start();
+
+        // where the borrow was asked for, when leak detection is on
+        Throwable borrowedBy();
+    }
+
+    private static final class ThreadWaiter<T> implements Waiter<T> {
+        private static final Object CANCELLED = new Object();
+
+        final Thread thread = Thread.currentThread();
+        final long start = System.nanoTime();
+        final Throwable borrowedBy;
+        // null while waiting, then the resource handed over, a Failure, or CANCELLED
+        volatile Object item;
+
+        ThreadWaiter(Throwable borrowedBy) {
+            this.borrowedBy = borrowedBy;
+        }
+
+        @Override
+        public boolean tryHandOff(T resource) {
+            return complete(resource);
+        }
+
+        @Override
+        public boolean tryFail(RuntimeException failure) {
+            return complete(new Failure(failure));
+        }
+
+        boolean tryCancel() {
+            return ITEM.compareAndSet(this, (Object) null, CANCELLED);
+        }
+
+        private boolean complete(Object value) {
+            if (item != null || !ITEM.compareAndSet(this, (Object) null, value))
+                return false;
+            LockSupport.unpark(thread);
+            return true;
+        }
+
+        @Override
+        public long start() {
+            return start;
+        }
+
+        @Override
+        public Throwable borrowedBy() {
+            return borrowedBy;
+        }
+    }
+
+    // what a ThreadWaiter gets instead of a resource when the pool couldn't give it one
+    private static final class Failure {
+        final RuntimeException exception;
+
+        Failure(RuntimeException exception) {
+            this.exception = exception;
+        }
+    }
+
+    private static final class AsyncWaiter<T> extends CompletableFuture<T> implements Waiter<T> {
+        final long start = System.nanoTime();
+        final Throwable borrowedBy;
+
+        AsyncWaiter(Throwable borrowedBy) {
+            this.borrowedBy = borrowedBy;
+        }
+
+        @Override
+        public boolean tryHandOff(T resource) {
+            return complete(resource);
+        }
+
+        @Override
+        public boolean tryFail(RuntimeException failure) {
+            return completeExceptionally(failure);
+        }
+
+        @Override
+        public long start() {
+            return start;
+        }
+
+        @Override
+        public Throwable borrowedBy() {
+            return borrowedBy;
+        }
+    }
+
+    // null while nothing was created in the slot
+    private final AtomicReferenceArray<Entry<T>> slots;
+    // to find the entry of a released resource, by identity: equal resources are still distinct entries
+    private final Map<IdentityKey, Entry<T>> entryOf = new ConcurrentHashMap<>();
+    // the last resource released by the thread, likely still free and still in its cache
+    private final ThreadLocal<Entry<T>> lastReleased = new ThreadLocal<>();
+    // threads parked in get() and futures of borrowAsync() waiting for a resource, oldest first
+    private final Queue<Waiter<T>> waiters = new ConcurrentLinkedQueue<>();
+
+    // null when the pool was given its resources
+    private final ResourceFactory<T> factory;
+    private final int minSize;
+    // 0 when disabled
+    private final long idleTimeoutNanos;
+    private final long maxLifetimeNanos;
+    private final boolean validateOnBorrow;
+    // created with the first background task, guarded by this
+    private ScheduledExecutorService maintenance;
+
+    // set once, by the first close()
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    private final WaitTimeHistogram waitTimes = new WaitTimeHistogram();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder destroyed = new LongAdder();
+    private final LongAdder creationFailures = new LongAdder();
+    private final LongAdder leaksReported = new LongAdder();
+    // 0 while leak detection is off
+    private volatile long leakThresholdNanos = 0;
+    private volatile Consumer<Throwable> leakReporter;
 
     public ResourcePool(int poolSize, List<T> initializedResources)
     {
-        this.semaphore = new Semaphore(poolSize, true);
-        this.resources = new LinkedBlockingQueue<>(poolSize);
-        this.resources.addAll(initializedResources);
+        if (initializedResources.size() > poolSize)
+            throw new IllegalArgumentException("More resources than the pool size");
+        this.slots = new AtomicReferenceArray<>(initializedResources.size());
+        for (int i = 0; i < slots.length(); i++) {
+            T resource = initializedResources.get(i);
+            Entry<T> entry = new Entry<>(resource, i, FREE);
+            if (entryOf.putIfAbsent(new IdentityKey(resource), entry) != null)
+                throw new IllegalArgumentException("Resource " + resource + " is in the pool twice");
+            slots.set(i, entry);
+        }
+        this.factory = null;
+        this.minSize = 0;
+        this.idleTimeoutNanos = 0;
+        this.maxLifetimeNanos = 0;
+        this.validateOnBorrow = false;
+    }
+
+    public ResourcePool(ResourceFactory<T> factory, int minSize, int maxSize) {
+        this(factory, minSize, maxSize, DEFAULT_IDLE_TIMEOUT_MINUTES, DEFAULT_MAX_LIFETIME_MINUTES,
+                TimeUnit.MINUTES, false);
+    }
+
+    // a timeout or lifetime of 0 disables it; validateOnBorrow checks every resource before handing it out
+    public ResourcePool(ResourceFactory<T> factory, int minSize, int maxSize,
+                        long idleTimeout, long maxLifetime, TimeUnit unit, boolean validateOnBorrow) {
+        if (minSize < 0 || maxSize < 1 || minSize > maxSize)
+            throw new IllegalArgumentException("Invalid pool sizes: min " + minSize + ", max " + maxSize);
+        if (idleTimeout < 0 || maxLifetime < 0)
+            throw new IllegalArgumentException("Timeouts can't be negative");
+        this.slots = new AtomicReferenceArray<>(maxSize);
+        this.factory = factory;
+        this.minSize = minSize;
+        this.idleTimeoutNanos = unit.toNanos(idleTimeout);
+        this.maxLifetimeNanos = unit.toNanos(maxLifetime);
+        this.validateOnBorrow = validateOnBorrow;
+        long sweep = sweepInterval(idleTimeoutNanos, maxLifetimeNanos);
+        schedule(this::maintain, 0, sweep);
+    }
+
+    private synchronized void schedule(Runnable task, long delayNanos, long periodNanos) {
+        if (maintenance == null) {
+            maintenance = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "resource-pool-maintenance");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        maintenance.scheduleWithFixedDelay(task, delayNanos, periodNanos, TimeUnit.NANOSECONDS);
+    }
+
+    // often enough to evict a resource at most a quarter late
+    private static long sweepInterval(long idleTimeout, long maxLifetime) {
+        long shortest = Math.min(idleTimeout == 0 ? Long.MAX_VALUE : idleTimeout,
+                maxLifetime == 0 ? Long.MAX_VALUE : maxLifetime);
+        if (shortest == Long.MAX_VALUE)
+            return DEFAULT_SWEEP_NANOS;
+        return Math.max(MIN_SWEEP_NANOS, shortest / 4);
     }
 
     public T get() throws InterruptedException {
-        return get(Integer.MAX_VALUE);
+        return borrow(false, 0);
     }
 
+    // null when no resource was released in time
     public T get(long secondsToTimeout) throws InterruptedException {
-        semaphore.acquire();
+        return borrow(true, TIME_UNIT.toNanos(secondsToTimeout));
+    }
+
+    /**
+     * A future completed with a resource as soon as one is free. Cancelling the future gives
+     * up waiting; once it is completed the resource must be released as any other
+     */
+    public CompletableFuture<T> borrowAsync() {
+        Entry<T> entry;
         try {
-            T resource = resources.poll(secondsToTimeout, TIME_UNIT);
-            return resource;
-        } finally {
-            semaphore.release();
+            entry = tryCheckout();
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        if (entry != null) {
+            waitTimes.recordZero();
+            markBorrowed(entry, null);
+            return CompletableFuture.completedFuture(entry.resource);
         }
+        AsyncWaiter<T> waiter = new AsyncWaiter<>(leakThresholdNanos != 0 ? borrowedHere() : null);
+        waiter.whenComplete((resource, failure) -> {
+            if (failure == null)
+                return;
+            waiters.remove(waiter);
+            if (failure instanceof TimeoutException) {
+                timeouts.increment();
+                waitTimes.record(System.nanoTime() - waiter.start);
+            }
+        });
+        enqueue(waiter);
+        return waiter;
     }
 
-    public void release(T resource) throws InterruptedException {
+    // the future fails with a TimeoutException when no resource was released in time
+    public CompletableFuture<T> borrowAsync(long timeout, TimeUnit unit) {
+        return borrowAsync().orTimeout(timeout, unit);
+    }
+
+    /**
+     * Gives a borrowed resource back. The pool doesn't know which checkout a release belongs to:
+     * a second release is refused while the resource is free, but once it was handed straight to
+     * a waiter it's IN_USE again, and a second release by the previous holder releases the checkout
+     * of the new one. Release a resource once, and don't use it afterwards
+     *
+     * @throws IllegalArgumentException if the resource doesn't belong to the pool
+     * @throws IllegalStateException if the resource isn't borrowed
+     */
+    public void release(T resource) {
         if (resource != null){
-            resources.put(resource);
-            semaphore.release();
+            Entry<T> entry = entryOf.get(new IdentityKey(resource));
+            if (entry == null)
+                throw new IllegalArgumentException("Resource " + resource + " doesn't belong to the pool");
+            if (entry.state != IN_USE)
+                throw new IllegalStateException("Resource " + resource + " isn't borrowed");
+            if (entry.borrowedBy != null)
+                entry.borrowedBy = null;
+            if (!validateOnBorrow && !entry.retired && !closed.get() && !waiters.isEmpty() && handOff(entry))
+                return;
+            releaseEntry(entry);
+            if (!waiters.isEmpty())
+                dispatch();
+        }
+    }
+
+    private T borrow(boolean timed, long nanos) throws InterruptedException {
+        if (Thread.interrupted())
+            throw new InterruptedException();
+        Entry<T> entry = tryCheckout();
+        if (entry != null) {
+            waitTimes.recordZero();
+            markBorrowed(entry, null);
+            return entry.resource;
+        }
+        if (timed && nanos <= 0) {
+            timeouts.increment();
+            waitTimes.recordZero();
+            return null;
+        }
+
+        ThreadWaiter<T> waiter = new ThreadWaiter<>(leakThresholdNanos != 0 ? borrowedHere() : null);
+        enqueue(waiter);
+        long deadline = timed ? waiter.start + nanos : 0;
+        for (;;) {
+            Object item = waiter.item;
+            if (item != null)
+                return received(item);
+            if (Thread.interrupted()) {
+                if (waiter.tryCancel()) {
+                    waiters.remove(waiter);
+                    throw new InterruptedException();
+                }
+                // too late, a resource was handed over: keep it and the interrupt
+                Thread.currentThread().interrupt();
+                return received(waiter.item);
+            }
+            if (timed) {
+                long left = deadline - System.nanoTime();
+                if (left <= 0) {
+                    if (waiter.tryCancel()) {
+                        waiters.remove(waiter);
+                        timeouts.increment();
+                        waitTimes.record(System.nanoTime() - waiter.start);
+                        return null;
+                    }
+                    continue;
+                }
+                LockSupport.parkNanos(this, left);
+            } else {
+                LockSupport.park(this);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private T received(Object item) {
+        if (item instanceof Failure)
+            throw ((Failure) item).exception;
+        return (T) item;
+    }
+
+    // resources freed before the waiter was queued didn't look for it, and a close that ran
+    // before it was queued didn't fail it
+    private void enqueue(Waiter<T> waiter) {
+        waiters.add(waiter);
+        if (closed.get()) {
+            if (waiters.remove(waiter))
+                waiter.tryFail(new IllegalStateException("The pool is closed"));
+            return;
+        }
+        dispatch();
+    }
+
+    private void releaseEntry(Entry<T> entry) {
+        if (entry.retired || closed.get()) {
+            if (!STATE.compareAndSet(entry, IN_USE, REMOVED))
+                throw new IllegalStateException("Resource " + entry.resource + " isn't borrowed");
+            remove(entry);
+        } else {
+            if (!entry.tryRelease())
+                throw new IllegalStateException("Resource " + entry.resource + " isn't borrowed");
+            entry.touched = true;
+            lastReleased.set(entry);
+        }
+    }
+
+    // gives the borrowed entry to the oldest waiter still waiting, it stays IN_USE
+    private boolean handOff(Entry<T> entry) {
+        Waiter<T> waiter;
+        while ((waiter = waiters.poll()) != null) {
+            markBorrowed(entry, waiter.borrowedBy());
+            if (waiter.tryHandOff(entry.resource)) {
+                entry.touched = true;
+                waitTimes.record(System.nanoTime() - waiter.start());
+                return true;
+            }
+        }
+        entry.borrowedBy = null;
+        return false;
+    }
+
+    // serves the queued waiters with the free resources; the queue is checked again after a
+    // resource is freed, so a waiter queued meanwhile isn't missed
+    private void dispatch() {
+        while (!waiters.isEmpty()) {
+            Entry<T> entry;
+            try {
+                entry = tryCheckout();
+            } catch (RuntimeException e) {
+                // the factory failed, or the pool was closed: the oldest waiter gets it as get() would
+                Waiter<T> waiter = waiters.poll();
+                if (waiter != null)
+                    waiter.tryFail(e);
+                continue;
+            }
+            if (entry == null)
+                return;
+            if (!handOff(entry))
+                releaseEntry(entry);
+        }
+    }
+
+    // free resources, and empty slots a resource can be created in
+    public int availableResources() {
+        int available = 0;
+        for (int i = 0; i < slots.length(); i++) {
+            Entry<T> entry = slots.get(i);
+            if (entry == null ? factory != null && !closed.get() : entry.state == FREE)
+                available++;
+        }
+        return available;
+    }
+
+    public WaitTimeHistogram waitTimes() {
+        return waitTimes;
+    }
+
+    public ResourcePoolStatistics statistics() {
+        int size = 0, active = 0, idle = 0;
+        for (int i = 0; i < slots.length(); i++) {
+            Entry<T> entry = slots.get(i);
+            if (entry == null || entry.resource == null)
+                continue;
+            int state = entry.state;
+            if (state == REMOVED)
+                continue;
+            size++;
+            if (state == IN_USE)
+                active++;
+            else if (state == FREE)
+                idle++;
+        }
+        int waiting = waiters.size();
+        return new ResourcePoolStatistics(slots.length(), size, active, idle, waiting,
+                timeouts.sum(), created.sum(), destroyed.sum(), creationFailures.sum(), leaksReported.sum(),
+                waitTimes);
+    }
+
+    public void detectLeaks(long threshold, TimeUnit unit) {
+        detectLeaks(threshold, unit, Throwable::printStackTrace);
+    }
+
+    /**
+     * Reports, once per borrow, the resources borrowed for longer than threshold: the reporter gets
+     * a Throwable with the stack of the borrower. Can only be enabled once, and can't be disabled
+     */
+    public synchronized void detectLeaks(long threshold, TimeUnit unit, Consumer<Throwable> reporter) {
+        if (threshold <= 0)
+            throw new IllegalArgumentException("The threshold must be positive");
+        if (leakThresholdNanos != 0)
+            throw new IllegalStateException("Leak detection is already enabled");
+        leakReporter = reporter;
+        leakThresholdNanos = unit.toNanos(threshold);
+        long period = Math.max(MIN_SWEEP_NANOS, leakThresholdNanos / 4);
+        schedule(this::reportLeaks, period, period);
+    }
+
+    /**
+     * Stops the maintenance task and destroys the free resources; borrowed ones are destroyed
+     * when they're released. Threads waiting for a resource, and the ones asking for one after
+     * this, get an IllegalStateException
+     */
+    @Override
+    public void close() {
+        // a single close fails the waiters and destroys the free resources
+        if (!closed.compareAndSet(false, true))
+            return;
+        synchronized (this) {
+            if (maintenance != null)
+                maintenance.shutdownNow();
+        }
+        for (int i = 0; i < slots.length(); i++) {
+            Entry<T> entry = slots.get(i);
+            if (entry != null && STATE.compareAndSet(entry, FREE, REMOVED))
+                remove(entry);
+        }
+        Waiter<T> waiter;
+        while ((waiter = waiters.poll()) != null) {
+            waiter.tryFail(new IllegalStateException("The pool is closed"));
+        }
+    }
+
+    private static Throwable borrowedHere() {
+        return new Throwable("Borrowed by " + Thread.currentThread().getName());
+    }
+
+    // borrowedBy is the stack to report if the borrow leaks, null for the current one
+    private void markBorrowed(Entry<T> entry, Throwable borrowedBy) {
+        if (leakThresholdNanos != 0) {
+            entry.borrowedAt = System.nanoTime();
+            entry.borrowedBy = borrowedBy != null ? borrowedBy : borrowedHere();
+        }
+    }
+
+    // a free resource, valid when validateOnBorrow, now IN_USE; null when there's none
+    private Entry<T> tryCheckout() {
+        if (closed.get())
+            throw new IllegalStateException("The pool is closed");
+        for (;;) {
+            Entry<T> entry = tryTake();
+            if (entry == null || !validateOnBorrow || isValid(entry))
+                return entry;
+            // the emptied slot is as good as a free resource
+            STATE.setVolatile(entry, REMOVED);
+            remove(entry);
+        }
+    }
+
+    // one scan of the existing resources, then one of the empty slots when there's a factory.
+    // A resource freed behind the scan is missed, the wait queue is there for that
+    private Entry<T> tryTake() {
+        Entry<T> hint = lastReleased.get();
+        if (hint != null && hint.tryBorrow())
+            return hint;
+        int length = slots.length();
+        if (length == 0)
+            return null;
+        int start = ThreadLocalRandom.current().nextInt(length);
+        for (int i = start; ; ) {
+            Entry<T> entry = slots.get(i);
+            if (entry != null && entry.tryBorrow())
+                return entry;
+            if (++i == length)
+                i = 0;
+            if (i == start)
+                break;
+        }
+        if (factory == null)
+            return null;
+        for (int i = start; ; ) {
+            if (slots.get(i) == null) {
+                Entry<T> created = tryCreate(i, IN_USE);
+                if (created != null)
+                    return created;
+            }
+            if (++i == length)
+                i = 0;
+            if (i == start)
+                return null;
+        }
+    }
+
+    // null when another thread took the slot first
+    private Entry<T> tryCreate(int slot, int state) {
+        Entry<T> placeholder = new Entry<>(null, slot, RESERVED);
+        if (!slots.compareAndSet(slot, null, placeholder))
+            return null;
+        T resource;
+        try {
+            resource = factory.create();
+        } catch (Exception e) {
+            creationFailures.increment();
+            slots.set(slot, null);
+            throw new IllegalStateException("Could not create a resource", e);
+        }
+        Entry<T> entry = new Entry<>(resource, slot, state);
+        if (entryOf.putIfAbsent(new IdentityKey(resource), entry) != null) {
+            creationFailures.increment();
+            slots.set(slot, null);
+            throw new IllegalStateException("The factory returned " + resource + ", which is already in the pool");
+        }
+        created.increment();
+        slots.set(slot, entry);
+        return entry;
+    }
+
+    // a validation that fails is as good as a negative one
+    private boolean isValid(Entry<T> entry) {
+        try {
+            return factory.validate(entry.resource);
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    // the entry is REMOVED and owned by the caller; the slot is freed once the resource is destroyed
+    private void remove(Entry<T> entry) {
+        entryOf.remove(new IdentityKey(entry.resource));
+        entry.borrowedBy = null;
+        destroyed.increment();
+        try {
+            if (factory != null)
+                factory.destroy(entry.resource);
+        } catch (RuntimeException e) {
+            // the resource is gone for the pool anyway
+            e.printStackTrace();
+        } finally {
+            slots.set(entry.slot, null);
+        }
+    }
+
+    private void maintain() {
+        try {
+            long now = System.nanoTime();
+            int live = 0;
+            for (int i = 0; i < slots.length(); i++) {
+                if (slots.get(i) != null)
+                    live++;
+            }
+            for (int i = 0; i < slots.length(); i++) {
+                Entry<T> entry = slots.get(i);
+                if (entry == null || entry.resource == null)
+                    continue;
+                boolean expired = maxLifetimeNanos > 0 && now - entry.createdAt >= maxLifetimeNanos;
+                if (entry.state == IN_USE) {
+                    if (expired)
+                        entry.retired = true;
+                    continue;
+                }
+                if (entry.touched) {
+                    entry.touched = false;
+                    entry.idleSince = now;
+                }
+                boolean idle = idleTimeoutNanos > 0 && live > minSize && now - entry.idleSince >= idleTimeoutNanos;
+                // reserved as a borrower would take it
+                if (!STATE.compareAndSet(entry, FREE, RESERVED))
+                    continue;
+                if (expired || idle || !isValid(entry)) {
+                    STATE.setVolatile(entry, REMOVED);
+                    remove(entry);
+                    live--;
+                } else {
+                    STATE.setVolatile(entry, FREE);
+                }
+            }
+            for (int i = 0; live < minSize && i < slots.length() && !closed.get(); i++) {
+                if (slots.get(i) == null && tryCreate(i, FREE) != null)
+                    live++;
+            }
+        } catch (RuntimeException e) {
+            // a failing factory mustn't cancel the task, the next sweep tries again
+            e.printStackTrace();
+        } finally {
+            // borrowers that looked while resources were reserved, or before slots were emptied
+            if (!waiters.isEmpty())
+                dispatch();
+        }
+    }
+
+    private void reportLeaks() {
+        try {
+            long now = System.nanoTime();
+            for (int i = 0; i < slots.length(); i++) {
+                Entry<T> entry = slots.get(i);
+                if (entry == null || entry.state != IN_USE)
+                    continue;
+                Throwable borrowedBy = entry.borrowedBy;
+                long held = now - entry.borrowedAt;
+                // the borrower may have released it in between, the stack tells whether it's the same borrow
+                if (borrowedBy != null && held >= leakThresholdNanos && entry.borrowedBy == borrowedBy) {
+                    entry.borrowedBy = null;
+                    leaksReported.increment();
+                    leakReporter.accept(new Throwable("Resource " + entry.resource + " held for "
+                            + TimeUnit.NANOSECONDS.toMillis(held) + " ms, possible leak", borrowedBy));
+                }
+            }
+        } catch (RuntimeException e) {
+            e.printStackTrace();
         }
     }
 }
@@ -0,0 +1,97 @@
+package com.garry.patterns.resource_pool;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Snapshot of the state and counters of a ResourcePool, times are in nanoseconds
+ *
+ * The states of the resources are read one after the other while borrowers keep running,
+ * so the counts of a snapshot taken under load are approximate
+ */
+public class ResourcePoolStatistics {
+
+    public final int maxSize;
+    // resources that exist, borrowed or not
+    public final int size;
+    public final int active;
+    public final int idle;
+    // threads parked waiting for a resource, an estimate
+    public final int waiting;
+    public final long borrows;
+    public final long timeouts;
+    public final long created;
+    public final long destroyed;
+    public final long creationFailures;
+    public final long leaksReported;
+    // wait time of the borrowers, timed out ones included
+    public final long waitP50;
+    public final long waitP99;
+    public final long waitP999;
+    public final long waitMax;
+    public final double waitMean;
+
+    ResourcePoolStatistics(int maxSize, int size, int active, int idle, int waiting,
+                           long timeouts, long created, long destroyed, long creationFailures, long leaksReported,
+                           WaitTimeHistogram waitTimes) {
+        this.maxSize = maxSize;
+        this.size = size;
+        this.active = active;
+        this.idle = idle;
+        this.waiting = waiting;
+        this.borrows = waitTimes.count() - timeouts;
+        this.timeouts = timeouts;
+        this.created = created;
+        this.destroyed = destroyed;
+        this.creationFailures = creationFailures;
+        this.leaksReported = leaksReported;
+        this.waitP50 = waitTimes.percentile(50);
+        this.waitP99 = waitTimes.percentile(99);
+        this.waitP999 = waitTimes.percentile(99.9);
+        this.waitMax = waitTimes.max();
+        this.waitMean = waitTimes.mean();
+    }
+
+    // borrowed resources over the most the pool can hold
+    public double utilization() {
+        return maxSize == 0 ? 0 : (double) active / maxSize;
+    }
+
+    // flat view of the values, for exporting to a metrics system
+    public Map<String, Long> asMap() {
+        Map<String, Long> values = new LinkedHashMap<>();
+        values.put("maxSize", (long) maxSize);
+        values.put("size", (long) size);
+        values.put("active", (long) active);
+        values.put("idle", (long) idle);
+        values.put("waiting", (long) waiting);
+        values.put("borrows", borrows);
+        values.put("timeouts", timeouts);
+        values.put("created", created);
+        values.put("destroyed", destroyed);
+        values.put("creationFailures", creationFailures);
+        values.put("leaksReported", leaksReported);
+        values.put("waitP50Nanos", waitP50);
+        values.put("waitP99Nanos", waitP99);
+        values.put("waitP999Nanos", waitP999);
+        values.put("waitMaxNanos", waitMax);
+        return values;
+    }
+
+    @Override
+    public String toString() {
+        return "Size: " + size + "/" + maxSize
+                + " active: " + active
+                + " idle: " + idle
+                + " waiting: " + waiting
+                + " borrows: " + borrows
+                + " timeouts: " + timeouts
+                + " created: " + created
+                + " destroyed: " + destroyed
+                + " creation failures: " + creationFailures
+                + " leaks: " + leaksReported
+                + " wait p50/p99/p99.9/max (us): " + waitP50 / 1_000 + "/" + waitP99 / 1_000
+                + "/" + waitP999 / 1_000 + "/" + waitMax / 1_000
+                + " utilization: " + String.format("%.2f", utilization());
+    }
+}
@@ -2,8 +2,11 @@ package com.garry.patterns.resource_pool;
 
 import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Pattern: Resource Pool
@@ -12,7 +15,14 @@ import java.util.concurrent.Executors;
  */
 public class ResourcePoolUsage {
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws InterruptedException {
+        withBlockingBorrowers();
+        withAsyncBorrowers();
+        withFactory();
+    }
+
+    // 30 threads on 15 resources, half of them park until a resource is released
+    static void withBlockingBorrowers() throws InterruptedException {
         ExecutorService executor = Executors.newCachedThreadPool();
 
         ResourcePool<Integer> pool = new ResourcePool<>(15,
@@ -33,5 +43,38 @@ public class ResourcePoolUsage {
             });
         }
         executor.shutdown();
+        executor.awaitTermination(2, TimeUnit.MINUTES);
+    }
+
+    // 30 borrowers on 15 resources without blocking a thread: each release hands the resource to the next future
+    static void withAsyncBorrowers() {
+        ResourcePool<Integer> pool = new ResourcePool<>(15,
+                Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8, 9, 0, 10, 11, 12, 13, 14));
+
+        Random random = new Random();
+        CompletableFuture<?>[] borrowers = new CompletableFuture<?>[30];
+        for (int i = 0; i < borrowers.length; i++) {
+            borrowers[i] = pool.borrowAsync(60, TimeUnit.SECONDS).thenCompose(value -> {
+                System.out.println("Value taken: " + value);
+                return CompletableFuture.runAsync(() -> {},
+                        CompletableFuture.delayedExecutor(random.nextInt(5000), TimeUnit.MILLISECONDS))
+                        .whenComplete((nothing, failure) -> {
+                            pool.release(value);
+                            System.out.println("Value released " + value);
+                        });
+            });
+        }
+        CompletableFuture.allOf(borrowers).join();
+    }
+
+    // resources created on demand, and destroyed after a second without use
+    static void withFactory() throws InterruptedException {
+        AtomicInteger ids = new AtomicInteger();
+        try (ResourcePool<Integer> pool = new ResourcePool<>(ids::incrementAndGet, 1, 15,
+                1, 60, TimeUnit.SECONDS, false)) {
+            Integer value = pool.get();
+            System.out.println("Value created: " + value);
+            pool.release(value);
+        }
     }
 }
@@ -0,0 +1,305 @@
+package com.garry.patterns.resource_pool;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Pattern: Resource Pool
+ *
+ * Example: a pool split in shards, for many cores
+ *
+ * In ResourcePool every borrower scans the same array of resources, starting anywhere,
+ * so the cores keep taking each other's resources and the cache lines holding them.
+ * Here the resources are split among shards, each with its own count of free resources,
+ * padded so that no two counts share a cache line. A thread borrows from its home shard,
+ * chosen from its id, and only looks at the other shards, stealing their resources, when
+ * its own is empty.
+ *
+ * When every shard is empty the borrower queues a node on a global wait queue and parks.
+ * A release hands its resource straight to the oldest queued node, so the woken thread
+ * doesn't have to compete for it. A borrower looks at the shards again after queuing itself,
+ * and a release looks at the queue after freeing its resource, so neither misses the other.
+ *
+ * - fair: borrowers are served in arrival order, nobody takes a free resource while others
+ *   are queued, and a release goes to the queue before its shard
+ * - non fair: a borrower takes any free resource even when others are queued, which saves
+ *   parking and unparking under load
+ */
+public class StripedResourcePool<T> {
+
+    private final static TimeUnit TIME_UNIT = TimeUnit.SECONDS;
+
+    // 16 ints, 64 bytes between two counts
+    private static final int PAD = 16;
+
+    private static final int FREE = 0;
+    private static final int IN_USE = 1;
+
+    private static final VarHandle STATE;
+    private static final VarHandle ITEM;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            STATE = lookup.findVarHandle(Entry.class, "state", int.class);
+            ITEM = lookup.findVarHandle(Waiter.class, "item", Entry.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static final class Entry<T> {
+        final T resource;
+        final int shard;
+        volatile int state = FREE;
+
+        Entry(T resource, int shard) {
+            this.resource = resource;
+            this.shard = shard;
+        }
+
+        boolean tryBorrow() {
+            return state == FREE && STATE.compareAndSet(this, FREE, IN_USE);
+        }
+
+        boolean tryRelease() {
+            return STATE.compareAndSet(this, IN_USE, FREE);
+        }
+    }
+
+    // item of a waiter that gave up
+    private static final Entry<?> CANCELLED = new Entry<>(null, -1);
+
+    private static final class Waiter<T> {
+        final Thread thread = Thread.currentThread();
+        // null while waiting, then the entry handed over or CANCELLED
+        volatile Entry<T> item;
+
+        boolean tryHandOff(Entry<T> entry) {
+            return item == null && ITEM.compareAndSet(this, null, entry);
+        }
+
+        boolean tryCancel() {
+            return ITEM.compareAndSet(this, null, CANCELLED);
+        }
+    }
+
+    private final boolean fair;
+    private final int shardMask;
+    private final Entry<T>[][] shards;
+    // free resources not yet promised to a borrower, of shard i at i * PAD
+    private final AtomicIntegerArray free;
+    private final Queue<Waiter<T>> waiters = new ConcurrentLinkedQueue<>();
+    // to find the entry of a released resource, by identity as in ResourcePool
+    private final Map<IdentityKey, Entry<T>> entryOf = new ConcurrentHashMap<>();
+
+    public StripedResourcePool(int poolSize, List<T> initializedResources) {
+        this(poolSize, initializedResources, Runtime.getRuntime().availableProcessors(), false);
+    }
+
+    // numShards is rounded up to a power of two, and down to the number of resources
+    public StripedResourcePool(int poolSize, List<T> initializedResources, int numShards, boolean fair) {
+        if (initializedResources.size() > poolSize)
+            throw new IllegalArgumentException("More resources than the pool size");
+        if (numShards < 1)
+            throw new IllegalArgumentException("A pool needs at least one shard");
+        int count = 1;
+        while (count < numShards && count * 2 <= Math.max(1, initializedResources.size()))
+            count *= 2;
+        this.fair = fair;
+        this.shardMask = count - 1;
+        this.free = new AtomicIntegerArray(count * PAD);
+
+        List<List<Entry<T>>> entries = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            entries.add(new ArrayList<>());
+        }
+        for (int i = 0; i < initializedResources.size(); i++) {
+            T resource = initializedResources.get(i);
+            Entry<T> entry = new Entry<>(resource, i & shardMask);
+            if (entryOf.putIfAbsent(new IdentityKey(resource), entry) != null)
+                throw new IllegalArgumentException("Resource " + resource + " is in the pool twice");
+            entries.get(entry.shard).add(entry);
+        }
+        // no generic array creation, the arrays only ever hold the Entry<T> of this pool
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Entry<T>[][] shards = new Entry[count][];
+        for (int i = 0; i < count; i++) {
+            shards[i] = toArray(entries.get(i));
+            free.set(i * PAD, shards[i].length);
+        }
+        this.shards = shards;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <T> Entry<T>[] toArray(List<Entry<T>> entries) {
+        return entries.toArray(new Entry[0]);
+    }
+
+    public T get() throws InterruptedException {
+        return borrow(false, 0);
+    }
+
+    // null when no resource was released in time
+    public T get(long secondsToTimeout) throws InterruptedException {
+        return borrow(true, TIME_UNIT.toNanos(secondsToTimeout));
+    }
+
+    public void release(T resource) {
+        if (resource != null) {
+            Entry<T> entry = entryOf.get(new IdentityKey(resource));
+            if (entry == null)
+                throw new IllegalArgumentException("Resource " + resource + " doesn't belong to the pool");
+            if (entry.state != IN_USE)
+                throw new IllegalStateException("Resource " + resource + " isn't borrowed");
+            if (fair && !waiters.isEmpty() && handOff(entry))
+                return;
+            free(entry);
+            if (!waiters.isEmpty())
+                dispatch();
+        }
+    }
+
+    // free resources, some of them may be promised to threads that are about to take them
+    public int availableResources() {
+        int available = 0;
+        for (int i = 0; i < shards.length; i++) {
+            available += free.get(i * PAD);
+        }
+        return available;
+    }
+
+    public int numShards() {
+        return shards.length;
+    }
+
+    public boolean isFair() {
+        return fair;
+    }
+
+    private T borrow(boolean timed, long nanos) throws InterruptedException {
+        if (Thread.interrupted())
+            throw new InterruptedException();
+        int home = homeShard();
+        if (!fair || waiters.isEmpty()) {
+            Entry<T> entry = tryTakeAny(home);
+            if (entry != null)
+                return entry.resource;
+        }
+        if (timed && nanos <= 0)
+            return null;
+
+        Waiter<T> waiter = new Waiter<>();
+        waiters.add(waiter);
+        // resources freed before we were queued didn't look for us
+        dispatch();
+
+        long deadline = timed ? System.nanoTime() + nanos : 0;
+        for (;;) {
+            Entry<T> item = waiter.item;
+            if (item != null)
+                return item.resource;
+            if (Thread.interrupted()) {
+                if (waiter.tryCancel()) {
+                    waiters.remove(waiter);
+                    throw new InterruptedException();
+                }
+                // too late, a resource was handed over: keep it and the interrupt
+                Thread.currentThread().interrupt();
+                return waiter.item.resource;
+            }
+            if (timed) {
+                long left = deadline - System.nanoTime();
+                if (left <= 0) {
+                    if (waiter.tryCancel()) {
+                        waiters.remove(waiter);
+                        return null;
+                    }
+                    continue;
+                }
+                LockSupport.parkNanos(this, left);
+            } else {
+                LockSupport.park(this);
+            }
+        }
+    }
+
+    private int homeShard() {
+        long id = Thread.currentThread().threadId();
+        return (int) ((id * 0x9E3779B97F4A7C15L) >>> 32) & shardMask;
+    }
+
+    // the home shard first, then steals from the next ones
+    private Entry<T> tryTakeAny(int home) {
+        for (int i = 0; i <= shardMask; i++) {
+            Entry<T> entry = tryTake((home + i) & shardMask);
+            if (entry != null)
+                return entry;
+        }
+        return null;
+    }
+
+    // claims one of the free resources the shard counts, then finds it: there are at least as
+    // many free entries as claims, so the scan ends even if another thread wins the one we look at
+    private Entry<T> tryTake(int shard) {
+        int index = shard * PAD;
+        int available;
+        do {
+            available = free.get(index);
+            if (available == 0)
+                return null;
+        } while (!free.compareAndSet(index, available, available - 1));
+
+        Entry<T>[] entries = shards[shard];
+        int start = ThreadLocalRandom.current().nextInt(entries.length);
+        for (int i = start; ; ) {
+            if (entries[i].tryBorrow())
+                return entries[i];
+            if (++i == entries.length)
+                i = 0;
+            if (i == start)
+                Thread.onSpinWait();
+        }
+    }
+
+    private void free(Entry<T> entry) {
+        if (!entry.tryRelease())
+            throw new IllegalStateException("Resource " + entry.resource + " isn't borrowed");
+        free.incrementAndGet(entry.shard * PAD);
+    }
+
+    // gives the borrowed entry to the oldest waiter still waiting, it stays IN_USE
+    private boolean handOff(Entry<T> entry) {
+        Waiter<T> waiter;
+        while ((waiter = waiters.poll()) != null) {
+            if (waiter.tryHandOff(entry)) {
+                LockSupport.unpark(waiter.thread);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // serves the queued waiters with the free resources; the queue is checked again after a
+    // resource is freed, so a waiter queued meanwhile isn't missed
+    private void dispatch() {
+        int home = homeShard();
+        while (!waiters.isEmpty()) {
+            Entry<T> entry = tryTakeAny(home);
+            if (entry == null)
+                return;
+            if (!handOff(entry))
+                free(entry);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.garry.patterns.resource_pool;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of durations in nanoseconds, recorded without locks
+ *
+ * Same bucket layout as an HdrHistogram keeping 3 significant bits: the values are grouped
+ * by power of two, and every power of two is split in SUB_BUCKETS linear buckets, so a
+ * bucket is at most 1/8 of its lowest value wide, from 1ns to Long.MAX_VALUE.
+ * Recording is a few bit operations and an atomic increment, nothing is allocated.
+ *
+ * Durations of 0 have their own striped counter: in a pool most borrowers don't wait at
+ * all, and they would otherwise all increment the same bucket.
+ *
+ * Percentiles are read while values are being recorded, so they're approximate.
+ */
+public class WaitTimeHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // values below SUB_BUCKETS have a bucket each, then SUB_BUCKETS per power of two up to 2^62
+    private static final int NUM_BUCKETS = (63 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(NUM_BUCKETS);
+    private final LongAdder zeros = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public void recordZero() {
+        zeros.increment();
+    }
+
+    public void record(long nanos) {
+        if (nanos <= 0) {
+            recordZero();
+            return;
+        }
+        buckets.getAndIncrement(indexOf(nanos));
+        total.add(nanos);
+        if (nanos > max.get())
+            max.accumulateAndGet(nanos, Math::max);
+    }
+
+    public long count() {
+        long count = zeros.sum();
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            count += buckets.get(i);
+        }
+        return count;
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    public double mean() {
+        long count = count();
+        return count == 0 ? 0 : (double) total.sum() / count;
+    }
+
+    // the highest value of the bucket holding the given percentile (0 to 100), 0 when empty
+    public long percentile(double percentile) {
+        long count = count();
+        if (count == 0)
+            return 0;
+        long rank = (long) Math.ceil(count * Math.min(100, Math.max(0, percentile)) / 100);
+        long seen = zeros.sum();
+        if (seen >= rank)
+            return 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank)
+                return Math.min(highestValueOf(i), max());
+        }
+        return max();
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long highestValueOf(int index) {
+        if (index < SUB_BUCKETS)
+            return index;
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int subBucket = index % SUB_BUCKETS;
+        long lowest = (long) (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+        return lowest + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
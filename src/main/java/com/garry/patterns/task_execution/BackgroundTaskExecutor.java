@@ -1,6 +1,7 @@
 package com.garry.patterns.task_execution;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.*;
 import java.util.function.Function;
@@ -17,6 +18,24 @@ import java.util.stream.Collectors;
  * Applicability: Sending an email after a user registration in your web-app;or
  * executing a long running task in background;use the Background Task Executor
  * to not compromise the main thread or the current thread you're using
+ *
+ * The fixed thread pool queues without limit: under overload the tasks pile up until the heap
+ * runs out. The bounded mode runs the tasks on a PriorityLaneExecutor instead, with a bounded
+ * lane per priority, a rejection policy and admission on the measured queueing delay, so that
+ * an email to send doesn't wait behind a backfill.
+ *
+ * Tasks that mostly block on I/O, like sending that email, can run on virtual threads instead:
+ * one per task, at most maxConcurrentTasks running at once, see VirtualThreadExecutor.
+ *
+ * completeTask() reads the results in submission order; executeInCompletionOrder() gives them as
+ * the tasks complete, and can bound the wait by a deadline, see CompletionOrder.
+ *
+ * Keyed tasks: executeSingleFlight(key, task) runs at most one task per key at a time, a
+ * submission while the key's task is queued or running gets that task's Future instead of a
+ * new run. executeDebounced() also coalesces the submissions that come in a burst: the task
+ * runs once, window after the last submission of the key, with the last task submitted, and
+ * every submitter of the burst gets the same Future. A task submitted under a key must return
+ * the same type as the others of that key. See BackgroundTaskExecutorUsage.
  */
 public class BackgroundTaskExecutor {
 
@@ -28,17 +47,143 @@ public class BackgroundTaskExecutor {
         void accept(ExecutorService executor, Exception exception);
     }
 
+    private static class KeyedTask<T> extends FutureTask<T> {
+        final Object key;
+
+        KeyedTask(Object key, Callable<T> task) {
+            super(task);
+            this.key = key;
+        }
+
+        void reject(RejectedExecutionException e) {
+            setException(e);
+        }
+    }
+
+    // leaves the key free once done
+    private final class SingleFlight<T> extends KeyedTask<T> {
+
+        SingleFlight(Object key, Callable<T> task) {
+            super(key, task);
+        }
+
+        @Override
+        protected void done() {
+            inFlight.remove(key, this);
+        }
+    }
+
+    // the task run by a burst: the last one submitted before the run starts
+    private static final class Latest<T> implements Callable<T> {
+        volatile Callable<T> task;
+
+        @Override
+        public T call() throws Exception {
+            return task.call();
+        }
+    }
+
+    // a burst of submissions of a key, waiting for its window to end
+    private final class Debounced<T> extends KeyedTask<T> {
+        final Latest<T> latest;
+        // replaced by every submission of the burst
+        volatile ScheduledFuture<?> timer;
+
+        Debounced(Object key, Latest<T> latest) {
+            super(key, latest);
+            this.latest = latest;
+        }
+
+        // cancelled before its window ended
+        @Override
+        protected void done() {
+            if (bursts.remove(key, this))
+                timer.cancel(false);
+        }
+    }
+
     private final ExecutorService executor;
+    // null in the unbounded mode
+    private final PriorityLaneExecutor lanes;
+
+    private final Map<Object, SingleFlight<?>> inFlight = new ConcurrentHashMap<>();
+    private final Map<Object, Debounced<?>> bursts = new ConcurrentHashMap<>();
+    // created by the first debounced task
+    private ScheduledThreadPoolExecutor timer;
 
     public BackgroundTaskExecutor(int threadsForTasks) {
         this.executor = Executors.newFixedThreadPool(threadsForTasks);
+        this.lanes = null;
+    }
+
+    // bounded mode, at most laneCapacity tasks waiting per priority
+    public BackgroundTaskExecutor(int threadsForTasks, int laneCapacity,
+                                  PriorityLaneExecutor.RejectionPolicy rejectionPolicy) {
+        this.lanes = new PriorityLaneExecutor(threadsForTasks, laneCapacity, rejectionPolicy);
+        this.executor = lanes;
+    }
+
+    // virtual thread mode, the threads are named name-0, name-1...
+    public BackgroundTaskExecutor(String name, int maxConcurrentTasks, boolean detectPinning) {
+        this.executor = new VirtualThreadExecutor(name, maxConcurrentTasks, detectPinning);
+        this.lanes = null;
     }
 
+    // in the bounded mode, a task the lane can't take throws a TaskRejectedException with FAIL_FAST
     public <T> Future<T> execute(Callable<T> task){
         Future<T> submitted = executor.submit(task);
         return submitted;
     }
 
+    public <T> Future<T> execute(Callable<T> task, PriorityLaneExecutor.Priority priority){
+        if (lanes == null)
+            throw new IllegalStateException("Priorities need the bounded mode");
+        return lanes.submit(task, priority);
+    }
+
+    // single flight: the Future of the key's task queued or running, or a new one
+    @SuppressWarnings("unchecked")
+    public <T> Future<T> executeSingleFlight(Object key, Callable<T> task){
+        for (;;) {
+            SingleFlight<?> running = inFlight.get(key);
+            // a task is done, and its waiters woken, a moment before done() frees its key
+            if (running != null && running.isDone()) {
+                inFlight.remove(key, running);
+                continue;
+            }
+            if (running != null)
+                return (Future<T>) running;
+            SingleFlight<T> keyed = new SingleFlight<>(key, task);
+            if (inFlight.putIfAbsent(key, keyed) == null) {
+                submit(keyed);
+                return keyed;
+            }
+        }
+    }
+
+    /**
+     * Coalesces the submissions of the key that come less than window apart: one run, window
+     * after the last of them, of the last task submitted. Once the window ended, the next
+     * submission starts a new burst
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Future<T> executeDebounced(Object key, Callable<T> task, long window, TimeUnit unit){
+        ScheduledExecutorService timer = timer();
+        Debounced<?> burst = bursts.compute(key, (k, current) -> {
+            Debounced<T> next = (Debounced<T>) current;
+            if (next == null) {
+                next = new Debounced<>(key, new Latest<>());
+            } else {
+                next.timer.cancel(false);
+            }
+            next.latest.task = task;
+            Debounced<T> ending = next;
+            next.timer = timer.schedule(() -> endBurst(key, ending), window, unit);
+            return next;
+        });
+        return (Future<T>) burst;
+    }
+
     public <T> List<Future<T>> execute(List<Callable<T>> tasks){
         List<Future<T>> futureTasks = tasks.stream()
                 .map(executor::submit)
@@ -46,6 +191,11 @@ public class BackgroundTaskExecutor {
         return futureTasks;
     }
 
+    // the results come in the order the tasks complete, not the order of the list
+    public <T> CompletionOrder<T> executeInCompletionOrder(List<Callable<T>> tasks){
+        return new CompletionOrder<>(tasks, executor);
+    }
+
     public <T> boolean cancel(Future<T> task){
         boolean canceled = task.cancel(true);
         return canceled;
@@ -58,6 +208,7 @@ public class BackgroundTaskExecutor {
         return !hasFalse;
     }
 
+    // waits for the tasks in list order: a slow task delays the results after it, see executeInCompletionOrder
     public <T> List<Optional<T>> completeTask(List<Future<T>> tasks, OnInterruption<T> onInterruption){
         Function<Future<T>, Optional<T>> fn =  (task)->{
             try {
@@ -82,7 +233,17 @@ public class BackgroundTaskExecutor {
         }
     }
 
+    // the bursts being debounced run right away, before the executor stops taking tasks
     public void shutdownTasks(long timeout,TimeUnit timeUnit, OnShutdownError onShutdownError){
+        for (Object key : bursts.keySet()) {
+            Debounced<?> burst = bursts.remove(key);
+            // removed, its timer won't submit it anymore
+            if (burst != null) {
+                burst.timer.cancel(false);
+                submit(burst);
+            }
+        }
+        shutdownTimer();
         executor.shutdown();
         try {
             executor.awaitTermination(timeout,timeUnit);
@@ -91,7 +252,16 @@ public class BackgroundTaskExecutor {
         }
     }
 
+    // the bursts being debounced are cancelled
     public List<Runnable> shutdownNowTasks(long timeout, TimeUnit timeUnit,OnShutdownError onShutdownError){
+        for (Object key : bursts.keySet()) {
+            Debounced<?> burst = bursts.remove(key);
+            if (burst != null) {
+                burst.timer.cancel(false);
+                burst.cancel(false);
+            }
+        }
+        shutdownTimer();
         List<Runnable> remainingTasks = executor.shutdownNow();
         try {
             executor.awaitTermination(timeout,timeUnit);
@@ -102,5 +272,37 @@ public class BackgroundTaskExecutor {
         return remainingTasks;
     }
 
+    // the window ended; a timer that fires while a submission reschedules it still ends the burst,
+    // with the task of that submission, and the new timer finds the burst already ended
+    private void endBurst(Object key, Debounced<?> burst) {
+        if (bursts.remove(key, burst))
+            submit(burst);
+    }
+
+    private void submit(KeyedTask<?> task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            // done, frees the key
+            task.reject(e);
+        }
+    }
 
+    private synchronized ScheduledExecutorService timer() {
+        if (timer == null) {
+            timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+                Thread thread = new Thread(runnable, "debounce-timer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            // a burst reschedules its timer on every submission
+            timer.setRemoveOnCancelPolicy(true);
+        }
+        return timer;
+    }
+
+    private synchronized void shutdownTimer() {
+        if (timer != null)
+            timer.shutdownNow();
+    }
 }
@@ -0,0 +1,66 @@
+package com.garry.patterns.task_execution;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pattern: Background Task Executor
+ *
+ * Example: keyed tasks, a cache refreshed once for all its readers and a search index
+ * rebuilt once per burst of edits
+ */
+public class BackgroundTaskExecutorUsage {
+
+    private final BackgroundTaskExecutor executor = new BackgroundTaskExecutor(4);
+    private final AtomicInteger refreshes = new AtomicInteger();
+    private final AtomicInteger reindexes = new AtomicInteger();
+
+    // the readers that find the entry stale at the same time share one load
+    private Future<String> refresh(String entry) {
+        return executor.executeSingleFlight("refresh " + entry, () -> {
+            refreshes.incrementAndGet();
+            Thread.sleep(200);
+            return entry + " loaded";
+        });
+    }
+
+    // an edit a few milliseconds after the previous one pushes the rebuild back
+    private Future<Integer> edited(String index, int version) {
+        return executor.executeDebounced("reindex " + index, () -> {
+            reindexes.incrementAndGet();
+            return version;
+        }, 100, TimeUnit.MILLISECONDS);
+    }
+
+    private void readers() throws InterruptedException, ExecutionException {
+        List<Future<String>> loads = new ArrayList<>();
+        for (int reader = 0; reader < 50; reader++) {
+            loads.add(refresh("prices"));
+        }
+        for (Future<String> load : loads) {
+            load.get();
+        }
+        System.out.println(loads.size() + " readers, " + refreshes.get() + " refresh: " + loads.get(0).get());
+    }
+
+    private void editors() throws InterruptedException, ExecutionException {
+        Future<Integer> rebuilt = null;
+        for (int version = 1; version <= 20; version++) {
+            rebuilt = edited("products", version);
+            Thread.sleep(10);
+        }
+        int version = rebuilt.get();
+        System.out.println("20 edits, " + reindexes.get() + " rebuild, of version " + version);
+    }
+
+    public static void main(String[] args) throws InterruptedException, ExecutionException {
+        BackgroundTaskExecutorUsage usage = new BackgroundTaskExecutorUsage();
+        usage.readers();
+        usage.editors();
+        usage.executor.shutdownTasks(1, TimeUnit.SECONDS, (executor, e) -> e.printStackTrace());
+    }
+}
@@ -0,0 +1,337 @@
+package com.garry.patterns.task_execution;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Pattern: Background Task Executor
+ *
+ * Example: the results of a set of tasks in the order they complete
+ *
+ * Waiting on each Future in submission order makes every result wait for the slowest task
+ * before it. Here, like in ExecutorCompletionService, every task puts its Future on a queue when
+ * it completes, and the results are read from that queue: a slow task only delays itself.
+ *
+ * The completed Futures can be consumed in one of three ways, not mixed:
+ * - pulled: take(), poll() or the iterator, which block until the next task completes
+ * - pushed: subscribe() calls back with each Future on the thread that completed it
+ * - as a Flow.Publisher of the results, which honours the subscriber's demand
+ *
+ * completeWithin() bounds the wait by a deadline: it returns the results completed in time and
+ * cancels, interrupting them, the tasks that weren't.
+ *
+ * A task the executor rejects completes right away, failed with the RejectedExecutionException,
+ * or cancelled when the executor cancels what it rejects, like PriorityLaneExecutor.
+ *
+ * A subscriber that throws gets nothing more: the tasks still running are cancelled, and the
+ * exception goes to onError() of a Flow.Subscriber, or to the caller of a subscribe() callback.
+ */
+public class CompletionOrder<T> implements Iterable<Future<T>> {
+
+    // receives the completed Futures once subscribed
+    private interface Sink<T> {
+        // false when the Future was skipped, and didn't use the demand
+        boolean next(Future<T> completed);
+
+        void complete();
+
+        // next() or complete() threw, nothing is handed to the sink anymore
+        void failed(Throwable e);
+    }
+
+    private final class Task extends FutureTask<T> {
+
+        Task(Callable<T> callable) {
+            super(callable);
+        }
+
+        void reject(RejectedExecutionException e) {
+            setException(e);
+        }
+
+        @Override
+        protected void done() {
+            completed.add(this);
+            drain();
+        }
+    }
+
+    private final List<Task> tasks = new ArrayList<>();
+    private final BlockingQueue<Future<T>> completed = new LinkedBlockingQueue<>();
+    // Futures handed out, by any of the three ways
+    private final AtomicInteger taken = new AtomicInteger();
+
+    // claimed once, by the first subscriber of either kind
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+    // set once the subscriber was told it's subscribed
+    private volatile Sink<T> sink;
+    private final AtomicLong demand = new AtomicLong();
+    private final AtomicInteger draining = new AtomicInteger();
+    private volatile boolean sinkCancelled = false;
+
+    CompletionOrder(List<Callable<T>> callables, Executor executor) {
+        for (Callable<T> callable : callables) {
+            tasks.add(new Task(callable));
+        }
+        for (Task task : tasks) {
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                task.reject(e);
+            }
+        }
+    }
+
+    // the next completed task, null once they were all taken
+    public Future<T> take() throws InterruptedException {
+        if (!claim())
+            return null;
+        return completed.take();
+    }
+
+    // null when no task completed before the timeout, or once they were all taken
+    public Future<T> poll(long timeout, TimeUnit unit) throws InterruptedException {
+        if (!claim())
+            return null;
+        Future<T> next = completed.poll(timeout, unit);
+        if (next == null)
+            taken.decrementAndGet();
+        return next;
+    }
+
+    // next() blocks until a task completes; interrupted, it throws an IllegalStateException
+    @Override
+    public Iterator<Future<T>> iterator() {
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return remaining() > 0;
+            }
+
+            @Override
+            public Future<T> next() {
+                try {
+                    Future<T> next = take();
+                    if (next == null)
+                        throw new NoSuchElementException();
+                    return next;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for a task", e);
+                }
+            }
+        };
+    }
+
+    // each Future as soon as it completes, the ones already completed right away on this thread
+    public void subscribe(Consumer<Future<T>> onCompletion) {
+        if (!subscribed.compareAndSet(false, true))
+            throw new IllegalStateException("The results already have a subscriber");
+        addDemand(Long.MAX_VALUE);
+        start(new Sink<>() {
+            @Override
+            public boolean next(Future<T> completed) {
+                onCompletion.accept(completed);
+                return true;
+            }
+
+            @Override
+            public void complete() {
+            }
+
+            @Override
+            public void failed(Throwable e) {
+                if (e instanceof Error)
+                    throw (Error) e;
+                throw (RuntimeException) e;
+            }
+        });
+    }
+
+    /**
+     * The results in completion order, for a single subscriber. A failed task ends the stream
+     * with its exception and cancels the others, cancelled tasks are skipped, and cancelling the
+     * subscription cancels the tasks still running
+     */
+    public Flow.Publisher<T> publisher() {
+        return subscriber -> {
+            Flow.Subscription subscription = new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                    if (n <= 0) {
+                        cancel();
+                        subscriber.onError(new IllegalArgumentException("Request of " + n + " results"));
+                        return;
+                    }
+                    addDemand(n);
+                    drain();
+                }
+
+                @Override
+                public void cancel() {
+                    sinkCancelled = true;
+                    cancelRemaining();
+                }
+            };
+            Sink<T> publishing = new Sink<>() {
+                @Override
+                public boolean next(Future<T> completed) {
+                    if (completed.isCancelled())
+                        return false;
+                    try {
+                        subscriber.onNext(completed.get());
+                        return true;
+                    } catch (ExecutionException e) {
+                        sinkCancelled = true;
+                        cancelRemaining();
+                        subscriber.onError(e.getCause());
+                    } catch (InterruptedException | CancellationException e) {
+                        // done, get() doesn't wait
+                    }
+                    return false;
+                }
+
+                @Override
+                public void complete() {
+                    subscriber.onComplete();
+                }
+
+                @Override
+                public void failed(Throwable e) {
+                    subscriber.onError(e);
+                }
+            };
+            // claimed before onSubscribe(), which must come before any other signal (rule 1.9)
+            if (!subscribed.compareAndSet(false, true)) {
+                subscriber.onSubscribe(new Flow.Subscription() {
+                    @Override
+                    public void request(long n) {
+                    }
+
+                    @Override
+                    public void cancel() {
+                    }
+                });
+                subscriber.onError(new IllegalStateException("The results already have a subscriber"));
+                return;
+            }
+            subscriber.onSubscribe(subscription);
+            start(publishing);
+        };
+    }
+
+    /**
+     * Waits until the deadline at most, then cancels the tasks still running
+     *
+     * @return the results completed in time, in completion order; failed tasks are handed to onFailure
+     */
+    public List<T> completeWithin(long timeout, TimeUnit unit,
+                                  BackgroundTaskExecutor.OnInterruption<T> onFailure) {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        List<T> results = new ArrayList<>();
+        try {
+            Future<T> next;
+            while ((next = poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) != null) {
+                if (next.isCancelled())
+                    continue;
+                try {
+                    results.add(next.get());
+                } catch (ExecutionException e) {
+                    onFailure.accept(next, e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            cancelRemaining();
+        }
+        return results;
+    }
+
+    // interrupts the tasks still running, they complete as cancelled
+    public void cancelRemaining() {
+        for (Task task : tasks) {
+            task.cancel(true);
+        }
+    }
+
+    // tasks not handed out yet, completed or not
+    public int remaining() {
+        return tasks.size() - taken.get();
+    }
+
+    private boolean claim() {
+        int current;
+        do {
+            current = taken.get();
+            if (current >= tasks.size())
+                return false;
+        } while (!taken.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    // the subscriber may have requested results already, from onSubscribe()
+    // with no task, no completion would ever end the stream: it ends right away
+    private void start(Sink<T> next) {
+        sink = next;
+        if (tasks.isEmpty()) {
+            if (!sinkCancelled)
+                next.complete();
+            return;
+        }
+        drain();
+    }
+
+    private void addDemand(long n) {
+        demand.accumulateAndGet(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+    }
+
+    // hands the completed Futures to the sink as long as there's demand, one thread at a time:
+    // whoever finds draining at 0 drains, the others only make it go around once more
+    private void drain() {
+        Sink<T> current = sink;
+        if (current == null || draining.getAndIncrement() != 0)
+            return;
+        try {
+            do {
+                while (!sinkCancelled) {
+                    // a cancelled task is skipped even without demand, it may be the last one
+                    Future<T> next = completed.peek();
+                    if (next == null || (demand.get() == 0 && !next.isCancelled()))
+                        break;
+                    completed.poll();
+                    int handed = taken.incrementAndGet();
+                    if (current.next(next) && demand.get() != Long.MAX_VALUE)
+                        demand.decrementAndGet();
+                    if (handed == tasks.size() && !sinkCancelled) {
+                        current.complete();
+                        break;
+                    }
+                }
+            } while (draining.decrementAndGet() != 0);
+        } catch (RuntimeException | Error e) {
+            // the sink is done with (rule 2.13): the drains after this one find it cancelled
+            sinkCancelled = true;
+            draining.set(0);
+            cancelRemaining();
+            current.failed(e);
+        }
+    }
+}
@@ -0,0 +1,371 @@
+package com.garry.patterns.task_execution;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pattern: Background Task Executor
+ *
+ * Example: a bounded executor with priority lanes and admission control
+ *
+ * Every priority has its own bounded queue, a lane, and the workers always take from the most
+ * urgent lane that isn't empty: a latency sensitive task never waits behind bulk work, only behind
+ * tasks at least as urgent. A task that doesn't fit goes to the rejection policy instead of the
+ * heap.
+ *
+ * A lane can also be full in time rather than in size: admission follows CoDel (Nichols and
+ * Jacobson, "Controlling Queue Delay"). The executor measures how long the tasks of each lane
+ * waited, when they're taken and, for a lane starved by the others, the age of its oldest task when
+ * one is submitted. Once that delay has stayed above target for a whole interval, the lane is
+ * overloaded: it holds more work than the workers get through, and new tasks are rejected as if it
+ * were full, until a task is taken after waiting less than target. A short burst is absorbed, a
+ * standing queue isn't.
+ *
+ * The lanes and the CoDel state are guarded by one lock, the workers wait on its condition.
+ * A task dropped from its lane, or rejected, is cancelled when it's a Future.
+ *
+ * The workers come from a ThreadFactory, daemon threads by default. Whatever a task throws, an
+ * Error too, goes to the UncaughtExceptionHandler of its worker, which then takes the next task.
+ * As in ThreadPoolExecutor, a worker clears its interrupt before each task, so a Future cancelled
+ * with cancel(true) doesn't take its worker down; only shutdownNow does.
+ */
+public class PriorityLaneExecutor extends AbstractExecutorService {
+
+    // the first one is the most urgent
+    public enum Priority {
+        HIGH, NORMAL, LOW
+    }
+
+    public enum RejectionPolicy {
+        // the submitting thread runs the task, which slows down the submitters
+        CALLER_RUNS,
+        // the oldest task of the lane is cancelled to make room
+        DROP_OLDEST,
+        // submit throws a TaskRejectedException
+        FAIL_FAST
+    }
+
+    private static final long DEFAULT_TARGET_MILLIS = 5;
+    private static final long DEFAULT_INTERVAL_MILLIS = 100;
+
+    private static final class Task {
+        final Runnable runnable;
+        final long queuedAt;
+
+        Task(Runnable runnable, long queuedAt) {
+            this.runnable = runnable;
+            this.queuedAt = queuedAt;
+        }
+    }
+
+    private static final class Lane {
+        final ArrayDeque<Task> tasks = new ArrayDeque<>();
+        // when the delay will have been above target for an interval, 0 while it's below
+        long aboveTargetUntil = 0;
+        boolean overloaded = false;
+        long rejected = 0;
+        long dropped = 0;
+    }
+
+    private final int laneCapacity;
+    private final RejectionPolicy rejectionPolicy;
+    private final long targetNanos;
+    private final long intervalNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition terminated = lock.newCondition();
+    private final Lane[] lanes = new Lane[Priority.values().length];
+    private final List<Thread> workers = new ArrayList<>();
+    private int liveWorkers;
+    private boolean shutdown = false;
+    // shutdownNow, the only interrupt a worker stops for
+    private volatile boolean stopped = false;
+
+    public PriorityLaneExecutor(int threads, int laneCapacity, RejectionPolicy rejectionPolicy) {
+        this(threads, laneCapacity, rejectionPolicy, DEFAULT_TARGET_MILLIS, DEFAULT_INTERVAL_MILLIS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    public PriorityLaneExecutor(int threads, int laneCapacity, RejectionPolicy rejectionPolicy,
+                                long target, long interval, TimeUnit unit) {
+        this(threads, laneCapacity, rejectionPolicy, target, interval, unit, daemonWorkers());
+    }
+
+    public PriorityLaneExecutor(int threads, int laneCapacity, RejectionPolicy rejectionPolicy,
+                                long target, long interval, TimeUnit unit, ThreadFactory threadFactory) {
+        if (threads < 1 || laneCapacity < 1)
+            throw new IllegalArgumentException("At least one thread and room for one task per lane");
+        if (target <= 0 || interval < target)
+            throw new IllegalArgumentException("The target must be positive and shorter than the interval");
+        this.laneCapacity = laneCapacity;
+        this.rejectionPolicy = rejectionPolicy;
+        this.targetNanos = unit.toNanos(target);
+        this.intervalNanos = unit.toNanos(interval);
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new Lane();
+        }
+        this.liveWorkers = threads;
+        for (int i = 0; i < threads; i++) {
+            Thread worker = threadFactory.newThread(this::work);
+            if (worker == null)
+                throw new IllegalStateException("The thread factory didn't create a worker");
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    // lane-worker-0, lane-worker-1... which don't keep the JVM alive
+    private static ThreadFactory daemonWorkers() {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "lane-worker-" + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        execute(command, Priority.NORMAL);
+    }
+
+    public void execute(Runnable command, Priority priority) {
+        if (command == null)
+            throw new NullPointerException();
+        TaskRejectedException.Reason reason = offer(command, priority);
+        if (reason != null)
+            reject(command, priority, reason);
+    }
+
+    public <T> Future<T> submit(Callable<T> task, Priority priority) {
+        FutureTask<T> future = new FutureTask<>(task);
+        execute(future, priority);
+        return future;
+    }
+
+    public Future<?> submit(Runnable task, Priority priority) {
+        FutureTask<Void> future = new FutureTask<>(task, null);
+        execute(future, priority);
+        return future;
+    }
+
+    // tasks waiting in the lane
+    public int queued(Priority priority) {
+        lock.lock();
+        try {
+            return lanes[priority.ordinal()].tasks.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // tasks rejected or dropped from the lane by the policy
+    public long rejected(Priority priority) {
+        lock.lock();
+        try {
+            Lane lane = lanes[priority.ordinal()];
+            return lane.rejected + lane.dropped;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isOverloaded(Priority priority) {
+        lock.lock();
+        try {
+            return lanes[priority.ordinal()].overloaded;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        lock.lock();
+        try {
+            shutdown = true;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> remaining = new ArrayList<>();
+        lock.lock();
+        try {
+            shutdown = true;
+            stopped = true;
+            for (Lane lane : lanes) {
+                for (Task task : lane.tasks) {
+                    remaining.add(task.runnable);
+                }
+                lane.tasks.clear();
+            }
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        workers.forEach(Thread::interrupt);
+        return remaining;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        lock.lock();
+        try {
+            return shutdown;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isTerminated() {
+        lock.lock();
+        try {
+            return shutdown && liveWorkers == 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long left = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (!(shutdown && liveWorkers == 0)) {
+                if (left <= 0)
+                    return false;
+                left = terminated.awaitNanos(left);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // null when queued, else why it wasn't; drops the oldest task of a full lane with DROP_OLDEST
+    private TaskRejectedException.Reason offer(Runnable command, Priority priority) {
+        Runnable dropped = null;
+        lock.lock();
+        try {
+            if (shutdown)
+                return TaskRejectedException.Reason.SHUTDOWN;
+            Lane lane = lanes[priority.ordinal()];
+            long now = System.nanoTime();
+            Task oldest = lane.tasks.peekFirst();
+            // a starved lane isn't taken from, its oldest task tells how long it waits
+            if (oldest != null)
+                observe(lane, now - oldest.queuedAt, now, false);
+            if (lane.tasks.size() >= laneCapacity || lane.overloaded) {
+                if (rejectionPolicy != RejectionPolicy.DROP_OLDEST || oldest == null) {
+                    lane.rejected++;
+                    return lane.overloaded ? TaskRejectedException.Reason.OVERLOADED
+                            : TaskRejectedException.Reason.FULL;
+                }
+                dropped = lane.tasks.pollFirst().runnable;
+                lane.dropped++;
+            }
+            lane.tasks.addLast(new Task(command, now));
+            notEmpty.signal();
+            return null;
+        } finally {
+            lock.unlock();
+            if (dropped instanceof Future)
+                ((Future<?>) dropped).cancel(false);
+        }
+    }
+
+    private void reject(Runnable command, Priority priority, TaskRejectedException.Reason reason) {
+        if (reason != TaskRejectedException.Reason.SHUTDOWN && rejectionPolicy == RejectionPolicy.CALLER_RUNS) {
+            command.run();
+            return;
+        }
+        if (command instanceof Future)
+            ((Future<?>) command).cancel(false);
+        throw new TaskRejectedException(priority, reason);
+    }
+
+    /**
+     * CoDel's detection: overloaded once the delay stayed above target for an interval,
+     * not anymore as soon as a task waited less than target, or the lane was emptied
+     */
+    private void observe(Lane lane, long delay, long now, boolean emptied) {
+        if (delay < targetNanos || emptied) {
+            lane.aboveTargetUntil = 0;
+            lane.overloaded = false;
+        } else if (lane.aboveTargetUntil == 0) {
+            lane.aboveTargetUntil = now + intervalNanos;
+        } else if (now - lane.aboveTargetUntil >= 0) {
+            lane.overloaded = true;
+        }
+    }
+
+    private Runnable take() {
+        lock.lock();
+        try {
+            for (;;) {
+                for (Lane lane : lanes) {
+                    Task task = lane.tasks.pollFirst();
+                    if (task != null) {
+                        long now = System.nanoTime();
+                        observe(lane, now - task.queuedAt, now, lane.tasks.isEmpty());
+                        return task.runnable;
+                    }
+                }
+                if (shutdown)
+                    return null;
+                try {
+                    notEmpty.await();
+                } catch (InterruptedException e) {
+                    // a cancel(true) that came late, only shutdownNow stops the worker
+                    if (stopped)
+                        return null;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void work() {
+        try {
+            Runnable task;
+            while ((task = take()) != null) {
+                // a cancel(true) interrupted the previous task, not this one; shutdownNow interrupts them all
+                Thread.interrupted();
+                if (stopped)
+                    Thread.currentThread().interrupt();
+                try {
+                    task.run();
+                } catch (Throwable e) {
+                    // the worker lives on, the lanes would otherwise lose a consumer per failure
+                    Thread current = Thread.currentThread();
+                    current.getUncaughtExceptionHandler().uncaughtException(current, e);
+                }
+            }
+        } finally {
+            lock.lock();
+            try {
+                if (--liveWorkers == 0)
+                    terminated.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.garry.patterns.task_execution;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Thrown by a PriorityLaneExecutor that can't take a task, says which lane and why
+ */
+public class TaskRejectedException extends RejectedExecutionException {
+
+    private static final long serialVersionUID = 1L;
+
+    public enum Reason {
+        // the lane holds laneCapacity tasks
+        FULL,
+        // the tasks of the lane wait for too long, see PriorityLaneExecutor
+        OVERLOADED,
+        SHUTDOWN
+    }
+
+    private final PriorityLaneExecutor.Priority priority;
+    private final Reason reason;
+
+    public TaskRejectedException(PriorityLaneExecutor.Priority priority, Reason reason) {
+        super("Task rejected from lane " + priority + ": " + reason);
+        this.priority = priority;
+        this.reason = reason;
+    }
+
+    public PriorityLaneExecutor.Priority priority() {
+        return priority;
+    }
+
+    public Reason reason() {
+        return reason;
+    }
+}
@@ -0,0 +1,187 @@
+package com.garry.patterns.task_execution;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pattern: Background Task Executor
+ *
+ * Example: every task on its own virtual thread
+ *
+ * A virtual thread blocked on I/O gives its carrier back to the other ones, so blocking tasks
+ * don't need a pool sized by hand: tens of thousands can wait on the network at once. What
+ * must stay limited is what the tasks use, the connections of a mail server, so at most
+ * maxConcurrentTasks of them run their body at the same time. The others wait for a permit
+ * on their own virtual thread, which costs a few hundred bytes, and submitting never blocks.
+ *
+ * The threads are named name-0, name-1... and show up under that name in thread dumps
+ * (jcmd <pid> Thread.dump_to_file).
+ *
+ * A virtual thread that blocks while holding a monitor (synchronized) can't leave its carrier,
+ * it's pinned, and enough of them starve all the virtual threads of the JVM. With pinning
+ * detection on, a JFR stream reports the jdk.VirtualThreadPinned events of this executor's
+ * threads longer than PINNED_THRESHOLD, with the frame of the task that blocked, to a
+ * PinningListener (System.err by default); the usual fix is a ReentrantLock instead of
+ * synchronized around the blocking call.
+ */
+public class VirtualThreadExecutor extends AbstractExecutorService {
+
+    private static final Duration PINNED_THRESHOLD = Duration.ofMillis(20);
+
+    // called on the thread of the JFR stream, for every pinned event of the executor's threads
+    public interface PinningListener {
+        void pinned(String threadName, Duration duration, String blockingFrame);
+    }
+
+    private static final PinningListener PRINT_PINNING = (threadName, duration, blockingFrame) ->
+            System.err.println("Virtual thread " + threadName + " pinned for " + duration.toMillis()
+                    + " ms at " + blockingFrame);
+
+    private final String name;
+    private final int maxConcurrentTasks;
+    private final Semaphore running;
+    private final ExecutorService threads;
+    private final LongAdder pinned = new LongAdder();
+    // null without pinning detection
+    private final PinningListener pinningListener;
+    private final RecordingStream pinning;
+
+    // with detectPinning, the pinned threads are reported to System.err
+    public VirtualThreadExecutor(String name, int maxConcurrentTasks, boolean detectPinning) {
+        this(name, maxConcurrentTasks, detectPinning ? PRINT_PINNING : null);
+    }
+
+    // no pinning detection when pinningListener is null
+    public VirtualThreadExecutor(String name, int maxConcurrentTasks, PinningListener pinningListener) {
+        if (maxConcurrentTasks < 1)
+            throw new IllegalArgumentException("At least one task must be able to run");
+        this.name = name;
+        this.maxConcurrentTasks = maxConcurrentTasks;
+        this.running = new Semaphore(maxConcurrentTasks);
+        this.threads = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 0).factory());
+        this.pinningListener = pinningListener;
+        this.pinning = pinningListener != null ? startPinningDetection() : null;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (command == null)
+            throw new NullPointerException();
+        threads.execute(() -> {
+            try {
+                running.acquire();
+            } catch (InterruptedException e) {
+                // shut down before its turn came
+                if (command instanceof Future)
+                    ((Future<?>) command).cancel(false);
+                return;
+            }
+            try {
+                command.run();
+            } finally {
+                running.release();
+            }
+        });
+    }
+
+    // tasks running their body, not counting the ones waiting for their turn
+    public int runningTasks() {
+        return maxConcurrentTasks - running.availablePermits();
+    }
+
+    // pinned events reported so far, 0 without pinning detection
+    public long pinnedCount() {
+        return pinned.sum();
+    }
+
+    @Override
+    public void shutdown() {
+        threads.shutdown();
+        if (pinning != null)
+            // the tasks still running may be pinned too
+            Thread.ofVirtual().name(name + "-pinning-close").start(() -> {
+                try {
+                    threads.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    // closed anyway
+                }
+                pinning.close();
+            });
+    }
+
+    // interrupts the running tasks and the ones waiting for their turn; every task has its
+    // thread already, there's never anything left to return
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> remaining = threads.shutdownNow();
+        if (pinning != null)
+            pinning.close();
+        return remaining;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return threads.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return threads.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return threads.awaitTermination(timeout, unit);
+    }
+
+    private RecordingStream startPinningDetection() {
+        RecordingStream stream = new RecordingStream();
+        stream.enable("jdk.VirtualThreadPinned").withThreshold(PINNED_THRESHOLD).withStackTrace();
+        stream.onEvent("jdk.VirtualThreadPinned", this::onPinned);
+        stream.startAsync();
+        return stream;
+    }
+
+    private void onPinned(RecordedEvent event) {
+        if (event.getThread() == null || !isTaskThread(name, event.getThread().getJavaName()))
+            return;
+        pinned.increment();
+        pinningListener.pinned(event.getThread().getJavaName(), event.getDuration(), blockingFrame(event));
+    }
+
+    // name-0, name-1... only: not name-pinning-close, nor the threads of an executor named name-x
+    static boolean isTaskThread(String name, String threadName) {
+        if (threadName == null || threadName.length() <= name.length() + 1
+                || !threadName.startsWith(name) || threadName.charAt(name.length()) != '-')
+            return false;
+        for (int i = name.length() + 1; i < threadName.length(); i++) {
+            char c = threadName.charAt(i);
+            if (c < '0' || c > '9')
+                return false;
+        }
+        return true;
+    }
+
+    // the first frame out of the JDK, where the task blocked
+    private static String blockingFrame(RecordedEvent event) {
+        if (event.getStackTrace() == null)
+            return "unknown";
+        for (RecordedFrame frame : event.getStackTrace().getFrames()) {
+            String type = frame.getMethod().getType().getName();
+            if (!type.startsWith("java.") && !type.startsWith("jdk.") && !type.startsWith("sun."))
+                return type + "." + frame.getMethod().getName() + ":" + frame.getLineNumber();
+        }
+        return "unknown";
+    }
+}
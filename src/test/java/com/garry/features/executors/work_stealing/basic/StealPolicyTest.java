@@ -0,0 +1,123 @@
+package com.garry.features.executors.work_stealing.basic;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+public class StealPolicyTest extends TestCase {
+
+    // the victims of one whole round
+    private static List<Integer> round(StealPolicy.VictimSelector victims) {
+        List<Integer> visited = new ArrayList<>();
+        victims.begin();
+        int victim;
+        while ((victim = victims.next()) >= 0) {
+            visited.add(victim);
+            if (visited.size() > 100)
+                fail("the round never ends");
+        }
+        return visited;
+    }
+
+    // every server but the thief, once
+    private static void assertVisitsEveryOtherServerOnce(List<Integer> visited, int thief, int numServers) {
+        assertEquals(numServers - 1, visited.size());
+        Set<Integer> distinct = new HashSet<>(visited);
+        assertEquals(numServers - 1, distinct.size());
+        assertFalse(distinct.contains(thief));
+        for (int victim : visited) {
+            assertTrue(victim >= 0 && victim < numServers);
+        }
+    }
+
+    public void testRandomVisitsEveryOtherServerFromVaryingStarts() {
+        for (int numServers = 1; numServers <= 8; numServers++) {
+            for (int thief = 0; thief < numServers; thief++) {
+                StealPolicy.VictimSelector victims = new RandomStealPolicy().selectorFor(thief, numServers);
+                Set<Integer> firsts = new HashSet<>();
+                for (int i = 0; i < 100; i++) {
+                    List<Integer> visited = round(victims);
+                    assertVisitsEveryOtherServerOnce(visited, thief, numServers);
+                    if (!visited.isEmpty())
+                        firsts.add(visited.get(0));
+                }
+                // the thieves don't all start from the same victim
+                if (numServers > 2)
+                    assertTrue(firsts.size() > 1);
+            }
+        }
+    }
+
+    public void testRoundRobinGoesOnFromTheLastVictim() {
+        final int numServers = 5;
+        for (int thief = 0; thief < numServers; thief++) {
+            StealPolicy.VictimSelector victims = new RoundRobinStealPolicy().selectorFor(thief, numServers);
+            List<Integer> visited = round(victims);
+            assertVisitsEveryOtherServerOnce(visited, thief, numServers);
+            // in order, from the server after the thief
+            for (int i = 0; i < visited.size(); i++) {
+                assertEquals((thief + 1 + i) % numServers, visited.get(i).intValue());
+            }
+        }
+        // a round that stole from its first victim, the next one starts after it
+        StealPolicy.VictimSelector victims = new RoundRobinStealPolicy().selectorFor(0, numServers);
+        victims.begin();
+        assertEquals(1, victims.next());
+        victims.begin();
+        assertEquals(2, victims.next());
+        assertVisitsEveryOtherServerOnce(round(victims), 0, numServers);
+        assertTrue(round(new RoundRobinStealPolicy().selectorFor(0, 1)).isEmpty());
+    }
+
+    public void testHierarchicalTriesTheThiefsNodeFirst() {
+        final int numServers = 8;
+        StealPolicy policy = HierarchicalStealPolicy.ofNodes(numServers, 4);
+        for (int thief = 0; thief < numServers; thief++) {
+            StealPolicy.VictimSelector victims = policy.selectorFor(thief, numServers);
+            for (int i = 0; i < 20; i++) {
+                List<Integer> visited = round(victims);
+                assertVisitsEveryOtherServerOnce(visited, thief, numServers);
+                for (int j = 0; j < visited.size(); j++) {
+                    boolean near = visited.get(j) / 4 == thief / 4;
+                    assertEquals(j < 3, near);
+                }
+            }
+        }
+    }
+
+    public void testHierarchicalWithAnUnevenTopology() {
+        StealPolicy policy = new HierarchicalStealPolicy(new int[]{0, 1, 1, 0, 2});
+        // server 3 is the only other one on node 0
+        List<Integer> visited = round(policy.selectorFor(0, 5));
+        assertVisitsEveryOtherServerOnce(visited, 0, 5);
+        assertEquals(3, visited.get(0).intValue());
+        // alone on its node, everything is remote
+        assertVisitsEveryOtherServerOnce(round(policy.selectorFor(4, 5)), 4, 5);
+        try {
+            policy.selectorFor(0, 4);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            HierarchicalStealPolicy.ofNodes(4, 0);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testXorShiftStaysInBounds() {
+        for (int index = 0; index < 16; index++) {
+            XorShift random = new XorShift(index);
+            Set<Integer> seen = new HashSet<>();
+            for (int i = 0; i < 1_000; i++) {
+                int next = random.nextInt(7);
+                assertTrue(next >= 0 && next < 7);
+                seen.add(next);
+            }
+            assertEquals(7, seen.size());
+        }
+    }
+}
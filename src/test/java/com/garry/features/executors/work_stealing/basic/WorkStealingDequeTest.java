@@ -0,0 +1,95 @@
+package com.garry.features.executors.work_stealing.basic;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import junit.framework.TestCase;
+
+public class WorkStealingDequeTest extends TestCase {
+
+    public void testOwnerIsLifoAndThievesAreFifo() {
+        WorkStealingDeque<Integer> deque = new WorkStealingDeque<>();
+        for (int i = 0; i < 3; i++) {
+            deque.push(i);
+        }
+        assertEquals(Integer.valueOf(2), deque.pop());
+        assertEquals(Integer.valueOf(0), deque.steal());
+        assertEquals(Integer.valueOf(1), deque.pop());
+        assertNull(deque.pop());
+        assertNull(deque.steal());
+        assertTrue(deque.isEmpty());
+    }
+
+    public void testGrowsPastItsInitialCapacity() {
+        WorkStealingDeque<Integer> deque = new WorkStealingDeque<>();
+        for (int i = 0; i < 1_000; i++) {
+            deque.push(i);
+        }
+        assertEquals(1_000, deque.size());
+        for (int i = 0; i < 500; i++) {
+            assertEquals(Integer.valueOf(i), deque.steal());
+        }
+        for (int i = 999; i >= 500; i--) {
+            assertEquals(Integer.valueOf(i), deque.pop());
+        }
+        assertEquals(0, deque.size());
+    }
+
+    // the owner pushes and pops while thieves steal: every element is taken exactly once
+    public void testEveryElementIsTakenOnceWhenOwnerAndThievesRace() throws Exception {
+        final int elements = 200_000;
+        final int thieves = 3;
+        WorkStealingDeque<Integer> deque = new WorkStealingDeque<>();
+        AtomicIntegerArray taken = new AtomicIntegerArray(elements);
+        AtomicBoolean ownerDone = new AtomicBoolean();
+        CountDownLatch start = new CountDownLatch(1);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < thieves; i++) {
+            Thread thief = new Thread(() -> {
+                awaitQuietly(start);
+                while (!ownerDone.get() || !deque.isEmpty()) {
+                    Integer e = deque.steal();
+                    if (e != null)
+                        taken.incrementAndGet(e);
+                }
+            });
+            threads.add(thief);
+            thief.start();
+        }
+
+        start.countDown();
+        // keep the deque short so pop() and steal() often fight for the last element
+        for (int i = 0; i < elements; i++) {
+            deque.push(i);
+            if ((i & 1) == 1) {
+                Integer e = deque.pop();
+                if (e != null)
+                    taken.incrementAndGet(e);
+            }
+        }
+        Integer e;
+        while ((e = deque.pop()) != null) {
+            taken.incrementAndGet(e);
+        }
+        ownerDone.set(true);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        for (int i = 0; i < elements; i++) {
+            assertEquals("element " + i, 1, taken.get(i));
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
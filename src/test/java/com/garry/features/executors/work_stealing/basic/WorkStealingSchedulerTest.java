@@ -0,0 +1,276 @@
+package com.garry.features.executors.work_stealing.basic;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.LongStream;
+
+import junit.framework.TestCase;
+
+public class WorkStealingSchedulerTest extends TestCase {
+
+    private Scheduler scheduler;
+
+    @Override
+    protected void setUp() {
+        scheduler = new WorkStealingScheduler(4);
+    }
+
+    @Override
+    protected void tearDown() {
+        scheduler.shutdown();
+    }
+
+    public void testWaitForAllSeesEveryTaskLet() throws Exception {
+        long[] numbers = LongStream.range(0, 100_000).toArray();
+        for (int run = 0; run < 10; run++) {
+            CompletionGroup group = new CompletionGroup();
+            LongAdder result = new LongAdder();
+            scheduler.spawn(new WorkStealingSchedulerUsage.SumTaskLet(group, scheduler, numbers, 0, numbers.length, result));
+            scheduler.waitForAll(group);
+            assertEquals(99_999L * 100_000 / 2, result.sum());
+        }
+        scheduler.awaitQuiescence();
+        assertEquals(0, scheduler.statistics().activeTasks);
+    }
+
+    // 100 TaskLets from outside, and a binary tree of 2^11 - 1 spawned from the servers but for its root
+    public void testTheCountersAddUpToTheWorkload() throws Exception {
+        CompletionGroup group = new CompletionGroup();
+        for (int i = 0; i < 100; i++) {
+            scheduler.spawn(new Running(group, () -> { }));
+        }
+        scheduler.spawn(new Tree(group, scheduler, 10));
+        scheduler.waitForAll(group);
+        scheduler.awaitQuiescence();
+
+        SchedulerStatistics stats = scheduler.statistics();
+        long treeSize = (1 << 11) - 1;
+        assertEquals(4, stats.numServers);
+        assertEquals(0, stats.activeTasks);
+        assertEquals(101, stats.externalSubmissions);
+        assertEquals(treeSize - 1, stats.totalSpawned);
+        assertEquals(100 + treeSize, stats.totalExecuted);
+        // only the TaskLets spawned by the servers are in their deques to be stolen
+        assertTrue(stats.totalSteals <= stats.totalSpawned);
+        assertTrue(stats.totalSuccessfulSteals <= stats.totalSteals);
+        long executed = 0, steals = 0, successfulSteals = 0;
+        for (ServerStatistics server : stats.servers) {
+            executed += server.numTaskletInitiations;
+            steals += server.numTaskletSteals;
+            successfulSteals += server.numSuccessfulSteals;
+            assertTrue(server.stealSuccessRatio() >= 0 && server.stealSuccessRatio() <= 1);
+            assertTrue(server.stealRatio() >= 0 && server.stealRatio() <= 1);
+        }
+        assertEquals(stats.totalExecuted, executed);
+        assertEquals(stats.totalSteals, steals);
+        assertEquals(stats.totalSuccessfulSteals, successfulSteals);
+        assertEquals(Long.valueOf(stats.totalExecuted), stats.asMap().get("executed"));
+        assertEquals(Long.valueOf(stats.totalSteals), stats.asMap().get("steals"));
+    }
+
+    public void testFailureIsRethrownToTheWaiterAndTheGroupCanBeReused() {
+        CompletionGroup group = new CompletionGroup();
+        IllegalStateException failure = new IllegalStateException("boom");
+        scheduler.spawn(new Failing(group, failure));
+        scheduler.spawn(new Failing(group, null));
+        assertFailsWith(failure, group);
+        assertTrue(group.isDone());
+
+        group.reset();
+        scheduler.spawn(new Failing(group, null));
+        scheduler.waitForAll(group);
+        assertNull(group.failure());
+    }
+
+    // the group went through zero pending TaskLets before the next spawn, its failure stays
+    public void testFailureOutlivesTheGroupBeingDone() throws Exception {
+        CompletionGroup group = new CompletionGroup();
+        IllegalStateException failure = new IllegalStateException("boom");
+        scheduler.spawn(new Failing(group, failure));
+        while (!group.isDone()) {
+            Thread.sleep(1);
+        }
+        scheduler.spawn(new Failing(group, null));
+        assertFailsWith(failure, group);
+        assertSame(failure, group.failure());
+
+        group.reset();
+        assertNull(group.failure());
+    }
+
+    public void testResetRefusesAGroupStillRunning() {
+        CompletionGroup group = new CompletionGroup();
+        group.taskSpawned();
+        try {
+            group.reset();
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        group.taskCompleted();
+        group.reset();
+    }
+
+    private void assertFailsWith(Throwable failure, CompletionGroup group) {
+        try {
+            scheduler.waitForAll(group);
+            fail("the failure of the TaskLet was lost");
+        } catch (CompletionException e) {
+            assertSame(failure, e.getCause());
+        }
+    }
+
+    public void testErrorDoesNotKillTheServers() {
+        CompletionGroup group = new CompletionGroup();
+        for (int i = 0; i < 16; i++) {
+            scheduler.spawn(new Failing(group, new AssertionError("boom " + i)));
+        }
+        try {
+            scheduler.waitForAll(group);
+            fail();
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof AssertionError);
+        }
+        CompletionGroup next = new CompletionGroup();
+        scheduler.spawn(new Failing(next, null));
+        scheduler.waitForAll(next);
+    }
+
+    // a thief takes one TaskLet and then at most half of what the victim has left, up to the batch size
+    public void testABatchedStealTakesAtMostHalfOfTheVictim() {
+        assertEquals(5, stolenFromTenQueued(16));
+        assertEquals(3, stolenFromTenQueued(3));
+        assertEquals(1, stolenFromTenQueued(1));
+    }
+
+    // the TaskLets the thief took in its only successful round, from a victim holding ten of them
+    private int stolenFromTenQueued(int maxStealBatch) {
+        scheduler.shutdown();
+        scheduler = new WorkStealingScheduler(2, new RoundRobinStealPolicy(), maxStealBatch);
+        CompletionGroup group = new CompletionGroup();
+        CountDownLatch thiefBusy = new CountDownLatch(1);
+        CountDownLatch thiefGate = new CountDownLatch(1);
+        CountDownLatch spawned = new CountDownLatch(1);
+        CountDownLatch stolen = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicReference<String> thief = new AtomicReference<>();
+
+        // keeps one server away until the other one queued everything
+        scheduler.spawn(new Running(group, () -> {
+            thief.set(Thread.currentThread().getName());
+            thiefBusy.countDown();
+            awaitUninterruptibly(thiefGate);
+        }));
+        awaitUninterruptibly(thiefBusy);
+        scheduler.spawn(new Running(group, () -> {
+            for (int i = 0; i < 10; i++) {
+                scheduler.spawn(new Running(group, () -> {
+                    stolen.countDown();
+                    awaitUninterruptibly(release);
+                }));
+            }
+            spawned.countDown();
+            awaitUninterruptibly(release);
+        }));
+        awaitUninterruptibly(spawned);
+        thiefGate.countDown();
+        // the thief runs the first TaskLet of its batch and stays there
+        awaitUninterruptibly(stolen);
+        ServerStatistics thiefStats = null;
+        for (ServerStatistics stats : scheduler.statistics().servers) {
+            if (thief.get().equals("work-stealing-server-" + stats.serverIndex))
+                thiefStats = stats;
+        }
+        release.countDown();
+        scheduler.waitForAll(group);
+        assertEquals(1, thiefStats.numSuccessfulSteals);
+        return (int) thiefStats.numTaskletSteals;
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    private static final class Running extends TaskLet {
+        private static final long serialVersionUID = 1L;
+
+        private final transient Runnable body;
+
+        Running(CompletionGroup group, Runnable body) {
+            super(group);
+            this.body = body;
+        }
+
+        @Override
+        public boolean isLeaf() {
+            return true;
+        }
+
+        @Override
+        protected void compute() {
+            body.run();
+        }
+    }
+
+    // spawns two subtrees one level down, without waiting for them
+    private static final class Tree extends TaskLet {
+        private static final long serialVersionUID = 1L;
+
+        private final transient Scheduler scheduler;
+        private final int depth;
+
+        Tree(CompletionGroup group, Scheduler scheduler, int depth) {
+            super(group);
+            this.scheduler = scheduler;
+            this.depth = depth;
+        }
+
+        @Override
+        public boolean isLeaf() {
+            return depth == 0;
+        }
+
+        @Override
+        protected void compute() {
+            if (isLeaf())
+                return;
+            scheduler.spawn(new Tree(group, scheduler, depth - 1));
+            scheduler.spawn(new Tree(group, scheduler, depth - 1));
+        }
+    }
+
+    private static final class Failing extends TaskLet {
+        private static final long serialVersionUID = 1L;
+
+        private final Throwable failure;
+
+        Failing(CompletionGroup group, Throwable failure) {
+            super(group);
+            this.failure = failure;
+        }
+
+        @Override
+        public boolean isLeaf() {
+            return true;
+        }
+
+        @Override
+        protected void compute() {
+            if (failure instanceof RuntimeException)
+                throw (RuntimeException) failure;
+            if (failure instanceof Error)
+                throw (Error) failure;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.garry.patterns.condition_queues;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+public class PausableDispatcherTest extends TestCase {
+
+    public void testEveryMessageIsHandledOnce() throws InterruptedException {
+        final int count = 50_000;
+        AtomicIntegerArray handled = new AtomicIntegerArray(count);
+        CountDownLatch done = new CountDownLatch(count);
+        PausableDispatcher<Integer> dispatcher = new PausableDispatcher<>(4, message -> {
+            handled.incrementAndGet(message);
+            done.countDown();
+        });
+        dispatcher.start();
+        for (int i = 0; i < count; i++) {
+            dispatcher.dispatch(i);
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        for (int i = 0; i < count; i++) {
+            assertEquals(1, handled.get(i));
+        }
+        assertEquals(0, dispatcher.pending());
+        dispatcher.shutdown();
+    }
+
+    // the Error goes to the uncaught exception handler, the only consumer takes the next message
+    public void testAThrowingHandlerKeepsItsConsumer() throws InterruptedException {
+        Thread.UncaughtExceptionHandler previous = Thread.getDefaultUncaughtExceptionHandler();
+        AtomicReference<Throwable> reported = new AtomicReference<>();
+        Thread.setDefaultUncaughtExceptionHandler((thread, e) -> reported.set(e));
+        try {
+            CountDownLatch handled = new CountDownLatch(1);
+            PausableDispatcher<Integer> dispatcher = new PausableDispatcher<>(1, message -> {
+                if (message < 0)
+                    throw new AssertionError("handler failed");
+                handled.countDown();
+            });
+            dispatcher.start();
+            dispatcher.dispatch(-1);
+            dispatcher.dispatch(1);
+            assertTrue(handled.await(10, TimeUnit.SECONDS));
+            assertTrue(reported.get() instanceof AssertionError);
+            dispatcher.shutdown();
+        } finally {
+            Thread.setDefaultUncaughtExceptionHandler(previous);
+        }
+    }
+
+    // between awaitPaused() and resume() nothing is handled, the messages wait in the queue
+    public void testNothingIsHandledWhilePaused() throws InterruptedException {
+        AtomicBoolean quiet = new AtomicBoolean();
+        AtomicInteger violations = new AtomicInteger();
+        AtomicInteger handled = new AtomicInteger();
+        PausableDispatcher<Integer> dispatcher = new PausableDispatcher<>(4, message -> {
+            if (quiet.get())
+                violations.incrementAndGet();
+            handled.incrementAndGet();
+        });
+        dispatcher.start();
+        int dispatched = 0;
+        for (int round = 0; round < 200; round++) {
+            for (int i = 0; i < 50; i++) {
+                dispatcher.dispatch(dispatched++);
+            }
+            assertTrue(dispatcher.awaitPaused(5, TimeUnit.SECONDS));
+            quiet.set(true);
+            if (round % 20 == 0)
+                Thread.sleep(1);
+            quiet.set(false);
+            dispatcher.resume();
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (handled.get() < dispatched && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        dispatcher.shutdown();
+        assertEquals(dispatched, handled.get());
+        assertEquals(0, violations.get());
+    }
+
+    // a consumer paused again before it saw the resume must still be woken by the next one
+    public void testNoConsumerIsLostAcrossPauses() throws Exception {
+        final int consumers = 4;
+        CyclicBarrier allAtOnce = new CyclicBarrier(consumers);
+        CountDownLatch met = new CountDownLatch(consumers);
+        PausableDispatcher<Integer> dispatcher = new PausableDispatcher<>(consumers, message -> {
+            if (message < 0) {
+                try {
+                    allAtOnce.await(10, TimeUnit.SECONDS);
+                    met.countDown();
+                } catch (Exception e) {
+                    // a consumer is missing
+                }
+            }
+        });
+        dispatcher.start();
+        for (int i = 0; i < 1_000; i++) {
+            dispatcher.dispatch(i);
+        }
+        for (int round = 0; round < 1_000; round++) {
+            dispatcher.pause();
+            dispatcher.resume();
+        }
+        // handled only when every consumer has one of them at the same time
+        for (int i = 0; i < consumers; i++) {
+            dispatcher.dispatch(-1);
+        }
+        assertTrue(met.await(20, TimeUnit.SECONDS));
+        dispatcher.shutdown();
+    }
+}
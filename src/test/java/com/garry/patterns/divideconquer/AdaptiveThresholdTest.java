@@ -0,0 +1,85 @@
+package com.garry.patterns.divideconquer;
+
+import java.util.concurrent.ForkJoinPool;
+
+import junit.framework.TestCase;
+
+public class AdaptiveThresholdTest extends TestCase {
+
+    // samples until the moving average settled, one leaf in eight is sampled
+    private static void learn(AdaptiveThreshold threshold, double nanosPerElement) {
+        for (int i = 0; i < 2_000; i++) {
+            threshold.recordLeaf(1_000, (long) (1_000 * nanosPerElement));
+        }
+    }
+
+    public void testTheLeafIsAtLeastOneElement() {
+        AdaptiveThreshold threshold = new AdaptiveThreshold(1);
+        assertEquals(1, threshold.leafSize(0, 4));
+        assertEquals(1, threshold.leafSize(1, 4));
+        assertEquals(1, threshold.leafSize(10, 96));
+        learn(threshold, 1_000_000);
+        assertEquals(1, threshold.leafSize(10, 96));
+    }
+
+    public void testTheLeafIsNeverLongerThanTheInput() {
+        AdaptiveThreshold threshold = new AdaptiveThreshold(1_000);
+        assertEquals(10, threshold.leafSize(10, 4));
+        // elements so cheap that a leaf should be huge
+        learn(threshold, 0.001);
+        assertEquals(5_000, threshold.leafSize(5_000, 4));
+        assertFalse(threshold.shouldSplit(5_000, threshold.leafSize(5_000, 4)));
+    }
+
+    // a few leaves per worker while nothing is known
+    public void testTheSlackSpreadsTheInputOverTheWorkers() {
+        AdaptiveThreshold threshold = new AdaptiveThreshold(1);
+        assertEquals(0.0, threshold.nanosPerElement());
+        assertEquals(1_000_000 / (4 * 8), threshold.leafSize(1_000_000, 4));
+        assertEquals(1_000_000 / (96 * 8), threshold.leafSize(1_000_000, 96));
+        assertEquals(100, new AdaptiveThreshold(100).leafSize(1_000, 96));
+    }
+
+    public void testSlowElementsMakeShorterLeaves() {
+        AdaptiveThreshold threshold = new AdaptiveThreshold(1);
+        learn(threshold, 0.1);
+        // 20 microseconds of 0.1 nanosecond elements, longer than what the slack gives
+        int fast = threshold.leafSize(1_000_000, 4);
+        assertEquals(200_000, fast, 1);
+        learn(threshold, 1_000);
+        assertEquals(1_000, threshold.nanosPerElement(), 50);
+        int slow = threshold.leafSize(1_000_000, 4);
+        assertTrue(slow < fast);
+        // back to the slack, the learned cost only ever keeps leaves from getting too short
+        assertEquals(1_000_000 / (4 * 8), slow);
+        assertEquals(20, threshold.leafSize(100, 4));
+    }
+
+    public void testShouldSplitOnlyWhatIsLongerThanALeaf() {
+        AdaptiveThreshold threshold = new AdaptiveThreshold(1);
+        assertFalse(threshold.shouldSplit(100, 100));
+        assertFalse(threshold.shouldSplit(1, 1));
+        assertTrue(threshold.shouldSplit(101, 100));
+        // outside a pool there is no surplus to look at
+        assertTrue(threshold.shouldSplit(300, 100));
+    }
+
+    public void testTheLeafFollowsTheParallelismOfThePool() {
+        AdaptiveThreshold threshold = new AdaptiveThreshold(1);
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            int leaf = pool.submit(() -> threshold.leafSize(1_600)).join();
+            assertEquals(1_600 / (2 * 8), leaf);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    public void testTheMinimumLeafMustBePositive() {
+        try {
+            new AdaptiveThreshold(0);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.garry.patterns.divideconquer;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+import junit.framework.TestCase;
+
+public class ExactSumTest extends TestCase {
+
+    public void testStaysInALongWhileItFits() {
+        ExactSum sum = new ExactSum(Long.MAX_VALUE - 1).add(1);
+        assertTrue(sum.fitsInLong());
+        assertEquals(BigInteger.valueOf(Long.MAX_VALUE), sum.toBigInteger());
+    }
+
+    public void testOverflowUpwardsAndDownwards() {
+        ExactSum up = new ExactSum(Long.MAX_VALUE).add(Long.MAX_VALUE).add(2);
+        assertFalse(up.fitsInLong());
+        assertEquals(BigInteger.valueOf(Long.MAX_VALUE).shiftLeft(1).add(BigInteger.TWO), up.toBigInteger());
+
+        ExactSum down = new ExactSum(Long.MIN_VALUE).add(-1);
+        assertEquals(BigInteger.valueOf(Long.MIN_VALUE).subtract(BigInteger.ONE), down.toBigInteger());
+    }
+
+    // overflowing and coming back into range is exact, and fits in a long again
+    public void testOverflowThenBackInRange() {
+        ExactSum sum = new ExactSum(Long.MAX_VALUE).add(10).add(-20);
+        assertTrue(sum.fitsInLong());
+        assertEquals(BigInteger.valueOf(Long.MAX_VALUE - 10), sum.toBigInteger());
+    }
+
+    public void testCombiningCarriesBothParts() {
+        ExactSum a = new ExactSum(Long.MAX_VALUE).add(Long.MAX_VALUE);
+        ExactSum b = new ExactSum(Long.MIN_VALUE).add(Long.MIN_VALUE);
+        BigInteger expected = a.toBigInteger().add(b.toBigInteger());
+        assertEquals(expected, a.add(b).toBigInteger());
+        assertEquals(BigInteger.valueOf(-2), a.toBigInteger());
+    }
+
+    public void testParallelSumOfOverflowingValuesIsExact() {
+        long[] values = new long[1_000_000];
+        SplittableRandom random = new SplittableRandom(42);
+        BigInteger expected = BigInteger.ZERO;
+        for (int i = 0; i < values.length; i++) {
+            // mostly huge positives, some huge negatives: the partial sums overflow both ways
+            values[i] = random.nextInt(10) == 0 ? Long.MIN_VALUE + random.nextLong(1_000) : Long.MAX_VALUE - random.nextLong(1_000);
+            expected = expected.add(BigInteger.valueOf(values[i]));
+        }
+        assertEquals(expected, ParallelLongSum.sum(values));
+        assertEquals(expected, ParallelLongSum.sum(LongBuffer.wrap(values)));
+
+        BigInteger firstHalf = BigInteger.ZERO;
+        for (int i = 0; i < values.length / 2; i++) {
+            firstHalf = firstHalf.add(BigInteger.valueOf(values[i]));
+        }
+        assertEquals(firstHalf, ParallelLongSum.sum(values, 0, values.length / 2));
+    }
+
+    public void testMappedFile() throws IOException {
+        long[] values = new long[100_000];
+        BigInteger expected = BigInteger.ZERO;
+        for (int i = 0; i < values.length; i++) {
+            values[i] = Long.MAX_VALUE - i;
+            expected = expected.add(BigInteger.valueOf(values[i]));
+        }
+        ByteBuffer bytes = ByteBuffer.allocate(values.length * Long.BYTES).order(ByteOrder.BIG_ENDIAN);
+        bytes.asLongBuffer().put(values);
+        Path file = Files.createTempFile("exact-sum", ".bin");
+        try {
+            Files.write(file, bytes.array());
+            assertEquals(expected, ParallelLongSum.sum(file, ByteOrder.BIG_ENDIAN));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
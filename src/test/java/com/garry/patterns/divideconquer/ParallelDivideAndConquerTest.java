@@ -0,0 +1,93 @@
+package com.garry.patterns.divideconquer;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.Spliterators;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.IntStream;
+
+import junit.framework.TestCase;
+
+public class ParallelDivideAndConquerTest extends TestCase {
+
+    private final ParallelDivideAndConquer engine = new ParallelDivideAndConquer();
+
+    private final Integer[] numbers = IntStream.range(0, 1_000_000).boxed().toArray(Integer[]::new);
+
+    public void testReduceCombinesFromLeftToRight() {
+        long sum = engine.reduce(ParallelDivideAndConquer.source(numbers), 0L, (acc, n) -> acc + n, Long::sum);
+        assertEquals(999_999L * 1_000_000 / 2, sum);
+
+        // not commutative: only right if the leaves are combined in encounter order
+        String digits = engine.reduce(ParallelDivideAndConquer.source(Arrays.copyOf(numbers, 5_000)), "",
+                (acc, n) -> acc + (n % 10), String::concat);
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 5_000; i++) {
+            expected.append(i % 10);
+        }
+        assertEquals(expected.toString(), digits);
+    }
+
+    public void testFindFirstIsTheLeftmostMatch() {
+        List<Integer> list = Arrays.asList(numbers);
+        assertEquals(Optional.of(7919 * 2), engine.findFirst(ParallelDivideAndConquer.source(list),
+                n -> n > 7919 && n % 7919 == 0));
+        assertEquals(Optional.empty(), engine.findFirst(ParallelDivideAndConquer.source(list), n -> n < 0));
+        assertTrue(engine.anyMatch(Spliterators.spliteratorUnknownSize(list.iterator(), 0), n -> n == 999_999));
+    }
+
+    public void testCancelAfterCompletionHasNoEffect() {
+        ParallelDivideAndConquer.Computation<Long> computation = engine.submit(
+                ParallelDivideAndConquer.source(numbers), 0L, (acc, n) -> acc + n, Long::sum);
+        long sum = computation.join();
+        assertFalse(computation.cancel());
+        assertFalse(computation.isCancelled());
+        assertEquals(sum, computation.join().longValue());
+    }
+
+    public void testCancelledComputationThrowsOnJoin() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch cancelled = new CountDownLatch(1);
+        ParallelDivideAndConquer.Computation<Long> computation = engine.submit(
+                ParallelDivideAndConquer.source(numbers), 0L, (acc, n) -> {
+                    started.countDown();
+                    awaitQuietly(cancelled);
+                    return acc + n;
+                }, Long::sum);
+        started.await();
+        assertTrue(computation.cancel());
+        cancelled.countDown();
+        try {
+            computation.join();
+            fail("a cancelled computation returned a result");
+        } catch (CancellationException expected) {
+        }
+        assertTrue(computation.isCancelled());
+        assertFalse(computation.cancel());
+    }
+
+    public void testLeafFailureIsRethrown() {
+        try {
+            engine.reduce(ParallelDivideAndConquer.source(numbers), 0L, (acc, n) -> {
+                if (n == 123_456)
+                    throw new IllegalStateException("boom");
+                return acc + n;
+            }, Long::sum);
+            fail();
+        } catch (IllegalStateException e) {
+            // ForkJoinTask may rethrow a copy made in the joining thread, with the original as its cause
+            Throwable original = e.getCause() instanceof IllegalStateException ? e.getCause() : e;
+            assertEquals("boom", original.getMessage());
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.garry.patterns.divideconquer;
+
+import java.util.concurrent.ForkJoinPool;
+
+import junit.framework.TestCase;
+
+public class RecursiveReduceTest extends TestCase {
+
+    // the digits of a range of int[], in order: only right if the parts cover it left to right
+    private static final class Digits extends RecursiveReduce<String> {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] values;
+        private final int from;
+        private final int to;
+        private final int arity;
+        private final int leafSize;
+        private final Thread[] leftmostLeaf;
+
+        Digits(int[] values, int from, int to, int arity, int leafSize, Thread[] leftmostLeaf) {
+            super(arity);
+            this.values = values;
+            this.from = from;
+            this.to = to;
+            this.arity = arity;
+            this.leafSize = leafSize;
+            this.leftmostLeaf = leftmostLeaf;
+        }
+
+        @Override
+        protected boolean isLeaf() {
+            return to - from <= leafSize;
+        }
+
+        @Override
+        protected String computeDirectly() {
+            if (from == 0)
+                leftmostLeaf[0] = Thread.currentThread();
+            StringBuilder digits = new StringBuilder();
+            for (int i = from; i < to; i++) {
+                digits.append(values[i] % 10);
+            }
+            return digits.toString();
+        }
+
+        // uneven when the length isn't a multiple of the parts, some parts are empty below parts elements
+        @Override
+        protected RecursiveReduce<String> part(int index, int parts) {
+            long length = to - from;
+            int start = from + (int) (length * index / parts);
+            int end = from + (int) (length * (index + 1) / parts);
+            return new Digits(values, start, end, arity, leafSize, leftmostLeaf);
+        }
+
+        @Override
+        protected String combine(String left, String right) {
+            return left + right;
+        }
+    }
+
+    private static String sequentially(int[] values, int length) {
+        StringBuilder digits = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            digits.append(values[i] % 10);
+        }
+        return digits.toString();
+    }
+
+    public void testEveryArityCoversUnevenLengthsInOrder() {
+        int[] values = new int[1_000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i * 7 + i / 10;
+        }
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int arity = 2; arity <= 7; arity++) {
+                for (int length : new int[]{0, 1, 2, arity - 1, arity + 1, 2 * arity + 1, 97, 331, 999}) {
+                    for (int leafSize : new int[]{1, 3, 10}) {
+                        Digits root = new Digits(values, 0, length, arity, leafSize, new Thread[1]);
+                        assertEquals("arity " + arity + ", length " + length + ", leaf " + leafSize,
+                                sequentially(values, length), pool.invoke(root));
+                    }
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // the leftmost part of every split is computed in place, down to the first leaf
+    public void testTheFirstPartRunsInTheCallingThread() {
+        int[] values = new int[10_001];
+        Thread[] leftmostLeaf = new Thread[1];
+        Digits root = new Digits(values, 0, values.length, 3, 5, leftmostLeaf);
+        assertEquals(sequentially(values, values.length), root.invoke());
+        assertSame(Thread.currentThread(), leftmostLeaf[0]);
+    }
+
+    public void testASplitNeedsTwoParts() {
+        try {
+            new Digits(new int[0], 0, 0, 1, 1, new Thread[1]);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
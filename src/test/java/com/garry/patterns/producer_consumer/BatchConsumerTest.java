@@ -0,0 +1,147 @@
+package com.garry.patterns.producer_consumer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+public class BatchConsumerTest extends TestCase {
+
+    private final List<List<Integer>> batches = new CopyOnWriteArrayList<>();
+    private final ExecutorService consumers = Executors.newSingleThreadExecutor();
+
+    @Override
+    protected void tearDown() {
+        consumers.shutdownNow();
+    }
+
+    private static RingBufferChannel<Integer> closedWith(int elements) throws InterruptedException {
+        RingBufferChannel<Integer> channel = new RingBufferChannel<>(16);
+        for (int i = 0; i < elements; i++) {
+            channel.put(i);
+        }
+        channel.close();
+        return channel;
+    }
+
+    // the handler gets the same list every time, it keeps a copy
+    private void record(List<Integer> batch) {
+        batches.add(new ArrayList<>(batch));
+    }
+
+    public void testFullBatchesThenThePartialOneAtTheEnd() throws Exception {
+        BatchConsumer<Integer> consumer = new BatchConsumer<>(closedWith(10), 4, 1, TimeUnit.HOURS, this::record);
+        consumer.call();
+        assertEquals(List.of(List.of(0, 1, 2, 3), List.of(4, 5, 6, 7), List.of(8, 9)), batches);
+        assertEquals(3, consumer.acknowledgedBatches());
+        assertEquals(10, consumer.acknowledgedElements());
+    }
+
+    public void testAnIncompleteBatchIsHandedOverAfterMaxWait() throws Exception {
+        RingBufferChannel<Integer> channel = new RingBufferChannel<>(16);
+        CountDownLatch handed = new CountDownLatch(1);
+        BatchConsumer<Integer> consumer = new BatchConsumer<>(channel, 100, 50, TimeUnit.MILLISECONDS, batch -> {
+            record(batch);
+            handed.countDown();
+        });
+        Future<Void> running = consumers.submit(consumer);
+        long start = System.nanoTime();
+        channel.put(0);
+        channel.put(1);
+        channel.put(2);
+        // the channel is still open and the batch far from full
+        assertTrue(handed.await(10, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(40));
+        assertEquals(List.of(List.of(0, 1, 2)), batches);
+        // acknowledged once the handler returned
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (consumer.acknowledgedBatches() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(1, consumer.acknowledgedBatches());
+        assertEquals(3, consumer.acknowledgedElements());
+
+        channel.close();
+        running.get(10, TimeUnit.SECONDS);
+    }
+
+    // the consumer waits for more within maxWait, closing the channel ends the wait
+    public void testClosingHandsOverTheLastBatchRightAway() throws Exception {
+        RingBufferChannel<Integer> channel = new RingBufferChannel<>(16);
+        BatchConsumer<Integer> consumer = new BatchConsumer<>(channel, 100, 1, TimeUnit.HOURS, this::record);
+        Future<Void> running = consumers.submit(consumer);
+        channel.put(0);
+        channel.put(1);
+        Thread.sleep(20);
+        assertTrue(batches.isEmpty());
+        channel.close();
+        running.get(10, TimeUnit.SECONDS);
+        assertEquals(List.of(List.of(0, 1)), batches);
+        assertEquals(1, consumer.acknowledgedBatches());
+        assertEquals(2, consumer.acknowledgedElements());
+    }
+
+    public void testAThrowingHandlerStopsTheConsumerUnacknowledged() throws Exception {
+        IllegalStateException failure = new IllegalStateException("write failed");
+        BatchConsumer<Integer> consumer = new BatchConsumer<>(closedWith(10), 4, 1, TimeUnit.HOURS, batch -> {
+            record(batch);
+            if (batches.size() == 2)
+                throw failure;
+        });
+        try {
+            consumer.call();
+            fail();
+        } catch (IllegalStateException e) {
+            assertSame(failure, e);
+        }
+        assertEquals(2, batches.size());
+        assertEquals(1, consumer.acknowledgedBatches());
+        assertEquals(4, consumer.acknowledgedElements());
+    }
+
+    public void testTheBatchIsReadOnly() throws Exception {
+        BatchConsumer<Integer> consumer = new BatchConsumer<>(closedWith(1), 4, 1, TimeUnit.HOURS, batch -> {
+            record(batch);
+            batch.clear();
+        });
+        try {
+            consumer.call();
+            fail();
+        } catch (UnsupportedOperationException expected) {
+        }
+        assertEquals(0, consumer.acknowledgedBatches());
+    }
+
+    public void testInterruptingTheConsumerStopsIt() throws Exception {
+        RingBufferChannel<Integer> channel = new RingBufferChannel<>(16);
+        CountDownLatch stopped = new CountDownLatch(1);
+        Thread thread = new Thread(() -> {
+            try {
+                new BatchConsumer<>(channel, 4, 1, TimeUnit.HOURS, this::record).call();
+                if (Thread.currentThread().isInterrupted())
+                    stopped.countDown();
+            } catch (Exception e) {
+                // not stopped as it should
+            }
+        });
+        thread.start();
+        Thread.sleep(20);
+        thread.interrupt();
+        assertTrue(stopped.await(10, TimeUnit.SECONDS));
+        assertTrue(batches.isEmpty());
+    }
+
+    public void testABatchHoldsAtLeastOneElement() {
+        try {
+            new BatchConsumer<>(new RingBufferChannel<Integer>(16), 0, 1, TimeUnit.SECONDS, batch -> { });
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
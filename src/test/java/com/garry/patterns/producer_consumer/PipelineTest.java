@@ -0,0 +1,71 @@
+package com.garry.patterns.producer_consumer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+public class PipelineTest extends TestCase {
+
+    public void testOrderedPipelineKeepsTheSubmissionOrder() throws InterruptedException {
+        List<Integer> results = Collections.synchronizedList(new ArrayList<>());
+        Pipeline.Execution<Integer> execution = Pipeline.<Integer>create(8, true)
+                .then("square", 4, i -> i * i)
+                .then("odd", 3, i -> i % 2 == 0 ? null : i)
+                .start(results::add);
+        for (int i = 0; i < 1_000; i++) {
+            execution.submit(i);
+        }
+        execution.close();
+        assertTrue(execution.awaitTermination(30, TimeUnit.SECONDS));
+        assertEquals(500, results.size());
+        for (int i = 0; i < results.size(); i++) {
+            int odd = 2 * i + 1;
+            assertEquals(Integer.valueOf(odd * odd), results.get(i));
+        }
+        assertNull(execution.firstFailure());
+    }
+
+    // an Error drops the element like an exception: the workers go on and the order holds
+    public void testAStageThrowingAnErrorStillPassesTheTurn() throws InterruptedException {
+        List<Integer> results = Collections.synchronizedList(new ArrayList<>());
+        Pipeline.Execution<Integer> execution = Pipeline.<Integer>create(4, true)
+                .then("fail", 3, i -> {
+                    if (i % 10 == 0)
+                        throw new AssertionError("element " + i);
+                    return i;
+                })
+                .start(results::add);
+        for (int i = 0; i < 100; i++) {
+            execution.submit(i);
+        }
+        execution.close();
+        assertTrue(execution.awaitTermination(30, TimeUnit.SECONDS));
+        assertEquals(90, results.size());
+        for (int i = 1; i < results.size(); i++) {
+            assertTrue(results.get(i - 1) < results.get(i));
+        }
+        assertTrue(execution.firstFailure() instanceof AssertionError);
+        assertEquals(10, execution.statistics().get(0).failures);
+    }
+
+    public void testStopNowEndsAPipelineNobodyConsumes() throws InterruptedException {
+        Object gate = new Object();
+        Pipeline.Execution<Integer> execution = Pipeline.<Integer>create(2, true)
+                .then("blocked", 2, i -> {
+                    synchronized (gate) {
+                        return i;
+                    }
+                })
+                .start(i -> { });
+        synchronized (gate) {
+            for (int i = 0; i < 2; i++) {
+                execution.submit(i);
+            }
+            execution.stopNow();
+        }
+        assertTrue(execution.awaitTermination(30, TimeUnit.SECONDS));
+    }
+}
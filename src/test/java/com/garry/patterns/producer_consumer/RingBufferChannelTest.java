@@ -0,0 +1,185 @@
+package com.garry.patterns.producer_consumer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+public class RingBufferChannelTest extends TestCase {
+
+    public void testCapacityIsRoundedUpToAPowerOfTwo() {
+        assertEquals(8, new RingBufferChannel<String>(5).capacity());
+    }
+
+    public void testOfferFailsWhenFullAndPollWhenEmpty() {
+        RingBufferChannel<Integer> channel = new RingBufferChannel<>(2);
+        assertNull(channel.poll());
+        assertTrue(channel.offer(1));
+        assertTrue(channel.offer(2));
+        assertFalse(channel.offer(3));
+        assertEquals(Integer.valueOf(1), channel.poll());
+        assertTrue(channel.offer(3));
+        assertEquals(Integer.valueOf(2), channel.poll());
+        assertEquals(Integer.valueOf(3), channel.poll());
+        assertTrue(channel.isEmpty());
+    }
+
+    // closed: no more elements in, the ones already there still come out, then the end of the stream
+    public void testCloseLetsTheConsumersFinish() throws InterruptedException {
+        RingBufferChannel<Integer> channel = new RingBufferChannel<>(4);
+        channel.put(1);
+        channel.put(2);
+        channel.close();
+        assertTrue(channel.isClosed());
+        assertFalse(channel.isFinished());
+        try {
+            channel.offer(3);
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        assertEquals(2, channel.remaining());
+        assertEquals(Integer.valueOf(1), channel.take());
+        assertEquals(Integer.valueOf(2), channel.take());
+        assertNull(channel.take());
+        assertNull(channel.poll(1, TimeUnit.SECONDS));
+        assertTrue(channel.isFinished());
+        // closing again changes nothing
+        channel.close();
+        assertTrue(channel.isFinished());
+    }
+
+    public void testStopNowLeavesTheElementsInTheChannel() throws InterruptedException {
+        RingBufferChannel<Integer> channel = new RingBufferChannel<>(4);
+        channel.put(1);
+        channel.put(2);
+        assertEquals(2, channel.stopNow());
+        assertTrue(channel.isFinished());
+        assertNull(channel.take());
+        assertNull(channel.poll());
+        assertEquals(0, channel.drainTo(new ArrayList<>(), 10));
+    }
+
+    public void testCloseWakesBlockedConsumersAndProducers() throws Exception {
+        for (WaitStrategy strategy : strategies()) {
+            RingBufferChannel<Integer> empty = new RingBufferChannel<>(2, RingBufferChannel.Mode.MPMC, strategy);
+            AtomicReference<Object> taken = new AtomicReference<>("nothing yet");
+            Thread consumer = new Thread(() -> {
+                try {
+                    taken.set(empty.take());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            consumer.start();
+            Thread.sleep(20);
+            empty.close();
+            consumer.join(5_000);
+            assertFalse(consumer.isAlive());
+            assertNull(taken.get());
+
+            RingBufferChannel<Integer> full = new RingBufferChannel<>(1, RingBufferChannel.Mode.MPMC, strategy);
+            for (int i = 0; i < full.capacity(); i++) {
+                full.put(i);
+            }
+            AtomicReference<Throwable> rejected = new AtomicReference<>();
+            Thread producer = new Thread(() -> {
+                try {
+                    full.put(-1);
+                } catch (Throwable e) {
+                    rejected.set(e);
+                }
+            });
+            producer.start();
+            Thread.sleep(20);
+            full.close();
+            producer.join(5_000);
+            assertFalse(producer.isAlive());
+            assertTrue(rejected.get() instanceof IllegalStateException);
+            for (int i = 0; i < full.capacity(); i++) {
+                assertEquals(Integer.valueOf(i), full.take());
+            }
+            assertNull(full.take());
+        }
+    }
+
+    // several producers closing when done, several consumers: every element comes out exactly once
+    public void testEveryElementIsConsumedOnceUntilTheEndOfTheStream() throws Exception {
+        for (WaitStrategy strategy : strategies()) {
+            everyElementIsConsumedOnce(strategy, 64);
+        }
+    }
+
+    // producers and consumers both wait all the time: a wake up for the wrong side hangs
+    public void testATinyChannelWakesTheRightSide() throws Exception {
+        for (WaitStrategy strategy : strategies()) {
+            everyElementIsConsumedOnce(strategy, 2);
+        }
+    }
+
+    private static void everyElementIsConsumedOnce(WaitStrategy strategy, int capacity) throws Exception {
+        final int producers = 3;
+        final int consumers = 3;
+        final int perProducer = 20_000;
+        RingBufferChannel<Integer> channel = new RingBufferChannel<>(capacity, RingBufferChannel.Mode.MPMC, strategy);
+        AtomicIntegerArray seen = new AtomicIntegerArray(producers * perProducer);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> producing = new ArrayList<>();
+        List<Thread> consuming = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int first = p * perProducer;
+            producing.add(start(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    channel.put(first + i);
+                }
+            }, failure));
+        }
+        for (int c = 0; c < consumers; c++) {
+            consuming.add(start(() -> {
+                Integer element;
+                while ((element = channel.take()) != null) {
+                    seen.incrementAndGet(element);
+                }
+            }, failure));
+        }
+        for (Thread producer : producing) {
+            producer.join(30_000);
+            assertFalse(strategy + " producer hangs", producer.isAlive());
+        }
+        channel.close();
+        for (Thread consumer : consuming) {
+            consumer.join(30_000);
+            assertFalse(strategy + " consumer hangs", consumer.isAlive());
+        }
+        assertNull(failure.get());
+        for (int i = 0; i < seen.length(); i++) {
+            assertEquals(strategy + " element " + i, 1, seen.get(i));
+        }
+    }
+
+    private interface Body {
+        void run() throws Exception;
+    }
+
+    private static Thread start(Body body, AtomicReference<Throwable> failure) {
+        Thread thread = new Thread(() -> {
+            try {
+                body.run();
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private static List<WaitStrategy> strategies() {
+        List<WaitStrategy> strategies = new ArrayList<>();
+        strategies.add(new BlockingWaitStrategy());
+        strategies.add(new ParkingWaitStrategy());
+        strategies.add(new YieldingWaitStrategy());
+        return strategies;
+    }
+}
@@ -0,0 +1,117 @@
+package com.garry.patterns.rate_limiting;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+public class SlidingWindowRateLimiterTest extends TestCase {
+
+    public void testAtMostTheLimitInAWindow() {
+        SlidingWindowRateLimiter limiter = new SlidingWindowRateLimiter(5, 1, TimeUnit.HOURS);
+        assertEquals(5, limiter.availablePermits());
+        assertTrue(limiter.tryAcquire(3));
+        assertFalse(limiter.tryAcquire(3));
+        assertTrue(limiter.tryAcquire(2));
+        assertFalse(limiter.tryAcquire());
+        assertEquals(0, limiter.availablePermits());
+    }
+
+    public void testLimitsAreChecked() {
+        try {
+            new SlidingWindowRateLimiter(SlidingWindowRateLimiter.MAX_LIMIT + 1, 1, TimeUnit.SECONDS);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            new SlidingWindowRateLimiter(1, 0, TimeUnit.SECONDS);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            new SlidingWindowRateLimiter(5, 1, TimeUnit.SECONDS).tryAcquire(6);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    // a fixed window would let the whole limit through again right after its boundary
+    public void testThePreviousWindowStillCountsAfterTheBoundary() throws InterruptedException {
+        final int limit = 100;
+        final long window = TimeUnit.SECONDS.toNanos(1);
+        long start = System.nanoTime();
+        SlidingWindowRateLimiter limiter = new SlidingWindowRateLimiter(limit, 1, TimeUnit.SECONDS);
+        assertTrue(limiter.tryAcquire(limit));
+        assertTrue(System.nanoTime() - start < window);
+
+        TimeUnit.NANOSECONDS.sleep(window + window / 10 - (System.nanoTime() - start));
+        boolean all = limiter.tryAcquire(limit);
+        int available = limiter.availablePermits();
+        long elapsed = System.nanoTime() - start;
+        // in the second window, the share of the first one still inside the sliding window counts
+        if (elapsed < window + window / 2) {
+            assertFalse(all);
+            assertTrue(available < limit / 2);
+        }
+        Thread.sleep(TimeUnit.NANOSECONDS.toMillis(2 * window) + 100);
+        // two windows later the old counts are gone
+        assertEquals(limit, limiter.availablePermits());
+    }
+
+    public void testATimedAcquireGivesUpWhenThePermitsComeTooLate() throws InterruptedException {
+        SlidingWindowRateLimiter limiter = new SlidingWindowRateLimiter(2, 200, TimeUnit.MILLISECONDS);
+        assertTrue(limiter.tryAcquire(2));
+        long start = System.nanoTime();
+        assertFalse(limiter.tryAcquire(1, 1, TimeUnit.MILLISECONDS));
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(100));
+        assertTrue(limiter.tryAcquire(1, 5, TimeUnit.SECONDS));
+    }
+
+    public void testAsyncAcquiresCompleteWhenThePermitsFit() throws Exception {
+        SlidingWindowRateLimiter limiter = new SlidingWindowRateLimiter(2, 100, TimeUnit.MILLISECONDS);
+        List<CompletableFuture<Void>> acquired = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            acquired.add(limiter.acquireAsync());
+        }
+        assertTrue(acquired.get(0).isDone());
+        assertTrue(acquired.get(1).isDone());
+        assertFalse(acquired.get(2).isDone());
+        for (CompletableFuture<Void> future : acquired) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+    }
+
+    public void testACancelledAsyncAcquireStopsTrying() throws Exception {
+        SlidingWindowRateLimiter limiter = new SlidingWindowRateLimiter(1, 100, TimeUnit.MILLISECONDS);
+        assertTrue(limiter.tryAcquire());
+        CompletableFuture<Void> acquired = limiter.acquireAsync();
+        assertTrue(acquired.cancel(false));
+        Thread.sleep(300);
+        // nobody took the permit of the cancelled future
+        assertTrue(limiter.tryAcquire());
+    }
+
+    public void testConcurrentCallersShareTheLimit() throws InterruptedException {
+        final int limit = 1_000;
+        SlidingWindowRateLimiter limiter = new SlidingWindowRateLimiter(limit, 1, TimeUnit.HOURS);
+        AtomicInteger granted = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < limit; i++) {
+                    if (limiter.tryAcquire())
+                        granted.incrementAndGet();
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(limit, granted.get());
+    }
+}
@@ -0,0 +1,127 @@
+package com.garry.patterns.rate_limiting;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+public class TokenBucketRateLimiterTest extends TestCase {
+
+    public void testTheBucketStartsFullWithTheBurst() {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(10, 1, TimeUnit.HOURS, 3);
+        assertEquals(3, limiter.availablePermits());
+        assertTrue(limiter.tryAcquire(2));
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+        assertEquals(0, limiter.availablePermits());
+    }
+
+    // a refused call doesn't move the arrival time: asking again and again costs nothing
+    public void testARefusedCallTakesNothing() {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(3, 1, TimeUnit.HOURS);
+        assertTrue(limiter.tryAcquire(2));
+        for (int i = 0; i < 100; i++) {
+            assertFalse(limiter.tryAcquire(2));
+        }
+        assertEquals(1, limiter.availablePermits());
+        assertTrue(limiter.tryAcquire());
+    }
+
+    public void testPermitsOutsideOfTheBurstAreRejected() {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(10, 1, TimeUnit.SECONDS, 5);
+        try {
+            limiter.tryAcquire(6);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            limiter.tryAcquire(0);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            new TokenBucketRateLimiter(0, 1, TimeUnit.SECONDS);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testTheBucketRefillsOneTokenPerInterval() throws InterruptedException {
+        // one token every 100 ms
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(10, 1, TimeUnit.SECONDS, 1);
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+        Thread.sleep(150);
+        assertTrue(limiter.tryAcquire());
+    }
+
+    // a wait longer than the timeout gives up at once and reserves nothing
+    public void testATimedAcquireOnlyWaitsWhenItFits() throws InterruptedException {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(10, 1, TimeUnit.SECONDS, 1);
+        assertTrue(limiter.tryAcquire());
+        long start = System.nanoTime();
+        assertFalse(limiter.tryAcquire(1, 1, TimeUnit.MILLISECONDS));
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(50));
+
+        start = System.nanoTime();
+        assertTrue(limiter.tryAcquire(1, 5, TimeUnit.SECONDS));
+        long waited = System.nanoTime() - start;
+        assertTrue(waited >= TimeUnit.MILLISECONDS.toNanos(50));
+        // only one interval: the refused call above didn't reserve a token
+        assertTrue(waited < TimeUnit.MILLISECONDS.toNanos(190));
+    }
+
+    // waiting callers reserve their tokens one after the other
+    public void testWaitingCallersAreSpacedByTheInterval() throws Exception {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(20, 1, TimeUnit.SECONDS, 1);
+        long start = System.nanoTime();
+        List<CompletableFuture<Void>> acquired = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            acquired.add(limiter.acquireAsync());
+        }
+        assertTrue(acquired.get(0).isDone());
+        for (CompletableFuture<Void> future : acquired) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+        // four intervals of 50 ms after the first token
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(190));
+        assertTrue(limiter.availablePermits() <= 0);
+    }
+
+    public void testAnInterruptedWaitThrows() throws InterruptedException {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(1, 1, TimeUnit.SECONDS);
+        assertTrue(limiter.tryAcquire());
+        Thread.currentThread().interrupt();
+        try {
+            limiter.tryAcquire(1, 5, TimeUnit.SECONDS);
+            fail();
+        } catch (InterruptedException expected) {
+        }
+        assertFalse(Thread.interrupted());
+    }
+
+    // one CAS per call, no lock: concurrent callers never get more than the bucket holds
+    public void testConcurrentCallersShareTheBurst() throws InterruptedException {
+        final int burst = 1_000;
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(burst, 1, TimeUnit.HOURS);
+        AtomicInteger granted = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < burst; i++) {
+                    if (limiter.tryAcquire())
+                        granted.incrementAndGet();
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(burst, granted.get());
+    }
+}
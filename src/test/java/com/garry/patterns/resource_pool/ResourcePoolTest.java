@@ -0,0 +1,428 @@
+package com.garry.patterns.resource_pool;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+public class ResourcePoolTest extends TestCase {
+
+    // equal to each other, distinct objects: the pool must tell them apart
+    private static List<String> equalResources(int count) {
+        List<String> resources = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            resources.add(new String("connection"));
+        }
+        return resources;
+    }
+
+    public void testEqualResourcesAreDistinctEntries() throws InterruptedException {
+        List<String> resources = equalResources(3);
+        ResourcePool<String> pool = new ResourcePool<>(3, resources);
+        List<String> borrowed = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            borrowed.add(pool.get());
+        }
+        assertEquals(0, pool.availableResources());
+        for (String resource : borrowed) {
+            pool.release(resource);
+        }
+        ResourcePoolStatistics statistics = pool.statistics();
+        assertEquals(3, statistics.idle);
+        assertEquals(0, statistics.active);
+        pool.close();
+    }
+
+    public void testTheSameResourceTwiceIsRejected() {
+        String resource = "connection";
+        try {
+            new ResourcePool<>(2, Arrays.asList(resource, resource));
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testReleaseChecksTheResource() throws InterruptedException {
+        ResourcePool<String> pool = new ResourcePool<>(1, equalResources(1));
+        String resource = pool.get();
+        // equal to the pooled one, but not it
+        try {
+            pool.release(new String("connection"));
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        pool.release(resource);
+        try {
+            pool.release(resource);
+            fail("released twice");
+        } catch (IllegalStateException expected) {
+        }
+        assertEquals(1, pool.availableResources());
+        pool.close();
+    }
+
+    public void testExhaustedPoolTimesOut() throws InterruptedException {
+        ResourcePool<String> pool = new ResourcePool<>(2, equalResources(2));
+        String first = pool.get();
+        String second = pool.get();
+        assertNotSame(first, second);
+
+        long start = System.nanoTime();
+        assertNull(pool.get(1));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(900));
+        assertEquals(1, pool.statistics().timeouts);
+
+        pool.release(first);
+        assertSame(first, pool.get(1));
+        pool.close();
+    }
+
+    public void testWaiterGetsTheReleasedResource() throws Exception {
+        ResourcePool<String> pool = new ResourcePool<>(1, equalResources(1));
+        String resource = pool.get();
+        AtomicReference<String> got = new AtomicReference<>();
+        Thread waiter = new Thread(() -> {
+            try {
+                got.set(pool.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        waiter.start();
+        while (pool.statistics().waiting == 0) {
+            Thread.sleep(1);
+        }
+        pool.release(resource);
+        waiter.join(5_000);
+        assertSame(resource, got.get());
+        pool.close();
+    }
+
+    // never more borrowers holding a resource than resources, and none lost
+    public void testConcurrentBorrowersNeverShareAResource() throws Exception {
+        final int size = 4;
+        final int threads = 8;
+        final int rounds = 20_000;
+        List<String> resources = equalResources(size);
+        ResourcePool<String> pool = new ResourcePool<>(size, resources);
+        AtomicInteger[] holders = new AtomicInteger[size];
+        for (int i = 0; i < size; i++) {
+            holders[i] = new AtomicInteger();
+        }
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        CyclicBarrier start = new CyclicBarrier(threads);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < rounds; i++) {
+                        String resource = pool.get();
+                        AtomicInteger holder = holders[indexOf(resources, resource)];
+                        if (holder.incrementAndGet() != 1)
+                            throw new AssertionError("resource shared");
+                        holder.decrementAndGet();
+                        pool.release(resource);
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        assertNull(failure.get());
+        assertEquals(size, pool.availableResources());
+        assertEquals(size, pool.statistics().idle);
+        pool.close();
+    }
+
+    public void testFactoryResourcesAreKeptApartByIdentity() throws InterruptedException {
+        AtomicInteger destroyed = new AtomicInteger();
+        ResourcePool<String> pool = new ResourcePool<>(new ResourcePool.ResourceFactory<String>() {
+            @Override
+            public String create() {
+                return new String("connection");
+            }
+
+            @Override
+            public void destroy(String resource) {
+                destroyed.incrementAndGet();
+            }
+        }, 0, 3);
+        List<String> borrowed = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            borrowed.add(pool.get());
+        }
+        assertEquals(3, pool.statistics().created);
+        for (String resource : borrowed) {
+            pool.release(resource);
+        }
+        assertEquals(3, pool.statistics().idle);
+        pool.close();
+        assertEquals(3, destroyed.get());
+    }
+
+    // every close but one is a no-op, the waiter is failed once
+    public void testConcurrentClosesWakeTheWaitersOnce() throws Exception {
+        for (int run = 0; run < 50; run++) {
+            ResourcePool<String> pool = new ResourcePool<>(1, equalResources(1));
+            String resource = pool.get();
+            AtomicReference<Throwable> woken = new AtomicReference<>();
+            Thread waiter = new Thread(() -> {
+                try {
+                    pool.get();
+                } catch (Throwable e) {
+                    woken.set(e);
+                }
+            });
+            waiter.start();
+            CyclicBarrier start = new CyclicBarrier(4);
+            AtomicReference<Throwable> closeFailure = new AtomicReference<>();
+            List<Thread> closers = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                Thread closer = new Thread(() -> {
+                    try {
+                        start.await();
+                        pool.close();
+                    } catch (Throwable e) {
+                        closeFailure.compareAndSet(null, e);
+                    }
+                });
+                closers.add(closer);
+                closer.start();
+            }
+            for (Thread closer : closers) {
+                closer.join();
+            }
+            waiter.join(5_000);
+            assertNull(closeFailure.get());
+            assertTrue(woken.get() instanceof IllegalStateException);
+            // a borrowed resource can still come back after the close
+            pool.release(resource);
+            try {
+                pool.get();
+                fail();
+            } catch (IllegalStateException expected) {
+            }
+        }
+    }
+
+    public void testFactoryPoolKeepsItsMinimumAndEvictsIdleResources() throws InterruptedException {
+        AtomicInteger live = new AtomicInteger();
+        ResourcePool<String> pool = new ResourcePool<>(new ResourcePool.ResourceFactory<String>() {
+            @Override
+            public String create() {
+                live.incrementAndGet();
+                return new String("connection");
+            }
+
+            @Override
+            public void destroy(String resource) {
+                live.decrementAndGet();
+            }
+        }, 1, 4, 200, 0, TimeUnit.MILLISECONDS, false);
+        List<String> borrowed = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            borrowed.add(pool.get());
+        }
+        for (String resource : borrowed) {
+            pool.release(resource);
+        }
+        assertEquals(4, live.get());
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (live.get() > 1 && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(1, live.get());
+        assertEquals(1, pool.statistics().size);
+        pool.close();
+        assertEquals(0, live.get());
+    }
+
+    public void testLeakIsReportedOnceWithTheStackOfTheBorrower() throws InterruptedException {
+        ResourcePool<String> pool = new ResourcePool<>(2, equalResources(2));
+        List<Throwable> reports = new CopyOnWriteArrayList<>();
+        pool.detectLeaks(100, TimeUnit.MILLISECONDS, reports::add);
+
+        String returnedInTime = pool.get();
+        pool.release(returnedInTime);
+        String leaked = borrowAndForget(pool);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (reports.isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        // a few more sweeps: the same borrow isn't reported again
+        Thread.sleep(300);
+        assertEquals(1, reports.size());
+        assertEquals(1, pool.statistics().leaksReported);
+        Throwable borrowedBy = reports.get(0).getCause();
+        assertNotNull(borrowedBy);
+        boolean found = false;
+        for (StackTraceElement frame : borrowedBy.getStackTrace()) {
+            found |= frame.getMethodName().equals("borrowAndForget");
+        }
+        assertTrue("the report doesn't point at the borrower", found);
+
+        pool.release(leaked);
+        pool.close();
+    }
+
+    public void testWaitTimesAreRecorded() throws Exception {
+        ResourcePool<String> pool = new ResourcePool<>(1, equalResources(1));
+        String resource = pool.get();
+        Thread releaser = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            pool.release(resource);
+        });
+        releaser.start();
+        pool.release(pool.get());
+        releaser.join();
+        ResourcePoolStatistics statistics = pool.statistics();
+        assertEquals(2, statistics.borrows);
+        assertTrue(statistics.waitMax >= TimeUnit.MILLISECONDS.toNanos(40));
+        pool.close();
+    }
+
+    private static String borrowAndForget(ResourcePool<String> pool) throws InterruptedException {
+        return pool.get();
+    }
+
+    public void testReleaseHandsTheResourceToTheOldestFuture() throws Exception {
+        ResourcePool<String> pool = new ResourcePool<>(1, equalResources(1));
+        String resource = pool.borrowAsync().get();
+        CompletableFuture<String> first = pool.borrowAsync();
+        CompletableFuture<String> second = pool.borrowAsync();
+        assertFalse(first.isDone());
+        pool.release(resource);
+        assertSame(resource, first.getNow(null));
+        assertFalse(second.isDone());
+        pool.release(resource);
+        assertSame(resource, second.getNow(null));
+        pool.release(resource);
+        assertEquals(1, pool.availableResources());
+        pool.close();
+    }
+
+    public void testTimedOutAndCancelledFuturesLeaveTheQueue() throws Exception {
+        ResourcePool<String> pool = new ResourcePool<>(1, equalResources(1));
+        String resource = pool.get();
+        CompletableFuture<String> timedOut = pool.borrowAsync(50, TimeUnit.MILLISECONDS);
+        CompletableFuture<String> cancelled = pool.borrowAsync();
+        CompletableFuture<String> waiting = pool.borrowAsync();
+        try {
+            timedOut.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        assertTrue(cancelled.cancel(false));
+        // get() may return before the pool's own callback on the timed out future ran
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (pool.statistics().timeouts == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(1, pool.statistics().timeouts);
+        assertEquals(1, pool.statistics().waiting);
+        pool.release(resource);
+        assertSame(resource, waiting.getNow(null));
+        pool.release(resource);
+        pool.close();
+    }
+
+    public void testCloseFailsTheQueuedFutures() throws Exception {
+        ResourcePool<String> pool = new ResourcePool<>(1, equalResources(1));
+        String resource = pool.get();
+        CompletableFuture<String> waiting = pool.borrowAsync();
+        pool.close();
+        try {
+            waiting.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertTrue(pool.borrowAsync().isCompletedExceptionally());
+        pool.release(resource);
+    }
+
+    // threads and futures, some giving up, on a few resources: nothing is shared, nothing is lost
+    public void testThreadsAndFuturesShareThePool() throws Exception {
+        final int size = 3;
+        final int threads = 4;
+        final int rounds = 5_000;
+        List<String> resources = equalResources(size);
+        ResourcePool<String> pool = new ResourcePool<>(size, resources);
+        AtomicInteger[] holders = new AtomicInteger[size];
+        for (int i = 0; i < size; i++) {
+            holders[i] = new AtomicInteger();
+        }
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(2 * threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                try {
+                    for (int i = 0; i < rounds; i++) {
+                        String resource = pool.get(1);
+                        if (resource != null)
+                            use(resources, holders, resource, pool);
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+            new Thread(() -> {
+                try {
+                    for (int i = 0; i < rounds; i++) {
+                        CompletableFuture<String> future = pool.borrowAsync();
+                        if (i % 7 == 0 && future.cancel(false))
+                            continue;
+                        use(resources, holders, future.get(10, TimeUnit.SECONDS), pool);
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        assertNull(failure.get());
+        assertEquals(size, pool.availableResources());
+        assertEquals(0, pool.statistics().waiting);
+        pool.close();
+    }
+
+    private static void use(List<String> resources, AtomicInteger[] holders, String resource, ResourcePool<String> pool) {
+        AtomicInteger holder = holders[indexOf(resources, resource)];
+        if (holder.incrementAndGet() != 1)
+            throw new AssertionError("resource shared");
+        holder.decrementAndGet();
+        pool.release(resource);
+    }
+
+    private static int indexOf(List<String> resources, String resource) {
+        for (int i = 0; i < resources.size(); i++) {
+            if (resources.get(i) == resource)
+                return i;
+        }
+        throw new AssertionError("not a pooled resource");
+    }
+}
@@ -0,0 +1,147 @@
+package com.garry.patterns.resource_pool;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+public class StripedResourcePoolTest extends TestCase {
+
+    private static List<String> equalResources(int count) {
+        List<String> resources = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            resources.add(new String("connection"));
+        }
+        return resources;
+    }
+
+    public void testShardsAreAPowerOfTwoNoBiggerThanThePool() {
+        assertEquals(4, new StripedResourcePool<>(8, equalResources(8), 3, false).numShards());
+        assertEquals(2, new StripedResourcePool<>(2, equalResources(2), 16, false).numShards());
+        assertEquals(1, new StripedResourcePool<>(1, equalResources(1), 16, false).numShards());
+    }
+
+    public void testEqualResourcesAreDistinctEntries() throws InterruptedException {
+        StripedResourcePool<String> pool = new StripedResourcePool<>(4, equalResources(4), 2, false);
+        List<String> borrowed = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            borrowed.add(pool.get());
+        }
+        assertEquals(0, pool.availableResources());
+        for (String resource : borrowed) {
+            pool.release(resource);
+        }
+        assertEquals(4, pool.availableResources());
+        try {
+            pool.release(new String("connection"));
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            pool.release(borrowed.get(0));
+            fail("released twice");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    // the home shard is empty, the borrower steals from the others
+    public void testBorrowerStealsFromOtherShards() throws InterruptedException {
+        StripedResourcePool<String> pool = new StripedResourcePool<>(4, equalResources(4), 4, false);
+        for (int i = 0; i < 4; i++) {
+            assertNotNull(pool.get(0));
+        }
+        assertNull(pool.get(0));
+    }
+
+    public void testExhaustedPoolTimesOutAndWaitersAreServed() throws Exception {
+        StripedResourcePool<String> pool = new StripedResourcePool<>(1, equalResources(1), 1, true);
+        String resource = pool.get();
+        long start = System.nanoTime();
+        assertNull(pool.get(1));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(900));
+
+        AtomicReference<String> got = new AtomicReference<>();
+        Thread waiter = new Thread(() -> {
+            try {
+                got.set(pool.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        waiter.start();
+        Thread.sleep(50);
+        pool.release(resource);
+        waiter.join(5_000);
+        assertSame(resource, got.get());
+    }
+
+    public void testInterruptedWaiterLeavesTheQueue() throws Exception {
+        StripedResourcePool<String> pool = new StripedResourcePool<>(1, equalResources(1), 1, true);
+        String resource = pool.get();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread waiter = new Thread(() -> {
+            try {
+                pool.get();
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        waiter.start();
+        Thread.sleep(50);
+        waiter.interrupt();
+        waiter.join(5_000);
+        assertTrue(failure.get() instanceof InterruptedException);
+        // nobody is waiting anymore, the resource goes back to its shard
+        pool.release(resource);
+        assertEquals(1, pool.availableResources());
+    }
+
+    public void testConcurrentBorrowersNeverShareAResource() throws Exception {
+        for (boolean fair : new boolean[] {false, true}) {
+            final int size = 4;
+            final int threads = 8;
+            final int rounds = 10_000;
+            List<String> resources = equalResources(size);
+            StripedResourcePool<String> pool = new StripedResourcePool<>(size, resources, 2, fair);
+            AtomicInteger[] holders = new AtomicInteger[size];
+            for (int i = 0; i < size; i++) {
+                holders[i] = new AtomicInteger();
+            }
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            CountDownLatch done = new CountDownLatch(threads);
+            for (int t = 0; t < threads; t++) {
+                new Thread(() -> {
+                    try {
+                        for (int i = 0; i < rounds; i++) {
+                            String resource = pool.get();
+                            AtomicInteger holder = holders[indexOf(resources, resource)];
+                            if (holder.incrementAndGet() != 1)
+                                throw new AssertionError("resource shared");
+                            holder.decrementAndGet();
+                            pool.release(resource);
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        done.countDown();
+                    }
+                }).start();
+            }
+            assertTrue(done.await(60, TimeUnit.SECONDS));
+            assertNull(failure.get());
+            assertEquals(size, pool.availableResources());
+        }
+    }
+
+    private static int indexOf(List<String> resources, String resource) {
+        for (int i = 0; i < resources.size(); i++) {
+            if (resources.get(i) == resource)
+                return i;
+        }
+        throw new AssertionError("not a pooled resource");
+    }
+}
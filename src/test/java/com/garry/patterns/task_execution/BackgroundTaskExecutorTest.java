@@ -0,0 +1,134 @@
+package com.garry.patterns.task_execution;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+public class BackgroundTaskExecutorTest extends TestCase {
+
+    private BackgroundTaskExecutor executor;
+
+    @Override
+    protected void tearDown() {
+        if (executor != null)
+            executor.shutdownNowTasks(10, TimeUnit.SECONDS, (pool, e) -> { });
+    }
+
+    // the submissions while the key's task is queued or running share its Future
+    public void testSingleFlightRunsOneTaskPerKey() throws Exception {
+        executor = new BackgroundTaskExecutor(4);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger runs = new AtomicInteger();
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            futures.add(executor.executeSingleFlight("key", () -> {
+                release.await();
+                return runs.incrementAndGet();
+            }));
+        }
+        Future<Integer> other = executor.executeSingleFlight("other key", () -> -1);
+        assertEquals(Integer.valueOf(-1), other.get(10, TimeUnit.SECONDS));
+        release.countDown();
+        for (Future<Integer> future : futures) {
+            assertSame(futures.get(0), future);
+            assertEquals(Integer.valueOf(1), future.get(10, TimeUnit.SECONDS));
+        }
+        assertEquals(1, runs.get());
+
+        // done, the key is free again
+        Future<Integer> next = executor.executeSingleFlight("key", runs::incrementAndGet);
+        assertNotSame(futures.get(0), next);
+        assertEquals(Integer.valueOf(2), next.get(10, TimeUnit.SECONDS));
+    }
+
+    public void testAFailedSingleFlightFreesItsKey() throws Exception {
+        executor = new BackgroundTaskExecutor(2);
+        Future<String> failed = executor.executeSingleFlight("key", () -> {
+            throw new IllegalStateException("load failed");
+        });
+        try {
+            failed.get(10, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertEquals("loaded", executor.executeSingleFlight("key", () -> "loaded").get(10, TimeUnit.SECONDS));
+    }
+
+    // a keyed task the lanes reject is cancelled by them, and leaves its key
+    public void testARejectedSingleFlightFreesItsKey() throws Exception {
+        executor = new BackgroundTaskExecutor(1, 1, PriorityLaneExecutor.RejectionPolicy.FAIL_FAST);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute(() -> {
+            started.countDown();
+            release.await();
+            return null;
+        });
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        // the lane is full
+        Future<Object> queued = executor.execute(() -> null);
+        Future<String> rejected = executor.executeSingleFlight("key", () -> "run");
+        assertTrue(rejected.isCancelled());
+        release.countDown();
+        queued.get(10, TimeUnit.SECONDS);
+        assertEquals("run", executor.executeSingleFlight("key", () -> "run").get(10, TimeUnit.SECONDS));
+    }
+
+    // a burst runs once, window after its last submission, with the last task
+    public void testDebouncedSubmissionsOfABurstRunOnce() throws Exception {
+        executor = new BackgroundTaskExecutor(2);
+        AtomicInteger runs = new AtomicInteger();
+        List<Future<Integer>> futures = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 1; i <= 5; i++) {
+            int version = i;
+            futures.add(executor.executeDebounced("key", () -> {
+                runs.incrementAndGet();
+                return version;
+            }, 200, TimeUnit.MILLISECONDS));
+            Thread.sleep(10);
+        }
+        assertFalse(futures.get(0).isDone());
+        for (Future<Integer> future : futures) {
+            assertSame(futures.get(0), future);
+            assertEquals(Integer.valueOf(5), future.get(10, TimeUnit.SECONDS));
+        }
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(200));
+        assertEquals(1, runs.get());
+
+        // the window ended, the next submission starts a new burst
+        Future<Integer> next = executor.executeDebounced("key", () -> 6, 10, TimeUnit.MILLISECONDS);
+        assertNotSame(futures.get(0), next);
+        assertEquals(Integer.valueOf(6), next.get(10, TimeUnit.SECONDS));
+    }
+
+    public void testTheKeysAreDebouncedSeparately() throws Exception {
+        executor = new BackgroundTaskExecutor(2);
+        Future<String> first = executor.executeDebounced("first", () -> "first", 20, TimeUnit.MILLISECONDS);
+        Future<String> second = executor.executeDebounced("second", () -> "second", 20, TimeUnit.MILLISECONDS);
+        assertNotSame(first, second);
+        assertEquals("first", first.get(10, TimeUnit.SECONDS));
+        assertEquals("second", second.get(10, TimeUnit.SECONDS));
+    }
+
+    public void testShutdownRunsThePendingBursts() throws Exception {
+        executor = new BackgroundTaskExecutor(2);
+        Future<String> burst = executor.executeDebounced("key", () -> "ran", 1, TimeUnit.HOURS);
+        executor.shutdownTasks(10, TimeUnit.SECONDS, (pool, e) -> { });
+        assertEquals("ran", burst.get(10, TimeUnit.SECONDS));
+    }
+
+    public void testShutdownNowCancelsThePendingBursts() {
+        executor = new BackgroundTaskExecutor(2);
+        Future<String> burst = executor.executeDebounced("key", () -> "ran", 1, TimeUnit.HOURS);
+        executor.shutdownNowTasks(10, TimeUnit.SECONDS, (pool, e) -> { });
+        assertTrue(burst.isCancelled());
+    }
+}
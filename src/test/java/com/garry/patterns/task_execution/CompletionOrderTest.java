@@ -0,0 +1,235 @@
+package com.garry.patterns.task_execution;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+public class CompletionOrderTest extends TestCase {
+
+    // a thread per task
+    private static final Executor THREADS = runnable -> new Thread(runnable).start();
+
+    // runs the task in the constructor of CompletionOrder, completed before anyone subscribes
+    private static final Executor CALLER = Runnable::run;
+
+    private static Callable<Integer> after(CountDownLatch latch, int result) {
+        return () -> {
+            latch.await();
+            return result;
+        };
+    }
+
+    public void testResultsComeInCompletionOrder() throws Exception {
+        CountDownLatch first = new CountDownLatch(1);
+        CountDownLatch second = new CountDownLatch(1);
+        CompletionOrder<Integer> order = new CompletionOrder<>(
+                List.of(after(second, 1), after(first, 2), () -> 3), THREADS);
+        assertEquals(Integer.valueOf(3), order.take().get());
+        first.countDown();
+        assertEquals(Integer.valueOf(2), order.take().get());
+        assertNull(order.poll(10, TimeUnit.MILLISECONDS));
+        second.countDown();
+        assertEquals(Integer.valueOf(1), order.take().get());
+        assertEquals(0, order.remaining());
+        assertNull(order.take());
+    }
+
+    public void testCompleteWithinCancelsTheLateTasks() throws Exception {
+        CountDownLatch never = new CountDownLatch(1);
+        Callable<Integer> failing = () -> {
+            throw new IllegalStateException("task failed");
+        };
+        CompletionOrder<Integer> order = new CompletionOrder<>(
+                List.of(() -> 1, after(never, 0), failing, () -> 2), THREADS);
+        List<Exception> failures = new CopyOnWriteArrayList<>();
+        long start = System.nanoTime();
+        List<Integer> results = order.completeWithin(200, TimeUnit.MILLISECONDS,
+                (future, e) -> failures.add(e));
+        long elapsed = System.nanoTime() - start;
+
+        Collections.sort(results);
+        assertEquals(List.of(1, 2), results);
+        assertEquals(1, failures.size());
+        assertTrue(failures.get(0).getCause() instanceof IllegalStateException);
+        assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(150));
+        assertTrue(elapsed < TimeUnit.SECONDS.toNanos(5));
+        // the late task was cancelled and is handed out as such
+        Future<Integer> late = order.take();
+        assertTrue(late.isCancelled());
+    }
+
+    private static class Recorder implements Flow.Subscriber<Integer> {
+        final List<String> signals = new CopyOnWriteArrayList<>();
+        final CountDownLatch done = new CountDownLatch(1);
+        final long initialRequest;
+        volatile Flow.Subscription subscription;
+        volatile Throwable error;
+
+        Recorder(long initialRequest) {
+            this.initialRequest = initialRequest;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            signals.add("subscribe");
+            if (initialRequest > 0)
+                subscription.request(initialRequest);
+        }
+
+        @Override
+        public void onNext(Integer item) {
+            signals.add("next " + item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            signals.add("error");
+            done.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            signals.add("complete");
+            done.countDown();
+        }
+    }
+
+    public void testThePublisherHonoursTheDemand() throws Exception {
+        CompletionOrder<Integer> order = new CompletionOrder<>(List.of(() -> 1, () -> 2, () -> 3), CALLER);
+        Recorder recorder = new Recorder(1);
+        order.publisher().subscribe(recorder);
+        assertEquals(List.of("subscribe", "next 1"), recorder.signals);
+        recorder.subscription.request(2);
+        assertTrue(recorder.done.await(10, TimeUnit.SECONDS));
+        assertEquals(List.of("subscribe", "next 1", "next 2", "next 3", "complete"), recorder.signals);
+    }
+
+    // nothing to wait for, the subscriber is still told the stream ended
+    public void testNoTasksCompleteThePublisherRightAway() throws Exception {
+        CompletionOrder<Integer> order = new CompletionOrder<>(List.of(), THREADS);
+        Recorder recorder = new Recorder(0);
+        order.publisher().subscribe(recorder);
+        assertTrue(recorder.done.await(10, TimeUnit.SECONDS));
+        assertEquals(List.of("subscribe", "complete"), recorder.signals);
+        assertNull(order.take());
+    }
+
+    // whichever kind of subscriber came first, the second one is refused
+    public void testTheResultsHaveASingleSubscriber() throws Exception {
+        CompletionOrder<Integer> order = new CompletionOrder<>(List.of(() -> 1), CALLER);
+        order.subscribe(future -> { });
+        Recorder second = new Recorder(1);
+        order.publisher().subscribe(second);
+        assertEquals(List.of("subscribe", "error"), second.signals);
+        assertTrue(second.error instanceof IllegalStateException);
+        try {
+            order.subscribe(future -> { });
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    // concurrent subscribers: exactly one is accepted, and onSubscribe comes before anything else
+    public void testConcurrentSubscribersAreRefusedAtomically() throws Exception {
+        for (int round = 0; round < 200; round++) {
+            CompletionOrder<Integer> order = new CompletionOrder<>(List.of(() -> 1, () -> 2), CALLER);
+            Flow.Publisher<Integer> publisher = order.publisher();
+            List<Recorder> recorders = new ArrayList<>();
+            List<Thread> threads = new ArrayList<>();
+            CountDownLatch go = new CountDownLatch(1);
+            for (int i = 0; i < 3; i++) {
+                Recorder recorder = new Recorder(Long.MAX_VALUE);
+                recorders.add(recorder);
+                Thread thread = new Thread(() -> {
+                    try {
+                        go.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    publisher.subscribe(recorder);
+                });
+                threads.add(thread);
+                thread.start();
+            }
+            go.countDown();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            int accepted = 0;
+            for (Recorder recorder : recorders) {
+                assertEquals("subscribe", recorder.signals.get(0));
+                if (recorder.error == null) {
+                    accepted++;
+                    assertEquals(List.of("subscribe", "next 1", "next 2", "complete"), recorder.signals);
+                }
+            }
+            assertEquals(1, accepted);
+        }
+    }
+
+    // cancelled tasks are skipped without demand: the stream may complete before any request,
+    // but never before onSubscribe
+    public void testOnSubscribeComesFirstEvenWhenEverythingIsCancelled() throws Exception {
+        CountDownLatch never = new CountDownLatch(1);
+        CompletionOrder<Integer> order = new CompletionOrder<>(List.of(after(never, 1), after(never, 2)), THREADS);
+        order.cancelRemaining();
+        Recorder recorder = new Recorder(0);
+        order.publisher().subscribe(recorder);
+        assertTrue(recorder.done.await(10, TimeUnit.SECONDS));
+        assertEquals(List.of("subscribe", "complete"), recorder.signals);
+    }
+
+    // a subscriber whose onNext throws is done with: the error goes to onError, the tasks still
+    // running are cancelled, and nothing is delivered after it
+    public void testAThrowingSubscriberIsCancelled() throws Exception {
+        CountDownLatch never = new CountDownLatch(1);
+        CompletionOrder<Integer> order = new CompletionOrder<>(
+                List.of(() -> 1, after(never, 2), () -> 3), THREADS);
+        AtomicInteger delivered = new AtomicInteger();
+        Recorder recorder = new Recorder(Long.MAX_VALUE) {
+            @Override
+            public void onNext(Integer item) {
+                delivered.incrementAndGet();
+                throw new IllegalArgumentException("bad item " + item);
+            }
+        };
+        order.publisher().subscribe(recorder);
+        assertTrue(recorder.done.await(10, TimeUnit.SECONDS));
+        assertTrue(recorder.error instanceof IllegalArgumentException);
+        assertEquals(1, delivered.get());
+        // the blocked task was cancelled, its completion doesn't reach the subscriber
+        Thread.sleep(50);
+        assertEquals(1, delivered.get());
+        assertEquals(List.of("subscribe", "error"), recorder.signals);
+    }
+
+    public void testAThrowingCallbackReachesTheCaller() throws Exception {
+        CompletionOrder<Integer> order = new CompletionOrder<>(List.of(() -> 1, () -> 2), CALLER);
+        List<Integer> seen = new CopyOnWriteArrayList<>();
+        try {
+            order.subscribe(future -> {
+                try {
+                    seen.add(future.get());
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+                throw new UnsupportedOperationException("callback failed");
+            });
+            fail();
+        } catch (UnsupportedOperationException expected) {
+        }
+        assertEquals(List.of(1), seen);
+    }
+}
@@ -0,0 +1,229 @@
+package com.garry.patterns.task_execution;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+import com.garry.patterns.task_execution.PriorityLaneExecutor.Priority;
+import com.garry.patterns.task_execution.PriorityLaneExecutor.RejectionPolicy;
+
+public class PriorityLaneExecutorTest extends TestCase {
+
+    private PriorityLaneExecutor executor;
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @Override
+    protected void tearDown() throws Exception {
+        release.countDown();
+        if (executor != null) {
+            executor.shutdownNow();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        }
+    }
+
+    // the only worker is busy until release, the tasks submitted meanwhile stay in their lanes
+    private void blockTheWorker() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        executor.execute(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, Priority.HIGH);
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+    }
+
+    public void testTheMostUrgentLaneGoesFirst() throws Exception {
+        executor = new PriorityLaneExecutor(1, 10, RejectionPolicy.FAIL_FAST);
+        blockTheWorker();
+        List<String> order = new CopyOnWriteArrayList<>();
+        executor.execute(() -> order.add("low 1"), Priority.LOW);
+        executor.execute(() -> order.add("normal"), Priority.NORMAL);
+        executor.execute(() -> order.add("low 2"), Priority.LOW);
+        Future<?> last = executor.submit(() -> order.add("high"), Priority.HIGH);
+        assertEquals(2, executor.queued(Priority.LOW));
+        release.countDown();
+        last.get(10, TimeUnit.SECONDS);
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(List.of("high", "normal", "low 1", "low 2"), order);
+    }
+
+    public void testAFullLaneRejectsOnlyItsOwnTasks() throws Exception {
+        executor = new PriorityLaneExecutor(1, 2, RejectionPolicy.FAIL_FAST);
+        blockTheWorker();
+        executor.execute(() -> { }, Priority.LOW);
+        executor.execute(() -> { }, Priority.LOW);
+        try {
+            executor.execute(() -> { }, Priority.LOW);
+            fail();
+        } catch (TaskRejectedException e) {
+            assertEquals(Priority.LOW, e.priority());
+            assertEquals(TaskRejectedException.Reason.FULL, e.reason());
+        }
+        assertEquals(1, executor.rejected(Priority.LOW));
+        // the other lanes still have room
+        executor.execute(() -> { }, Priority.HIGH);
+        assertEquals(0, executor.rejected(Priority.HIGH));
+    }
+
+    public void testDropOldestCancelsTheOldestTask() throws Exception {
+        executor = new PriorityLaneExecutor(1, 2, RejectionPolicy.DROP_OLDEST);
+        blockTheWorker();
+        Future<?> oldest = executor.submit(() -> { }, Priority.NORMAL);
+        Future<?> second = executor.submit(() -> { }, Priority.NORMAL);
+        Future<?> newest = executor.submit(() -> { }, Priority.NORMAL);
+        assertTrue(oldest.isCancelled());
+        assertEquals(1, executor.rejected(Priority.NORMAL));
+        release.countDown();
+        second.get(10, TimeUnit.SECONDS);
+        newest.get(10, TimeUnit.SECONDS);
+    }
+
+    public void testCallerRunsATaskThatDoesntFit() throws Exception {
+        executor = new PriorityLaneExecutor(1, 1, RejectionPolicy.CALLER_RUNS);
+        blockTheWorker();
+        executor.execute(() -> { }, Priority.NORMAL);
+        AtomicReference<Thread> ranOn = new AtomicReference<>();
+        executor.execute(() -> ranOn.set(Thread.currentThread()), Priority.NORMAL);
+        assertSame(Thread.currentThread(), ranOn.get());
+    }
+
+    // CoDel: a lane whose tasks waited above target for a whole interval refuses new ones,
+    // until it's emptied
+    public void testAStandingQueueOverloadsItsLane() throws Exception {
+        executor = new PriorityLaneExecutor(1, 100, RejectionPolicy.FAIL_FAST,
+                5, 50, TimeUnit.MILLISECONDS);
+        blockTheWorker();
+        executor.execute(() -> { }, Priority.LOW);
+        Thread.sleep(20);
+        // above target for the first time, the interval starts
+        executor.execute(() -> { }, Priority.LOW);
+        assertFalse(executor.isOverloaded(Priority.LOW));
+        Thread.sleep(80);
+        try {
+            executor.execute(() -> { }, Priority.LOW);
+            fail();
+        } catch (TaskRejectedException e) {
+            assertEquals(TaskRejectedException.Reason.OVERLOADED, e.reason());
+        }
+        assertTrue(executor.isOverloaded(Priority.LOW));
+        // a short burst in another lane isn't a standing queue
+        executor.execute(() -> { }, Priority.NORMAL);
+        assertFalse(executor.isOverloaded(Priority.NORMAL));
+
+        release.countDown();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (executor.queued(Priority.LOW) > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertFalse(executor.isOverloaded(Priority.LOW));
+        executor.submit(() -> { }, Priority.LOW).get(10, TimeUnit.SECONDS);
+    }
+
+    public void testAThrowingTaskIsReportedAndTheWorkerGoesOn() throws Exception {
+        AtomicReference<Throwable> reported = new AtomicReference<>();
+        executor = new PriorityLaneExecutor(1, 10, RejectionPolicy.FAIL_FAST, 5, 100, TimeUnit.MILLISECONDS,
+                runnable -> {
+                    Thread thread = new Thread(runnable, "reporting-worker");
+                    thread.setDaemon(true);
+                    thread.setUncaughtExceptionHandler((t, e) -> reported.set(e));
+                    return thread;
+                });
+        executor.execute(() -> {
+            throw new AssertionError("task failed");
+        });
+        AtomicReference<Thread> ranOn = new AtomicReference<>();
+        executor.submit(() -> ranOn.set(Thread.currentThread()), Priority.NORMAL).get(10, TimeUnit.SECONDS);
+        assertTrue(reported.get() instanceof AssertionError);
+        assertEquals("reporting-worker", ranOn.get().getName());
+    }
+
+    // the interrupt of cancel(true) is for the running task, the worker takes the next one
+    public void testCancellingARunningTaskKeepsItsWorker() throws Exception {
+        executor = new PriorityLaneExecutor(1, 10, RejectionPolicy.FAIL_FAST);
+        CountDownLatch started = new CountDownLatch(1);
+        Future<?> running = executor.submit(() -> {
+            started.countDown();
+            try {
+                new CountDownLatch(1).await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, Priority.NORMAL);
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        assertTrue(running.cancel(true));
+        for (int i = 0; i < 3; i++) {
+            AtomicReference<Boolean> interrupted = new AtomicReference<>();
+            executor.submit(() -> interrupted.set(Thread.currentThread().isInterrupted()), Priority.NORMAL)
+                    .get(10, TimeUnit.SECONDS);
+            assertEquals(Boolean.FALSE, interrupted.get());
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertTrue(executor.isTerminated());
+    }
+
+    public void testShutdownNowInterruptsTheRunningTasks() throws Exception {
+        executor = new PriorityLaneExecutor(1, 10, RejectionPolicy.FAIL_FAST);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        executor.execute(() -> {
+            started.countDown();
+            try {
+                new CountDownLatch(1).await();
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+        });
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        executor.shutdownNow();
+        assertTrue(interrupted.await(10, TimeUnit.SECONDS));
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    public void testTheDefaultWorkersAreDaemons() throws Exception {
+        executor = new PriorityLaneExecutor(2, 10, RejectionPolicy.FAIL_FAST);
+        AtomicReference<Thread> ranOn = new AtomicReference<>();
+        executor.submit(() -> ranOn.set(Thread.currentThread()), Priority.NORMAL).get(10, TimeUnit.SECONDS);
+        assertTrue(ranOn.get().isDaemon());
+        assertTrue(ranOn.get().getName().startsWith("lane-worker-"));
+    }
+
+    public void testShutdownRejectsNewTasks() throws Exception {
+        executor = new PriorityLaneExecutor(1, 10, RejectionPolicy.CALLER_RUNS);
+        executor.shutdown();
+        try {
+            executor.execute(() -> { });
+            fail();
+        } catch (TaskRejectedException e) {
+            assertEquals(TaskRejectedException.Reason.SHUTDOWN, e.reason());
+        }
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertTrue(executor.isTerminated());
+    }
+
+    public void testTheRejectionIsSerializable() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(new TaskRejectedException(Priority.HIGH, TaskRejectedException.Reason.OVERLOADED));
+        }
+        TaskRejectedException read;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            read = (TaskRejectedException) in.readObject();
+        }
+        assertEquals(Priority.HIGH, read.priority());
+        assertEquals(TaskRejectedException.Reason.OVERLOADED, read.reason());
+    }
+}
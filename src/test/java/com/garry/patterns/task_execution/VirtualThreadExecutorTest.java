@@ -0,0 +1,78 @@
+package com.garry.patterns.task_execution;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+public class VirtualThreadExecutorTest extends TestCase {
+
+    public void testOnlyTheTaskThreadsOfTheExecutorAreWatched() {
+        assertTrue(VirtualThreadExecutor.isTaskThread("mail", "mail-0"));
+        assertTrue(VirtualThreadExecutor.isTaskThread("mail", "mail-1234"));
+        assertFalse(VirtualThreadExecutor.isTaskThread("mail", "mail-"));
+        assertFalse(VirtualThreadExecutor.isTaskThread("mail", "mail-pinning-close"));
+        // the threads of another executor whose name starts with ours
+        assertFalse(VirtualThreadExecutor.isTaskThread("mail", "mail-out-3"));
+        assertFalse(VirtualThreadExecutor.isTaskThread("mail", "mailer-3"));
+        assertFalse(VirtualThreadExecutor.isTaskThread("mail", null));
+    }
+
+    public void testAtMostMaxConcurrentTasksRunAtOnce() throws InterruptedException {
+        final int max = 3;
+        VirtualThreadExecutor executor = new VirtualThreadExecutor("limited", max, false);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger highest = new AtomicInteger();
+        AtomicReference<String> threadName = new AtomicReference<>();
+        for (int i = 0; i < 50; i++) {
+            executor.execute(() -> {
+                threadName.set(Thread.currentThread().getName());
+                int now = running.incrementAndGet();
+                highest.accumulateAndGet(now, Math::max);
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        assertTrue(highest.get() <= max);
+        assertTrue(VirtualThreadExecutor.isTaskThread("limited", threadName.get()));
+        assertEquals(0, executor.runningTasks());
+    }
+
+    // sleeping in a synchronized block pins the virtual thread to its carrier
+    public void testPinnedThreadsGoToTheListener() throws InterruptedException {
+        AtomicReference<String> pinnedThread = new AtomicReference<>();
+        AtomicReference<Duration> pinnedFor = new AtomicReference<>();
+        CountDownLatch reported = new CountDownLatch(1);
+        VirtualThreadExecutor executor = new VirtualThreadExecutor("pinning", 1,
+                (threadName, duration, blockingFrame) -> {
+                    pinnedThread.set(threadName);
+                    pinnedFor.set(duration);
+                    reported.countDown();
+                });
+        Object monitor = new Object();
+        executor.execute(() -> {
+            synchronized (monitor) {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        boolean seen = reported.await(20, TimeUnit.SECONDS);
+        executor.shutdownNow();
+        assertTrue(seen);
+        assertEquals("pinning-0", pinnedThread.get());
+        assertTrue(pinnedFor.get().toMillis() >= 20);
+        assertEquals(1, executor.pinnedCount());
+    }
+}